@@ -1,12 +1,21 @@
 package dbsr.candidate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.Stack;
 
 import dbsr.cost.RankCandidate;
 import dbsr.model.TreeOverlap;
 import dbsr.model.tree.EntityTree;
+import dbsr.model.tree.EntityTreeInterner;
 import dbsr.workload.QueryPlan;
 import dbsr.workload.Sequence;
 
@@ -38,6 +47,22 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 	
 	private final Candidate<T> rightMerge;
 	
+	/**
+	 * Dense id assigned when the candidate is registered by a generator, -1 if unregistered.
+	 */
+	private int id = -1;
+	
+	/**
+	 * Merge ancestors, each once, built from those of the merged candidates when the candidate is registered.
+	 * Null if the candidate or one of its ancestors is not registered.
+	 */
+	private List<Candidate<T>> ancestors;
+	
+	/**
+	 * Ids of the merge ancestors, not modified once built.
+	 */
+	private BitSet ancestorIds;
+	
 	/**
 	 * Initializes the candidate with a subset of entities in a tree.
 	 * 
@@ -60,6 +85,77 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 		return this.entities;
 	}
 	
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Assigns the id of the registered candidate, which can only be assigned once.
+	 * 
+	 * @param id
+	 */
+	public void setId(int id) {
+		if(id < 0)
+			throw new IllegalArgumentException("Candidate id should be positive.");
+		
+		if(this.id != -1 && this.id != id)
+			throw new IllegalStateException("Candidate already has an id.");
+		
+		this.id = id;
+		
+		if(ancestors == null)
+			buildAncestors();
+	}
+	
+	/**
+	 * Joins the ancestors of the merged candidates, which are registered before this candidate.
+	 */
+	private void buildAncestors() {
+		if(isRootCandidate()) {
+			this.ancestorIds = new BitSet();
+			this.ancestors = Collections.emptyList();
+			return;
+		}
+		
+		if(leftMerge.ancestors == null || rightMerge.ancestors == null)
+			return;
+		
+		BitSet ids = (BitSet) leftMerge.ancestorIds.clone();
+		List<Candidate<T>> ancestors = new ArrayList<Candidate<T>>(leftMerge.ancestors.size() + rightMerge.ancestors.size() + 2);
+		ancestors.addAll(leftMerge.ancestors);
+		
+		addAncestor(ancestors, ids, leftMerge);
+		
+		for(Candidate<T> ancestor: rightMerge.ancestors)
+			addAncestor(ancestors, ids, ancestor);
+		
+		addAncestor(ancestors, ids, rightMerge);
+		
+		this.ancestorIds = ids;
+		this.ancestors = Collections.unmodifiableList(ancestors);
+	}
+	
+	private static <T extends Candidate<T>> void addAncestor(List<Candidate<T>> ancestors, BitSet ids, Candidate<T> ancestor) {
+		if(!ids.get(ancestor.getId())) {
+			ids.set(ancestor.getId());
+			ancestors.add(ancestor);
+		}
+	}
+	
+	public boolean isRegistered() {
+		return this.id != -1;
+	}
+	
+	/**
+	 * Replaces the candidate tree by its canonical instance.
+	 * The candidate tree can no longer be modified afterwards.
+	 * 
+	 * @param interner
+	 */
+	public void intern(EntityTreeInterner interner) {
+		this.entities = interner.intern(this.entities);
+	}
+	
 	public Candidate<T> getLeftMerge() {
 		return this.leftMerge;
 	}
@@ -69,16 +165,62 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 	}
 	
 	public Set<Candidate<T>> getCandidateTree() {
-		HashSet<Candidate<T>> candidateTree = new HashSet<Candidate<T>>();
+		HashSet<Candidate<T>> candidateTree = new HashSet<Candidate<T>>(getAncestors());
+		candidateTree.add(this);
+		
+		return candidateTree;
+	}
+	
+	/**
+	 * Returns the candidates this candidate was merged from, directly or indirectly, each once.
+	 * 
+	 * The ancestors of a registered candidate are kept, otherwise the merge history is traversed.
+	 * 
+	 * @return
+	 */
+	public List<Candidate<T>> getAncestors() {
+		if(ancestors != null)
+			return ancestors;
+		
+		List<Candidate<T>> ancestors = new ArrayList<Candidate<T>>();
+		Set<Candidate<T>> visited = Collections.newSetFromMap(new IdentityHashMap<Candidate<T>, Boolean>());
+		Stack<Candidate<T>> stack = new Stack<Candidate<T>>();
+		stack.push(this);
 		
-		if(!isRootCandidate()) {
-			candidateTree.addAll(getLeftMerge().getCandidateTree());
-			candidateTree.addAll(getRightMerge().getCandidateTree());
+		while(!stack.isEmpty()) {
+			Candidate<T> candidate = stack.pop();
+			
+			if(candidate.isRootCandidate())
+				continue;
+			
+			for(Candidate<T> merged: Arrays.asList(candidate.getRightMerge(), candidate.getLeftMerge())) {
+				if(visited.add(merged)) {
+					ancestors.add(merged);
+					stack.push(merged);
+				}
+			}
 		}
 		
-		candidateTree.add(this);
+		return ancestors;
+	}
+	
+	/**
+	 * Checks if this candidate was merged from the given candidate, directly or indirectly.
+	 * Both candidates have to be registered by the same generator to compare their ids.
+	 * 
+	 * @param candidate
+	 * @return
+	 */
+	public boolean hasAncestor(Candidate<T> candidate) {
+		if(ancestorIds != null && candidate.isRegistered())
+			return ancestorIds.get(candidate.getId());
 		
-		return candidateTree;
+		for(Candidate<T> ancestor: getAncestors()) {
+			if(ancestor == candidate)
+				return true;
+		}
+		
+		return false;
 	}
 	
 	/**
@@ -89,6 +231,25 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 		return new HashSet<QueryPlan<T>>(this.subscribers);
 	}
 	
+	/**
+	 * The query plan makes use of this data structure.
+	 * 
+	 * @param qp
+	 * @return
+	 */
+	public boolean isSubscribed(QueryPlan<T> qp) {
+		return this.subscribers.contains(qp);
+	}
+	
+	/**
+	 * Adds the query plans making use of this data structure to the given collection, without copying them first.
+	 * 
+	 * @param queryPlans
+	 */
+	public void collectSubscribedQueryPlans(Collection<QueryPlan<T>> queryPlans) {
+		queryPlans.addAll(this.subscribers);
+	}
+	
 	/**
 	 * This candidate is not the result of merging two other candidates.
 	 * 
@@ -132,11 +293,10 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 	 */
 	public Set<QueryPlan<T>> notifySubscribers(T candidate) {
 		Set<QueryPlan<T>> newQPs = notifySubScribersNonRecursive(candidate);
-			
-		if(!isRootCandidate()) {
-			newQPs.addAll(this.leftMerge.notifySubscribers(candidate));
-			newQPs.addAll(this.rightMerge.notifySubscribers(candidate));
-		}
+		
+		// Each ancestor once, merge histories can share ancestors.
+		for(Candidate<T> ancestor: getAncestors())
+			newQPs.addAll(ancestor.notifySubScribersNonRecursive(candidate));
 		
 		return newQPs;
 	}
@@ -178,6 +338,16 @@ public abstract class Candidate<T extends Candidate<T>> implements TreeOverlap<T
 	
 	public abstract boolean canMerge(T otherCandidate);
 	
+	/**
+	 * Checks the merge condition which does not depend on the trees, e.g. whether the candidates are used by the same sequence.
+	 * 
+	 * @param otherCandidate
+	 * @return
+	 */
+	public boolean sharesUsage(T otherCandidate) {
+		return true;
+	}
+	
 	@Override
 	public boolean isSubSetOf(T otherCandidate) {
 		return getCandidate().isSubSetOf(otherCandidate.getCandidate());
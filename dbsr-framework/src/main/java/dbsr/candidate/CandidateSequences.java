@@ -100,6 +100,11 @@ public class CandidateSequences extends Candidate<CandidateSequences> {
 				getCandidate().canMerge(otherCandidate.getCandidate());
 	}
 	
+	@Override
+	public boolean sharesUsage(CandidateSequences otherCandidate) {
+		return otherCandidate != null && containsSubsetOfSequences(otherCandidate);
+	}
+	
 	/**
 	 * Checks if there is at least an overlap in sequences between the candidates to merge.
 	 * 
@@ -0,0 +1,316 @@
+package dbsr.candidate;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import dbsr.config.Config;
+
+/**
+ * Results of merging pairs of registered candidates, keyed by their ids.
+ *
+ * The same pairs of adjacent candidates occur in many query plans.
+ * Only the first occurrence of a pair merges and validates the trees,
+ * the next ones return the merged candidate, or the reason it was rejected.
+ *
+ * The trees of registered candidates are frozen, so the result of a pair does not change,
+ * except for {@link Candidate#sharesUsage(Candidate)}, which is checked on every occurrence.
+ * Pairs with an unregistered candidate are merged without caching.
+ *
+ * At most {@link Config#MERGE_CACHE_SIZE} pairs are kept, an evicted pair is merged again on its next occurrence.
+ *
+ * Once the generator registers a merged candidate, or resolves it to an equal registered one,
+ * the pair returns the registered instance, see {@link #setCanonical(Candidate, Candidate)}.
+ * The pairs are indexed by the ids of both candidates and of their registered merge,
+ * so the pairs of a pruned candidate are removed without scanning the cache.
+ *
+ * @author vincent
+ */
+public class MergeCache<T extends Candidate<T>> {
+
+	/**
+	 * Reason a pair of candidates is not merged.
+	 */
+	public enum Rejection {
+		/** The usage of the candidates is not shared. */
+		USAGE,
+		/** The left candidate is a subset of the right one. */
+		SUBSET,
+		/** The trees cannot be merged. */
+		NOT_MERGEABLE,
+		/** The merged tree exceeds the maximum depth or width. */
+		SIZE,
+		/** The merged tree embeds too many documents. */
+		EMBEDDED,
+		/** The cyclic elements of the merged tree are not valid. */
+		CYCLIC,
+		/** The merged tree cannot replace both candidates. */
+		NOT_REPLACING
+	}
+
+	private final Cache<Long, Merge<T>> merges;
+
+	/**
+	 * Keys of the cached pairs per candidate id, of the merged candidates and of their registered merge.
+	 * The sets are only accessed within the atomic updates of the map.
+	 */
+	private final ConcurrentHashMap<Integer, Set<Long>> pairsById = new ConcurrentHashMap<Integer, Set<Long>>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public MergeCache() {
+		this(Config.MERGE_CACHE_SIZE);
+	}
+
+	/**
+	 * @param maximumSize Maximum number of cached pairs.
+	 */
+	public MergeCache(long maximumSize) {
+		this.merges = CacheBuilder.newBuilder().maximumSize(maximumSize).removalListener(new RemovalListener<Long, Merge<T>>() {
+			@Override
+			public void onRemoval(RemovalNotification<Long, Merge<T>> notification) {
+				// A replaced pair is indexed by setCanonical.
+				if(notification.getCause() != RemovalCause.REPLACED)
+					unindex(notification.getKey().longValue(), notification.getValue());
+			}
+		}).build();
+	}
+
+	/**
+	 * Merges the candidates, or returns their cached merge.
+	 *
+	 * @param left
+	 * @param right
+	 * @return The merged candidate, or null if the candidates are not merged.
+	 */
+	public T merge(T left, T right) {
+		if(!left.isRegistered() || !right.isRegistered())
+			return MergeCache.<T>tryMerge(left, right).candidate;
+
+		if(!left.sharesUsage(right))
+			return null;
+
+		Long key = getKey(left, right);
+		Merge<T> merge = merges.getIfPresent(key);
+
+		if(merge != null) {
+			hits.increment();
+			return merge.candidate;
+		}
+
+		misses.increment();
+		merge = tryMerge(left, right);
+
+		// Indexed before it is cached, so it is removed with either candidate.
+		index(left.getId(), key);
+		index(right.getId(), key);
+
+		Merge<T> existing = merges.asMap().putIfAbsent(key, merge);
+
+		return existing == null ? merge.candidate : existing.candidate;
+	}
+
+	/**
+	 * Returns the registered candidate for the pair the candidate was merged from from now on.
+	 *
+	 * @param merged Candidate returned by {@link #merge(Candidate, Candidate)}.
+	 * @param canonical The merged candidate once registered, or the registered candidate equal to it.
+	 */
+	public void setCanonical(T merged, T canonical) {
+		Candidate<T> left = merged.getLeftMerge();
+		Candidate<T> right = merged.getRightMerge();
+
+		if(left == null || right == null || !left.isRegistered() || !right.isRegistered() || !canonical.isRegistered())
+			return;
+
+		Long key = getKey(left, right);
+		Merge<T> merge = merges.getIfPresent(key);
+
+		if(merge == null || merge.candidate != merged)
+			return;
+
+		index(canonical.getId(), key);
+
+		if(canonical != merged)
+			merges.asMap().replace(key, merge, new Merge<T>(canonical));
+	}
+
+	/**
+	 * Merges two adjacent candidates of a query plan, if the merge is valid:
+	 * - Candidate must be within max depth, and max width configured
+	 * - Candidate must not exceed maximum embedded documents.
+	 * - Candidate's cyclic elements must be valid. (i.e. in demand by sequences)
+	 * - And new candidate can actually replace the previous 2. (FCC).
+	 *
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	static <T extends Candidate<T>> Merge<T> tryMerge(T left, T right) {
+		if(left.isSubSetOf(right))
+			return new Merge<T>(Rejection.SUBSET);
+
+		if(!left.canMerge(right))
+			return new Merge<T>(left.sharesUsage(right) ? Rejection.NOT_MERGEABLE : Rejection.USAGE);
+
+		T newCandidate = left.merge(right);
+
+		if(newCandidate.getCandidate().getMaxDepth() > Config.MAX_DOCUMENT_DEPTH || newCandidate.getCandidate().getMaxWidth() > Config.MAX_DOCUMENT_WIDTH)
+			return new Merge<T>(Rejection.SIZE);
+
+		if(newCandidate.getCandidate().getNodesTotalFrequency() > Config.MAX_SINGLE_DOCUMENT_EMBEDDED_AMOUNT)
+			return new Merge<T>(Rejection.EMBEDDED);
+
+		if(!newCandidate.getCandidate().isValidCyclic())
+			return new Merge<T>(Rejection.CYCLIC);
+
+		if(!left.isSubSetOf(newCandidate) || !right.isSubSetOf(newCandidate))
+			return new Merge<T>(Rejection.NOT_REPLACING);
+
+		return new Merge<T>(newCandidate);
+	}
+
+	/**
+	 * Returns the cached reason the candidates are not merged.
+	 *
+	 * @param left
+	 * @param right
+	 * @return Null if the pair is not cached or was merged.
+	 */
+	public Rejection getRejection(T left, T right) {
+		if(!left.isRegistered() || !right.isRegistered())
+			return null;
+
+		Merge<T> merge = merges.getIfPresent(getKey(left, right));
+
+		return merge == null ? null : merge.rejection;
+	}
+
+	/**
+	 * Removes the cached pairs of a pruned candidate: the pairs merged into it, which are merged again into a new candidate,
+	 * and the pairs it is part of, as it no longer occurs in query plans.
+	 *
+	 * @param pruned
+	 */
+	public void remove(T pruned) {
+		if(!pruned.isRegistered())
+			return;
+
+		Set<Long> keys = pairsById.remove(Integer.valueOf(pruned.getId()));
+
+		// Removed from the map, so no longer updated.
+		if(keys != null)
+			merges.invalidateAll(keys);
+	}
+
+	private void index(int id, final Long key) {
+		pairsById.compute(Integer.valueOf(id), new BiFunction<Integer, Set<Long>, Set<Long>>() {
+			@Override
+			public Set<Long> apply(Integer id, Set<Long> keys) {
+				if(keys == null)
+					keys = new HashSet<Long>();
+
+				keys.add(key);
+				return keys;
+			}
+		});
+	}
+
+	/**
+	 * Removes a pair which is no longer cached from the index.
+	 */
+	private void unindex(long key, Merge<T> merge) {
+		unindex((int) (key >>> 32), key);
+		unindex((int) key, key);
+
+		if(merge != null && merge.candidate != null && merge.candidate.isRegistered())
+			unindex(merge.candidate.getId(), key);
+	}
+
+	private void unindex(int id, final long key) {
+		pairsById.computeIfPresent(Integer.valueOf(id), new BiFunction<Integer, Set<Long>, Set<Long>>() {
+			@Override
+			public Set<Long> apply(Integer id, Set<Long> keys) {
+				keys.remove(Long.valueOf(key));
+				return keys.isEmpty() ? null : keys;
+			}
+		});
+	}
+
+	/**
+	 * Packs the ids of the pair, registered ids are not negative and fit in 32 bits each.
+	 */
+	private static Long getKey(Candidate<?> left, Candidate<?> right) {
+		if(left.getId() < 0 || right.getId() < 0)
+			throw new IllegalStateException("Merge of candidates which are not registered.");
+
+		return Long.valueOf(((long) left.getId() << 32) | right.getId());
+	}
+
+	/**
+	 * Number of cached pairs per rejection reason.
+	 *
+	 * @return
+	 */
+	public Map<Rejection, Integer> getRejections() {
+		EnumMap<Rejection, Integer> rejections = new EnumMap<Rejection, Integer>(Rejection.class);
+
+		for(Merge<T> merge: merges.asMap().values()) {
+			if(merge.rejection != null) {
+				Integer count = rejections.get(merge.rejection);
+				rejections.put(merge.rejection, count == null ? 1 : count + 1);
+			}
+		}
+
+		return rejections;
+	}
+
+	public int size() {
+		return (int) merges.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "MergeCache [size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", rejections=" + getRejections() + "]";
+	}
+
+	/**
+	 * Merged candidate of a pair, or the reason the pair is not merged.
+	 */
+	static final class Merge<T extends Candidate<T>> {
+
+		final T candidate;
+
+		final Rejection rejection;
+
+		Merge(T candidate) {
+			this.candidate = candidate;
+			this.rejection = null;
+		}
+
+		Merge(Rejection rejection) {
+			this.candidate = null;
+			this.rejection = rejection;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package dbsr.candidate.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.GenerationBudget.StopReason;
+import dbsr.candidate.generator.optimizations.QueryPlanPriority;
+import dbsr.config.Config;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+import dbsr.workload.WorkloadCompiler;
+import dbsr.workload.WorkloadComponents;
+
+/**
+ * Generates the data structures of each independent component of the workload separately, see {@link WorkloadComponents}.
+ *
+ * Sequences which do not share an entity never share a data structure,
+ * so each component has its own {@link MultiSequenceCandidateGenerator}, with its own frontier, candidates and pruning schedule.
+ * The components are generated in parallel, and their recommendations merged.
+ *
+ * The workload is compiled once, the generators of the components share the compilation.
+ * Each generator runs against the full budget, e.g. a budget of 100 iterations allows 100 iterations per component.
+ *
+ * @author vincent
+ */
+public class ComponentCandidateGenerator {
+
+	private static final Logger LOGGER = Logger.getLogger(ComponentCandidateGenerator.class.getName());
+
+	private final Set<Sequence> sequences;
+
+	private final WorkloadCompiler workload;
+
+	private final List<MultiSequenceCandidateGenerator> generators = new ArrayList<MultiSequenceCandidateGenerator>();
+
+	private int parallelism = Config.GENERATION_THREADS;
+
+	private volatile Recommendation recommendation;
+
+	public ComponentCandidateGenerator(Set<Sequence> sequences) {
+		this(sequences, new PriorityFactory() {
+			@Override
+			public QueryPlanPriority<CandidateSequences> create() {
+				return Config.BEST_FIRST_SEARCH ? new QueryPlanPriority.WeightedCost<CandidateSequences>() : null;
+			}
+		});
+	}
+
+	/**
+	 * @param sequences
+	 * @param priorities
+	 * 		  Creates the priority of the generator of each component.
+	 */
+	public ComponentCandidateGenerator(Set<Sequence> sequences, PriorityFactory priorities) {
+		this.sequences = sequences;
+		this.workload = WorkloadCompiler.compile(sequences);
+
+		for(Set<Sequence> component: WorkloadComponents.split(sequences))
+			generators.add(new MultiSequenceCandidateGenerator(component, priorities.create(), workload));
+
+		LOGGER.log(Level.FINE, "{0} sequences in {1} components", new Object[] { sequences.size(), generators.size() });
+	}
+
+	/**
+	 * Creates the order in which the query plans of a component are optimized.
+	 */
+	public interface PriorityFactory {
+
+		/**
+		 * @return Priority of a component, or null to optimize the query plans in the order they were generated.
+		 */
+		public QueryPlanPriority<CandidateSequences> create();
+	}
+
+	public Recommendation startGeneration(int cycles) {
+		return startGeneration(new GenerationBudget(cycles));
+	}
+
+	/**
+	 * Generates all components, at most {@link #getParallelism()} at a time.
+	 *
+	 * @param budget
+	 * 		  Budget of each component, cancelling it stops all components.
+	 * @return The best query plans found, of all components.
+	 */
+	public Recommendation startGeneration(final GenerationBudget budget) {
+		long startNanos = System.nanoTime();
+		List<Recommendation> recommendations = new ArrayList<Recommendation>();
+
+		if(parallelism <= 1 || generators.size() <= 1) {
+			for(MultiSequenceCandidateGenerator generator: generators)
+				recommendations.add(generator.startGeneration(budget));
+		}
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, generators.size()));
+
+			try {
+				List<Callable<Recommendation>> tasks = new ArrayList<Callable<Recommendation>>();
+
+				for(final MultiSequenceCandidateGenerator generator: generators) {
+					tasks.add(new Callable<Recommendation>() {
+						@Override
+						public Recommendation call() {
+							return generator.startGeneration(budget);
+						}
+					});
+				}
+
+				for(Future<Recommendation> result: executor.invokeAll(tasks))
+					recommendations.add(getResult(result));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while generating components.", e);
+			} finally {
+				executor.shutdown();
+			}
+		}
+
+		recommendation = merge(recommendations, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+		return recommendation;
+	}
+
+	private Recommendation getResult(Future<Recommendation> result) throws InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to generate component.", e.getCause());
+		}
+	}
+
+	/**
+	 * Merges the recommendations of the components, the query plans keep the order of the workload.
+	 *
+	 * The iterations are those of all components.
+	 * The stop reason is exhausted if all components were exhausted, otherwise the first other reason.
+	 *
+	 * @param recommendations
+	 * @param elapsedMillis
+	 * @return
+	 */
+	private Recommendation merge(List<Recommendation> recommendations, long elapsedMillis) {
+		Map<Sequence, QueryPlan<CandidateSequences>> queryPlans = new LinkedHashMap<Sequence, QueryPlan<CandidateSequences>>();
+		int iterations = 0;
+		StopReason reason = StopReason.EXHAUSTED;
+
+		for(Recommendation component: recommendations) {
+			iterations += component.getIterations();
+
+			if(reason == StopReason.EXHAUSTED)
+				reason = component.getStopReason();
+		}
+
+		for(Sequence seq: sequences) {
+			for(Recommendation component: recommendations) {
+				QueryPlan<CandidateSequences> qp = component.getQueryPlan(seq);
+
+				if(qp != null) {
+					queryPlans.put(seq, qp);
+					break;
+				}
+			}
+		}
+
+		return new Recommendation(queryPlans, iterations, elapsedMillis, reason);
+	}
+
+	/**
+	 * Returns the recommendation of the last generation,
+	 * or the current best query plans of all components if none was completed.
+	 *
+	 * @return
+	 */
+	public Recommendation getRecommendation() {
+		Recommendation current = recommendation;
+
+		if(current != null)
+			return current;
+
+		List<Recommendation> recommendations = new ArrayList<Recommendation>();
+
+		for(MultiSequenceCandidateGenerator generator: generators)
+			recommendations.add(generator.getRecommendation());
+
+		return merge(recommendations, 0);
+	}
+
+	/**
+	 * Number of components generated at the same time.
+	 *
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism should be at least 1.");
+
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Generator of each component, in the order of the first sequence of the component.
+	 *
+	 * @return
+	 */
+	public List<MultiSequenceCandidateGenerator> getGenerators() {
+		return Collections.unmodifiableList(generators);
+	}
+
+	public Set<Sequence> getSequences() {
+		return sequences;
+	}
+
+	public WorkloadCompiler getWorkload() {
+		return workload;
+	}
+}
@@ -0,0 +1,226 @@
+package dbsr.candidate.generator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.TimeUnit;
+
+import dbsr.config.Config;
+
+/**
+ * Limits of a generation run. The generation stops at the first limit reached:
+ *
+ * - Number of iterations.
+ * - Wall-clock deadline.
+ * - Heap ceiling, the heap in use after the last garbage collection, checked after an iteration.
+ * - Convergence, no improvement in the workload-weighted cost of the best query plans for a number of iterations.
+ * - Cancellation, by another thread.
+ *
+ * A limit which is not set does not stop the generation.
+ *
+ * @author vincent
+ */
+public class GenerationBudget {
+
+	/**
+	 * Reason a generation run stopped.
+	 */
+	public enum StopReason { EXHAUSTED, ITERATIONS, DEADLINE, MEMORY, CONVERGED, CANCELLED }
+
+	private final int maxIterations;
+
+	private long timeLimitNanos = Long.MAX_VALUE;
+
+	private long heapLimitBytes = Long.MAX_VALUE;
+
+	private int convergenceIterations = Integer.MAX_VALUE;
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Budget of {@link Config#MAX_ITERATIONS} iterations.
+	 */
+	public GenerationBudget() {
+		this(Config.MAX_ITERATIONS);
+	}
+
+	public GenerationBudget(int maxIterations) {
+		if(maxIterations < 0)
+			throw new IllegalArgumentException("Number of iterations should not be negative.");
+
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Stops the generation once the given time has passed since its start.
+	 *
+	 * @param duration
+	 * @param unit
+	 */
+	public void setTimeLimit(long duration, TimeUnit unit) {
+		if(duration < 0)
+			throw new IllegalArgumentException("Time limit should not be negative.");
+
+		this.timeLimitNanos = unit.toNanos(duration);
+	}
+
+	/**
+	 * Stops the generation once the heap in use after the last garbage collection exceeds the given number of bytes.
+	 * Garbage which is not collected yet does not count, see {@link #getLiveHeapBytes()}.
+	 *
+	 * @param bytes
+	 */
+	public void setHeapLimit(long bytes) {
+		if(bytes <= 0)
+			throw new IllegalArgumentException("Heap limit should be positive.");
+
+		this.heapLimitBytes = bytes;
+	}
+
+	/**
+	 * Stops the generation when the weighted cost of the best query plans did not improve for the given number of iterations.
+	 *
+	 * @param iterations
+	 */
+	public void setConvergenceIterations(int iterations) {
+		if(iterations < 1)
+			throw new IllegalArgumentException("Number of iterations without improvement should be at least 1.");
+
+		this.convergenceIterations = iterations;
+	}
+
+	/**
+	 * Stops the generation after its current iteration, can be called from any thread.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public long getTimeLimitNanos() {
+		return timeLimitNanos;
+	}
+
+	public long getHeapLimitBytes() {
+		return heapLimitBytes;
+	}
+
+	public int getConvergenceIterations() {
+		return convergenceIterations;
+	}
+
+	/**
+	 * Heap in use after the last garbage collection, summed over the heap memory pools.
+	 * A pool which does not report its usage after a collection counts with its current usage.
+	 * Before the first collection of a pool, its usage after collection is 0.
+	 *
+	 * @return
+	 */
+	public static long getLiveHeapBytes() {
+		long used = 0;
+
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() != MemoryType.HEAP || !pool.isValid())
+				continue;
+
+			MemoryUsage usage = pool.getCollectionUsage();
+
+			if(usage == null)
+				usage = pool.getUsage();
+
+			if(usage != null)
+				used += usage.getUsed();
+		}
+
+		return used;
+	}
+
+	/**
+	 * Keeps track of a run against this budget.
+	 *
+	 * @return
+	 */
+	Tracker start() {
+		return new Tracker();
+	}
+
+	/**
+	 * State of a single generation run.
+	 */
+	class Tracker {
+
+		private final long startNanos = System.nanoTime();
+
+		private int iterations = 0;
+
+		private int iterationsWithoutImprovement = 0;
+
+		private double bestCost = Double.POSITIVE_INFINITY;
+
+		/**
+		 * Records an iteration and the weighted cost of the best query plans afterwards.
+		 *
+		 * @param weightedCost
+		 * @return True if the weighted cost improved.
+		 */
+		public boolean iteration(double weightedCost) {
+			iterations++;
+
+			if(weightedCost < bestCost) {
+				bestCost = weightedCost;
+				iterationsWithoutImprovement = 0;
+				return true;
+			}
+
+			iterationsWithoutImprovement++;
+			return false;
+		}
+
+		/**
+		 * @return The limit reached, or null if the generation can continue.
+		 */
+		public StopReason check() {
+			if(cancelled)
+				return StopReason.CANCELLED;
+
+			if(iterations >= maxIterations)
+				return StopReason.ITERATIONS;
+
+			if(timeLimitNanos != Long.MAX_VALUE && System.nanoTime() - startNanos >= timeLimitNanos)
+				return StopReason.DEADLINE;
+
+			if(heapLimitBytes != Long.MAX_VALUE && getLiveHeapBytes() > heapLimitBytes)
+				return StopReason.MEMORY;
+
+			if(iterationsWithoutImprovement >= convergenceIterations)
+				return StopReason.CONVERGED;
+
+			return null;
+		}
+
+		public int getIterations() {
+			return iterations;
+		}
+
+		/**
+		 * Iterations left, used for the pruning schedule of the generator.
+		 *
+		 * @return
+		 */
+		public int getRemainingIterations() {
+			return maxIterations - iterations;
+		}
+
+		public long getElapsedNanos() {
+			return System.nanoTime() - startNanos;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package dbsr.candidate.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dbsr.candidate.Candidate;
+import dbsr.config.Config;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+/**
+ * Delivers the events of a generator to its {@link GenerationListener}s.
+ *
+ * Events are queued in a bounded queue and delivered in order by a single daemon thread.
+ * When the queue is full the event is dropped, so a slow listener never blocks the generation.
+ * Without listeners, events are not created at all.
+ *
+ * An exception thrown by a listener is logged, and does not stop the delivery of other events.
+ *
+ * @author vincent
+ */
+public class GenerationEvents<T extends Candidate<T>> {
+
+	private static final Logger LOGGER = Logger.getLogger(GenerationEvents.class.getName());
+
+	private final CopyOnWriteArrayList<GenerationListener<T>> listeners = new CopyOnWriteArrayList<GenerationListener<T>>();
+
+	private final BlockingQueue<Event<T>> queue;
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private Thread dispatcher;
+
+	/**
+	 * Queue of {@link Config#GENERATION_EVENTS_QUEUE_SIZE} events.
+	 */
+	public GenerationEvents() {
+		this(Config.GENERATION_EVENTS_QUEUE_SIZE);
+	}
+
+	public GenerationEvents(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Event queue capacity should be at least 1.");
+
+		this.queue = new ArrayBlockingQueue<Event<T>>(capacity);
+	}
+
+	/**
+	 * Adds a listener, and starts the delivery thread if needed.
+	 *
+	 * @param listener
+	 */
+	public synchronized void addListener(GenerationListener<T> listener) {
+		if(listener == null)
+			throw new IllegalArgumentException("Listener should not be null.");
+
+		listeners.add(listener);
+
+		if(dispatcher == null) {
+			dispatcher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					deliver();
+				}
+			}, "generation-events");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+		}
+	}
+
+	public boolean removeListener(GenerationListener<T> listener) {
+		return listeners.remove(listener);
+	}
+
+	public boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * Waits until all events published so far have been delivered.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return False if the timeout passed first.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+		long target = published.get();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		synchronized(delivered) {
+			while(delivered.get() < target) {
+				long remaining = deadline - System.nanoTime();
+
+				if(remaining <= 0)
+					return false;
+
+				TimeUnit.NANOSECONDS.timedWait(delivered, remaining);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Events dropped because the queue was full.
+	 *
+	 * @return
+	 */
+	public long getDroppedEvents() {
+		return dropped.get();
+	}
+
+	public long getDeliveredEvents() {
+		return delivered.get();
+	}
+
+	/**
+	 * Stops the delivery thread, queued events are discarded.
+	 */
+	public synchronized void close() {
+		listeners.clear();
+
+		if(dispatcher != null) {
+			dispatcher.interrupt();
+			dispatcher = null;
+		}
+
+		queue.clear();
+	}
+
+	public void iteration(final int iteration, final double weightedCost, final int frontierSize) {
+		if(!hasListeners())
+			return;
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onIteration(iteration, weightedCost, frontierSize);
+			}
+		});
+	}
+
+	public void candidateRegistered(final T candidate) {
+		if(!hasListeners())
+			return;
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onCandidateRegistered(candidate);
+			}
+		});
+	}
+
+	public void queryPlansAdded(Collection<QueryPlan<T>> qps) {
+		if(!hasListeners() || qps.isEmpty())
+			return;
+
+		final List<QueryPlan<T>> added = new ArrayList<QueryPlan<T>>(qps);
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onQueryPlansAdded(added);
+			}
+		});
+	}
+
+	public void compaction(final Sequence sequence, Collection<QueryPlan<T>> qps) {
+		if(!hasListeners() || qps.isEmpty())
+			return;
+
+		final List<QueryPlan<T>> removed = new ArrayList<QueryPlan<T>>(qps);
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onCompaction(sequence, removed);
+			}
+		});
+	}
+
+	public void prune(Collection<QueryPlan<T>> qps, final T candidate) {
+		if(!hasListeners())
+			return;
+
+		final List<QueryPlan<T>> removed = new ArrayList<QueryPlan<T>>(qps);
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onPrune(removed, candidate);
+			}
+		});
+	}
+
+	/**
+	 * @param bestQueryPlans Should not be modified afterwards.
+	 * @param weightedCost
+	 */
+	public void bestPlanImproved(final Map<Sequence, QueryPlan<T>> bestQueryPlans, final double weightedCost) {
+		if(!hasListeners())
+			return;
+
+		publish(new Event<T>() {
+			@Override
+			void deliver(GenerationListener<T> listener) {
+				listener.onBestPlanImproved(bestQueryPlans, weightedCost);
+			}
+		});
+	}
+
+	private void publish(Event<T> event) {
+		if(queue.offer(event))
+			published.incrementAndGet();
+		else
+			dropped.incrementAndGet();
+	}
+
+	private void deliver() {
+		while(!Thread.currentThread().isInterrupted()) {
+			Event<T> event;
+
+			try {
+				event = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			for(GenerationListener<T> listener: listeners) {
+				try {
+					event.deliver(listener);
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Generation listener failed.", e);
+				}
+			}
+
+			synchronized(delivered) {
+				delivered.incrementAndGet();
+				delivered.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Callback of an event, delivered to each listener.
+	 */
+	private static abstract class Event<T extends Candidate<T>> {
+
+		abstract void deliver(GenerationListener<T> listener);
+	}
+}
@@ -0,0 +1,81 @@
+package dbsr.candidate.generator;
+
+import java.util.List;
+import java.util.Map;
+
+import dbsr.candidate.Candidate;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+/**
+ * Receives the events of a generation run.
+ *
+ * Events are delivered in order on a separate thread, see {@link GenerationEvents}, so a listener never blocks the generation.
+ * The query plans and candidates passed are those of the generator, and should only be read.
+ *
+ * All callbacks do nothing by default.
+ *
+ * @author vincent
+ */
+public interface GenerationListener<T extends Candidate<T>> {
+
+	/**
+	 * An iteration completed.
+	 *
+	 * @param iteration Iterations completed by the generator.
+	 * @param weightedCost Weighted cost of the best query plans, after the iteration.
+	 * @param frontierSize Query plans left to optimize.
+	 */
+	public default void onIteration(int iteration, double weightedCost, int frontierSize) {
+
+	}
+
+	/**
+	 * A new candidate was registered.
+	 *
+	 * @param candidate
+	 */
+	public default void onCandidateRegistered(T candidate) {
+
+	}
+
+	/**
+	 * Query plans were added, produced by notifying the subscribed query plans of a new candidate.
+	 *
+	 * @param qps
+	 */
+	public default void onQueryPlansAdded(List<QueryPlan<T>> qps) {
+
+	}
+
+	/**
+	 * Query plans superseded by a shorter query plan were removed.
+	 *
+	 * @param sequence
+	 * @param qps
+	 */
+	public default void onCompaction(Sequence sequence, List<QueryPlan<T>> qps) {
+
+	}
+
+	/**
+	 * Query plans were pruned.
+	 *
+	 * @param qps
+	 * @param candidate The data structure pruned with the query plans,
+	 * 		  or null if the query plans were pruned to limit the query plans per sequence.
+	 */
+	public default void onPrune(List<QueryPlan<T>> qps, T candidate) {
+
+	}
+
+	/**
+	 * The weighted cost of the best query plans improved.
+	 *
+	 * @param bestQueryPlans Best query plan per sequence.
+	 * @param weightedCost
+	 */
+	public default void onBestPlanImproved(Map<Sequence, QueryPlan<T>> bestQueryPlans, double weightedCost) {
+
+	}
+}
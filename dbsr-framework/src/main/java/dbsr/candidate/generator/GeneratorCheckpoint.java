@@ -0,0 +1,488 @@
+package dbsr.candidate.generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.IntFunction;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import dbsr.candidate.Candidate;
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.optimizations.QueryPlanFingerprints;
+import dbsr.model.Entity;
+import dbsr.model.tree.EntityTree;
+import dbsr.workload.CompactQueryPlan;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+import dbsr.workload.WorkloadCompiler;
+import dbsr.workload.query.Query;
+
+/**
+ * Checkpoints the state of a generator to a file, from which the generation can be resumed.
+ *
+ * The state consists of the registered candidates, the pruned candidates they were merged from, and their trees,
+ * the query plans of every sequence, the frontier in its order, and the fingerprints of the generated query plans.
+ * Candidates keep their ids, the ids of pruned candidates which are not written are not reused either.
+ * Entities, queries and sequences are written as their ids in the compiled workload,
+ * a resumed generator should be given the same workload.
+ *
+ * The generating thread only takes a snapshot: the candidates with their merge history,
+ * the query plans as {@link CompactQueryPlan}s, the frontier as indexes and a copy of the fingerprints.
+ * A background thread encodes the snapshot and streams it compressed to the file,
+ * the trees of the candidates are frozen so they can be read concurrently.
+ * The previous checkpoint is replaced atomically once the new one is written.
+ *
+ * @author vincent
+ */
+public class GeneratorCheckpoint {
+
+	private static final int MAGIC = 0x44425352;
+
+	private static final int VERSION = 3;
+
+	private final Path file;
+
+	private final ExecutorService writer;
+
+	private Future<?> pendingWrite;
+
+	public GeneratorCheckpoint(Path file) {
+		if(file == null)
+			throw new IllegalArgumentException("Checkpoint file should not be null.");
+
+		this.file = file;
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "checkpoint-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Takes a snapshot of the state of the generator, and writes it in the background.
+	 * Waits for the previous checkpoint to be written first.
+	 *
+	 * @param generator
+	 */
+	public void write(MultiSequenceCandidateGenerator generator) {
+		final Snapshot snapshot = new Snapshot(generator);
+
+		await();
+
+		pendingWrite = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeFile(snapshot);
+				} catch (IOException e) {
+					throw new IllegalStateException("Failed to write checkpoint " + file + ".", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until the last checkpoint is written.
+	 *
+	 * @exception IllegalStateException If writing the checkpoint failed.
+	 */
+	public void await() {
+		if(pendingWrite == null)
+			return;
+
+		try {
+			pendingWrite.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while writing checkpoint.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to write checkpoint " + file + ".", e.getCause());
+		} finally {
+			pendingWrite = null;
+		}
+	}
+
+	/**
+	 * Waits for the last checkpoint, and stops the writer thread.
+	 */
+	public void close() {
+		try {
+			await();
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	private void writeFile(Snapshot snapshot) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(tmp))));
+
+		try {
+			snapshot.encode(out);
+		} finally {
+			out.close();
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores the state of a checkpoint file into a generator without query plans.
+	 *
+	 * @param generator
+	 * @param file
+	 * @throws IOException
+	 */
+	static void read(MultiSequenceCandidateGenerator generator, Path file) throws IOException {
+		InputStream in = new InflaterInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+		try {
+			decode(generator, new DataInputStream(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean isRegisteredBefore(CandidateSequences merged, CandidateSequences candidate, Map<Integer, CandidateSequences> candidates) {
+		return merged.isRegistered() && merged.getId() < candidate.getId() && candidates.get(Integer.valueOf(merged.getId())) == merged;
+	}
+
+	private static void decode(MultiSequenceCandidateGenerator generator, DataInputStream in) throws IOException {
+		final WorkloadCompiler workload = generator.getWorkload();
+
+		if(in.readInt() != MAGIC)
+			throw new IOException("Not a generator checkpoint.");
+
+		if(in.readInt() != VERSION)
+			throw new IOException("Unsupported checkpoint version.");
+
+		if(in.readLong() != getSignature(workload))
+			throw new IllegalArgumentException("Checkpoint was written for a different workload.");
+
+		generator.setCompletedIterations(in.readInt());
+
+		int nrOfTrees = in.readInt();
+		List<List<EntityTree>> trees = new ArrayList<List<EntityTree>>(nrOfTrees);
+
+		for(int i=0; i < nrOfTrees; i++)
+			trees.add(getNodes(readTree(in, workload)));
+
+		int nextCandidateId = in.readInt();
+		int nrOfCandidates = in.readInt();
+		HashMap<Integer, CandidateSequences> restored = new HashMap<Integer, CandidateSequences>();
+
+		for(int i=0; i < nrOfCandidates; i++) {
+			int id = in.readInt();
+			EntityTree tree = trees.get(in.readInt()).get(in.readInt());
+			int left = in.readInt();
+			int right = in.readInt();
+
+			CandidateSequences candidate;
+
+			if(left == -1)
+				candidate = new CandidateSequences(tree);
+			else
+				candidate = new CandidateSequences(tree, restored.get(Integer.valueOf(left)), restored.get(Integer.valueOf(right)));
+
+			generator.restoreCandidate(candidate, id, in.readBoolean());
+			restored.put(Integer.valueOf(id), candidate);
+		}
+
+		generator.restoreNextCandidateId(nextCandidateId);
+
+		IntFunction<CandidateSequences> candidates = new IntFunction<CandidateSequences>() {
+			@Override
+			public CandidateSequences apply(int id) {
+				return generator.getCandidate(id);
+			}
+		};
+
+		int nrOfQueryPlans = in.readInt();
+		List<QueryPlan<CandidateSequences>> queryPlans = new ArrayList<QueryPlan<CandidateSequences>>(nrOfQueryPlans);
+
+		for(int i=0; i < nrOfQueryPlans; i++) {
+			QueryPlan<CandidateSequences> qp = CompactQueryPlan.readFrom(in).expand(workload, candidates);
+			generator.restoreQueryPlan(qp);
+			queryPlans.add(qp);
+		}
+
+		int frontierSize = in.readInt();
+
+		for(int i=0; i < frontierSize; i++)
+			generator.getFrontier().add(queryPlans.get(in.readInt()));
+
+		generator.restoreGeneratedQueryPlans(QueryPlanFingerprints.readFrom(in));
+	}
+
+	/**
+	 * Writes the tree in pre-order: entity, queries and number of children per node.
+	 */
+	private static void writeTree(DataOutputStream out, EntityTree tree) throws IOException {
+		if(tree.getNode().getId() == -1)
+			throw new IllegalStateException("Tree contains an entity which is not compiled: " + tree.getNode());
+
+		out.writeInt(tree.getNode().getId());
+		out.writeInt(tree.getQueries().size());
+
+		for(Query qry: tree.getQueries()) {
+			if(qry.getId() == -1)
+				throw new IllegalStateException("Tree contains a query which is not compiled: " + qry);
+
+			out.writeInt(qry.getId());
+		}
+
+		out.writeInt(tree.getChildren().size());
+
+		for(EntityTree child: tree.getChildren())
+			writeTree(out, child);
+	}
+
+	private static EntityTree readTree(DataInputStream in, WorkloadCompiler workload) throws IOException {
+		Entity entity = workload.getEntity(in.readInt());
+		int nrOfQueries = in.readInt();
+		List<Query> queries = new ArrayList<Query>(nrOfQueries);
+
+		for(int i=0; i < nrOfQueries; i++)
+			queries.add(workload.getQuery(in.readInt()));
+
+		EntityTree tree = new EntityTree(entity, queries);
+		int nrOfChildren = in.readInt();
+
+		for(int i=0; i < nrOfChildren; i++)
+			tree.addChild(readTree(in, workload));
+
+		return tree;
+	}
+
+	/**
+	 * Nodes of the tree in pre-order.
+	 */
+	private static List<EntityTree> getNodes(EntityTree tree) {
+		List<EntityTree> nodes = new ArrayList<EntityTree>();
+		collectNodes(tree, nodes);
+
+		return nodes;
+	}
+
+	private static void collectNodes(EntityTree tree, List<EntityTree> nodes) {
+		nodes.add(tree);
+
+		for(EntityTree child: tree.getChildren())
+			collectNodes(child, nodes);
+	}
+
+	/**
+	 * Identifies the compiled workload by its queries and sequences.
+	 */
+	private static long getSignature(WorkloadCompiler workload) {
+		long signature = workload.getNumberOfEntities();
+		signature = 31 * signature + workload.getNumberOfQueries();
+		signature = 31 * signature + workload.getNumberOfSequences();
+
+		for(int i=0; i < workload.getNumberOfQueries(); i++)
+			signature = 31 * signature + workload.getQuery(i).hashCode();
+
+		for(int i=0; i < workload.getNumberOfSequences(); i++)
+			signature = 31 * signature + workload.getSequence(i).hashCode();
+
+		return signature;
+	}
+
+	/**
+	 * State of a generator at a checkpoint, which is encoded while the generator continues.
+	 */
+	private static final class Snapshot {
+
+		private final WorkloadCompiler workload;
+
+		private final int completedIterations;
+
+		private final int nextCandidateId;
+
+		/**
+		 * Registered candidates and the pruned candidates they were merged from, in the order of their ids.
+		 */
+		private final int[] candidateIds;
+
+		private final EntityTree[] trees;
+
+		/**
+		 * Ids of the candidates merged into each candidate, or -1 if the merge history is not kept.
+		 */
+		private final int[] leftIds;
+
+		private final int[] rightIds;
+
+		private final boolean[] alive;
+
+		private final List<CompactQueryPlan> queryPlans = new ArrayList<CompactQueryPlan>();
+
+		private final int[] frontier;
+
+		private final QueryPlanFingerprints generatedQueryPlans;
+
+		Snapshot(MultiSequenceCandidateGenerator generator) {
+			this.workload = generator.getWorkload();
+			this.completedIterations = generator.getCompletedIterations();
+			this.nextCandidateId = generator.getNextCandidateId();
+
+			List<CandidateSequences> registered = generator.getRegisteredCandidates();
+			TreeMap<Integer, CandidateSequences> candidates = new TreeMap<Integer, CandidateSequences>();
+
+			for(CandidateSequences candidate: registered) {
+				candidates.put(Integer.valueOf(candidate.getId()), candidate);
+
+				for(Candidate<CandidateSequences> ancestor: candidate.getAncestors()) {
+					if(ancestor.isRegistered())
+						candidates.put(Integer.valueOf(ancestor.getId()), (CandidateSequences) ancestor);
+				}
+			}
+
+			Set<CandidateSequences> aliveCandidates = Collections.newSetFromMap(new IdentityHashMap<CandidateSequences, Boolean>());
+			aliveCandidates.addAll(registered);
+
+			this.candidateIds = new int[candidates.size()];
+			this.trees = new EntityTree[candidates.size()];
+			this.leftIds = new int[candidates.size()];
+			this.rightIds = new int[candidates.size()];
+			this.alive = new boolean[candidates.size()];
+
+			int i = 0;
+
+			for(CandidateSequences candidate: candidates.values()) {
+				candidateIds[i] = candidate.getId();
+				trees[i] = candidate.getCandidate();
+				alive[i] = aliveCandidates.contains(candidate);
+
+				// Merge history, kept if both merged candidates were registered before.
+				CandidateSequences left = (CandidateSequences) candidate.getLeftMerge();
+				CandidateSequences right = (CandidateSequences) candidate.getRightMerge();
+
+				if(left != null && right != null && isRegisteredBefore(left, candidate, candidates) && isRegisteredBefore(right, candidate, candidates)) {
+					leftIds[i] = left.getId();
+					rightIds[i] = right.getId();
+				} else {
+					leftIds[i] = -1;
+					rightIds[i] = -1;
+				}
+
+				if(!trees[i].isFrozen())
+					throw new IllegalStateException("Checkpoint of a candidate which is not frozen: " + candidate);
+
+				i++;
+			}
+
+			// Query plans of all sequences, followed by the frontier as indexes.
+			HashMap<QueryPlan<CandidateSequences>, Integer> queryPlanIds = new HashMap<QueryPlan<CandidateSequences>, Integer>();
+
+			for(Sequence seq: generator.getSequences()) {
+				if(!generator.getQueryPlansPerSequence().containsKey(seq))
+					continue;
+
+				for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+					queryPlanIds.put(qp, Integer.valueOf(queryPlans.size()));
+					queryPlans.add(CompactQueryPlan.of(qp));
+				}
+			}
+
+			List<QueryPlan<CandidateSequences>> frontierPlans = generator.getFrontier().toList();
+			this.frontier = new int[frontierPlans.size()];
+
+			for(int j=0; j < frontier.length; j++) {
+				Integer id = queryPlanIds.get(frontierPlans.get(j));
+
+				if(id == null)
+					throw new IllegalStateException("Query plan in frontier is not an existing query plan: " + frontierPlans.get(j));
+
+				frontier[j] = id.intValue();
+			}
+
+			this.generatedQueryPlans = generator.getGeneratedQueryPlans().copy();
+		}
+
+		void encode(DataOutputStream out) throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(getSignature(workload));
+			out.writeInt(completedIterations);
+
+			// Trees, candidates can share (parts of) trees. Each node by its pre-order index in its top tree.
+			List<EntityTree> tops = new ArrayList<EntityTree>();
+			IdentityHashMap<EntityTree, Integer> treeIds = new IdentityHashMap<EntityTree, Integer>();
+			IdentityHashMap<EntityTree, Integer> nodeIndexes = new IdentityHashMap<EntityTree, Integer>();
+
+			for(EntityTree tree: trees) {
+				EntityTree top = tree.getTopParent();
+
+				if(treeIds.containsKey(top))
+					continue;
+
+				treeIds.put(top, Integer.valueOf(tops.size()));
+				tops.add(top);
+
+				List<EntityTree> nodes = getNodes(top);
+
+				for(int i=0; i < nodes.size(); i++)
+					nodeIndexes.put(nodes.get(i), Integer.valueOf(i));
+			}
+
+			out.writeInt(tops.size());
+
+			for(EntityTree top: tops)
+				writeTree(out, top);
+
+			// Candidates by id.
+			out.writeInt(nextCandidateId);
+			out.writeInt(candidateIds.length);
+
+			for(int i=0; i < candidateIds.length; i++) {
+				out.writeInt(candidateIds[i]);
+				out.writeInt(treeIds.get(trees[i].getTopParent()).intValue());
+				out.writeInt(nodeIndexes.get(trees[i]).intValue());
+				out.writeInt(leftIds[i]);
+				out.writeInt(rightIds[i]);
+				out.writeBoolean(alive[i]);
+			}
+
+			out.writeInt(queryPlans.size());
+
+			for(CompactQueryPlan qp: queryPlans)
+				qp.writeTo(out);
+
+			out.writeInt(frontier.length);
+
+			for(int id: frontier)
+				out.writeInt(id);
+
+			generatedQueryPlans.writeTo(out);
+		}
+	}
+}
@@ -1,33 +1,62 @@
 package dbsr.candidate.generator;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
+import com.google.common.collect.Iterators;
+
 import dbsr.candidate.Candidate;
 import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.MergeCache;
+import dbsr.candidate.generator.GenerationBudget.StopReason;
+import dbsr.candidate.generator.optimizations.CandidateRegistry;
+import dbsr.candidate.generator.optimizations.FieldSetLattice;
+import dbsr.candidate.generator.optimizations.IndexedPriorityQueue;
+import dbsr.candidate.generator.optimizations.NotifierPool;
+import dbsr.candidate.generator.optimizations.QueryPathings;
+import dbsr.candidate.generator.optimizations.QueryPlanFrontier;
 import dbsr.candidate.generator.optimizations.QueryPlanNotifier;
+import dbsr.candidate.generator.optimizations.QueryPlanFingerprints;
+import dbsr.candidate.generator.optimizations.QueryPlanPriority;
+import dbsr.candidate.generator.optimizations.QueryPlanPruner;
+import dbsr.candidate.generator.optimizations.QueryPlanStore;
 import dbsr.config.Config;
+import dbsr.cost.CostStepCache;
+import dbsr.metrics.GenerationMetrics;
+import dbsr.metrics.MetricsReporter;
+import dbsr.metrics.TraceReader;
+import dbsr.metrics.TraceRecorder;
 import dbsr.model.Entity;
 import dbsr.model.Field;
 import dbsr.model.tree.EntityTree;
+import dbsr.model.tree.EntityTreeInterner;
 import dbsr.workload.QueryPlan;
 import dbsr.workload.Sequence;
+import dbsr.workload.WorkloadCompiler;
 import dbsr.workload.query.Query;
 
 /**
@@ -56,19 +85,31 @@ import dbsr.workload.query.Query;
  */
 public class MultiSequenceCandidateGenerator {
 	
+	private static final Logger LOGGER = Logger.getLogger(MultiSequenceCandidateGenerator.class.getName());
+	
 	private final Set<Sequence> sequences;
 	
-	private Set<CandidateSequences> candidates = new HashSet<CandidateSequences>();
+	/**
+	 * Canonical instances of the candidates, concurrent since worker threads read them during parallel generation.
+	 */
+	private final CandidateRegistry<CandidateSequences> registry = new CandidateRegistry<CandidateSequences>();
 	
 	/**
-	 * Set of QueryPlans sorted by their length.
+	 * Registered candidates, a view of the registry.
 	 */
-	private HashMap<Sequence, QueryPlansBucket> existingQueryPlans = new HashMap<Sequence, QueryPlansBucket>();
+	private final Set<CandidateSequences> candidates = registry.getCandidates();
 	
 	/**
-	 * All generated query plans, prevents re-generation of a removed QP.
+	 * Query plans per sequence, ordered by cost and by their length.
 	 */
-	private HashSet<QueryPlan<CandidateSequences>> generatedQueryPlans = new HashSet<QueryPlan<CandidateSequences>>();
+	private HashMap<Sequence, QueryPlanStore<CandidateSequences>> existingQueryPlans = new HashMap<Sequence, QueryPlanStore<CandidateSequences>>();
+	
+	/**
+	 * Fingerprints of all generated query plans, prevents re-generation of a removed QP.
+	 * 
+	 * Bounded in memory, see {@link Config#GENERATED_PLANS_MEMORY}.
+	 */
+	private QueryPlanFingerprints generatedQueryPlans = new QueryPlanFingerprints();
 	
 	/**
 	 * Initial list of candidates per entity (table e.g. users).
@@ -80,18 +121,102 @@ public class MultiSequenceCandidateGenerator {
 	/**
 	 * All remaining query plans to evaluate for optimization.
 	 */
-	private LinkedList<QueryPlan<CandidateSequences>> queryPlansStack = new LinkedList<QueryPlan<CandidateSequences>>();
+	private final QueryPlanFrontier<CandidateSequences> queryPlansStack;
 	
 	/**
 	 * Collection of queries affecting a single table (entity).
 	 */
 	private final HashMap<Entity, Set<Query>> queriesPerEntity;
 	
+	/**
+	 * Dense ids of the entities, fields, queries and sequences.
+	 */
+	private final WorkloadCompiler workload;
+	
 	/**
 	 * List of entities (tables).
 	 */
 	private final Set<Entity> entities;
 	
+	/**
+	 * Number of query plans optimized concurrently.
+	 */
+	private int parallelism = Config.PARALLEL_GENERATION ? Config.GENERATION_THREADS : 1;
+	
+	/**
+	 * Canonical candidate trees, registered candidate trees are frozen.
+	 */
+	private final EntityTreeInterner treeInterner = new EntityTreeInterner();
+	
+	/**
+	 * Merges of pairs of registered candidates, shared by the query plans optimized.
+	 */
+	private final MergeCache<CandidateSequences> mergeCache = new MergeCache<CandidateSequences>();
+	
+	/**
+	 * Step costs shared by the query plans of this generator.
+	 */
+	private final CostStepCache costStepCache = new CostStepCache();
+	
+	/**
+	 * Threads notifying subscribed query plans of new candidates.
+	 */
+	private NotifierPool notifierPool = NotifierPool.getDefault();
+	
+	/**
+	 * Number of iterations whose new candidates are notified together, 0 notifies each candidate when it is registered.
+	 */
+	private int notificationWindow = Config.NOTIFICATION_WINDOW;
+	
+	/**
+	 * Registered candidates waiting to be notified at the end of the notification window.
+	 */
+	private final List<CandidateSequences> pendingCandidates = new ArrayList<CandidateSequences>();
+	
+	private int pendingIterations = 0;
+	
+	/**
+	 * Counters of the generation, exported through a {@link MetricsReporter}.
+	 */
+	private final GenerationMetrics metrics = new GenerationMetrics(notifierPool, costStepCache);
+	
+	/**
+	 * Writes a snapshot of the metrics periodically, if set.
+	 */
+	private MetricsReporter metricsReporter;
+	
+	/**
+	 * Records the events of the generation, if set.
+	 */
+	private TraceRecorder trace;
+	
+	/**
+	 * Delivers the events of the generation to listeners.
+	 */
+	private final GenerationEvents<CandidateSequences> events = new GenerationEvents<CandidateSequences>();
+	
+	/**
+	 * Selects the query plans to prune per sequence, and keeps the time spent pruning.
+	 */
+	private final QueryPlanPruner<Sequence, CandidateSequences> queryPlanPruner = new QueryPlanPruner<Sequence, CandidateSequences>();
+	
+	/**
+	 * Best query plans found by the current or last generation run.
+	 */
+	private volatile Recommendation recommendation;
+	
+	/**
+	 * Iterations completed over all generation runs, including those before resuming from a checkpoint.
+	 */
+	private int completedIterations = 0;
+	
+	/**
+	 * Writes the generator state every checkpoint interval, if set.
+	 */
+	private GeneratorCheckpoint checkpoint;
+	
+	private int checkpointInterval = Config.CHECKPOINT_INTERVAL;
+	
 	/**
 	 * Initializes the generator with a set of sequences.
 	 * 
@@ -100,29 +225,86 @@ public class MultiSequenceCandidateGenerator {
 	 * @param sequences
 	 */
 	public MultiSequenceCandidateGenerator(Set<Sequence> sequences) {
+		this(sequences, Config.BEST_FIRST_SEARCH ? new QueryPlanPriority.WeightedCost<CandidateSequences>() : null);
+	}
+	
+	/**
+	 * Initializes the generator with a set of sequences, and explores the query plans best-first.
+	 * 
+	 * @param sequences
+	 * @param priority
+	 * 		  Order in which query plans are optimized, lowest first. Null explores them in the order they were generated.
+	 */
+	public MultiSequenceCandidateGenerator(Set<Sequence> sequences, QueryPlanPriority<CandidateSequences> priority) {
+		this(sequences, priority, WorkloadCompiler.compile(sequences), true);
+	}
+	
+	/**
+	 * Initializes the generator with a part of a compiled workload, e.g. a component of the {@link ComponentCandidateGenerator}.
+	 * 
+	 * @param sequences
+	 * @param priority
+	 * @param workload
+	 * 		  Compilation of the workload the sequences are part of.
+	 */
+	MultiSequenceCandidateGenerator(Set<Sequence> sequences, QueryPlanPriority<CandidateSequences> priority, WorkloadCompiler workload) {
+		this(sequences, priority, workload, true);
+	}
+	
+	private MultiSequenceCandidateGenerator(Set<Sequence> sequences, QueryPlanPriority<CandidateSequences> priority, WorkloadCompiler workload, boolean createRootQueryPlans) {
 		this.sequences = sequences;
+		this.workload = workload;
+		this.queryPlansStack = new QueryPlanFrontier<CandidateSequences>(priority);
 		this.entities = getEntities(sequences);
 		this.queriesPerEntity = getQueriesPerEntity(sequences);
 		
 		// Create Entity - Candidates HashMap function
 		// for Entity; createEntityCandidates....
-		this.initialCandidatesPerEntity = new HashMap<Entity, Set<EntityTree>>();
+		this.initialCandidatesPerEntity = getInitialCandidates(entities);
 		
-		for(Entity entity: entities) {
-			Set<EntityTree> treeCandidates = this.getInitialCandidatesPerEntity(entity);
-			System.out.println(entity);
-			System.out.println(treeCandidates);
-			this.initialCandidatesPerEntity.put(entity, treeCandidates);
-		}
-		
-		System.out.println(initialCandidatesPerEntity);
+		LOGGER.log(Level.FINE, "Initial candidates: {0}", initialCandidatesPerEntity);
 		
+		if(!createRootQueryPlans) {
+			// Every sequence has a bucket, also when all its query plans are pruned.
+			for(Sequence seq: sequences)
+				existingQueryPlans.put(seq, new QueryPlanStore<CandidateSequences>());
+			
+			return;
+		}
 		
 		for(Sequence seq: sequences) {
 			createRootQueryplans(seq);
 		}
 	}
 	
+	/**
+	 * Resumes a generator from a checkpoint, written for the same sequences.
+	 * 
+	 * @param sequences
+	 * @param checkpoint
+	 * @return
+	 * @throws IOException
+	 */
+	public static MultiSequenceCandidateGenerator resume(Set<Sequence> sequences, Path checkpoint) throws IOException {
+		return resume(sequences, Config.BEST_FIRST_SEARCH ? new QueryPlanPriority.WeightedCost<CandidateSequences>() : null, checkpoint);
+	}
+	
+	/**
+	 * Resumes a generator from a checkpoint, written for the same sequences, and explores the query plans best-first.
+	 * 
+	 * @param sequences
+	 * @param priority
+	 * @param checkpoint
+	 * @return
+	 * @throws IOException
+	 */
+	public static MultiSequenceCandidateGenerator resume(Set<Sequence> sequences, QueryPlanPriority<CandidateSequences> priority, Path checkpoint) throws IOException {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(sequences, priority, WorkloadCompiler.compile(sequences), false);
+		GeneratorCheckpoint.read(generator, checkpoint);
+		
+		return generator;
+	}
+	
 	/**
 	 * Groups all related queries on the same table (entity).
 	 * 
@@ -149,208 +331,786 @@ public class MultiSequenceCandidateGenerator {
 		return queriesPerEntity;
 	}
 	
+	/**
+	 * Creates the initial candidates of each entity, concurrently if {@link Config#PARALLEL_INITIAL_CANDIDATES}.
+	 * 
+	 * @param entities
+	 * @return
+	 */
+	private HashMap<Entity, Set<EntityTree>> getInitialCandidates(Set<Entity> entities) {
+		List<Entity> entityList = new ArrayList<Entity>(entities);
+		List<Callable<Set<EntityTree>>> tasks = new ArrayList<Callable<Set<EntityTree>>>();
+		
+		for(final Entity entity: entityList) {
+			tasks.add(new Callable<Set<EntityTree>>() {
+				@Override
+				public Set<EntityTree> call() {
+					return getInitialCandidatesPerEntity(entity);
+				}
+			});
+		}
+		
+		HashMap<Entity, Set<EntityTree>> candidatesPerEntity = new HashMap<Entity, Set<EntityTree>>();
+		
+		if(!Config.PARALLEL_INITIAL_CANDIDATES || entityList.size() <= 1) {
+			for(Entity entity: entityList)
+				candidatesPerEntity.put(entity, getInitialCandidatesPerEntity(entity));
+			
+			return candidatesPerEntity;
+		}
+		
+		try {
+			List<Future<Set<EntityTree>>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+			
+			for(int i=0; i < entityList.size(); i++)
+				candidatesPerEntity.put(entityList.get(i), results.get(i).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while creating the initial candidates.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to create the initial candidates.", e.getCause());
+		}
+		
+		return candidatesPerEntity;
+	}
+	
 	/**
 	 * Creates possible candidate tables based on the list of queries affecting a table (entity).
 	 * 
-	 * TODO: Optimization? E.g. reduce number of max candidates to e.g. 10; calculate distance between and merge candidates.
+	 * A candidate answers a subset of the queries, only its affected fields matter:
+	 * the candidates are the closure of the affected fields of the queries under union,
+	 * with at most {@link Config#MAX_INITIAL_CANDIDATES_PER_ENTITY} field sets, see {@link FieldSetLattice}.
 	 * 
 	 * @param entity
 	 */
 	private Set<EntityTree> getInitialCandidatesPerEntity(Entity entity) {
-		Set<Query> queries = this.queriesPerEntity.get(entity);		
-		HashMap<Set<Field>, EntityTree> candidates = new HashMap<Set<Field>, EntityTree>();
+		FieldSetLattice<Query> lattice = new FieldSetLattice<Query>(Config.MAX_INITIAL_CANDIDATES_PER_ENTITY);
 		
-		/**
-		 * HashMap<Set<Field>, Candidate> ?
-		 */
-		for(Query qry: queries) {
-			ArrayList<Query> qryList = new ArrayList<Query>();
-			qryList.add(qry);
+		for(Query qry: this.queriesPerEntity.get(entity))
+			lattice.add(qry, qry.getAffectedFieldIds());
+		
+		Set<EntityTree> treeCandidates = new HashSet<EntityTree>();
+		
+		for(List<Query> queries: lattice.getFieldSets().values())
+			treeCandidates.add(new EntityTree(entity, new ArrayList<Query>(queries)));
+		
+		if(LOGGER.isLoggable(Level.FINE))
+			LOGGER.fine(entity.getName() + ": " + treeCandidates.size() + " initial candidates, " + lattice.getClustered() + " clustered");
+		
+		return treeCandidates;
+	}
+	
+	/**
+	 * Enumerates the query pathings over EntityTrees for a given query path lazily,
+	 * the EntityTrees of each query are those of its entity which can answer it.
+	 * 
+	 * At most {@link Config#MAX_ROOT_QUERY_PLANS_PER_SEQUENCE} pathings are enumerated,
+	 * the first ones or a sample if {@link Config#SAMPLE_ROOT_QUERY_PLANS}.
+	 * 
+	 * @param queryPath
+	 * @return
+	 */
+	private Iterator<List<EntityTree>> getQueryPathings(LinkedList<Query> queryPath) {
+		List<List<EntityTree>> choices = new ArrayList<List<EntityTree>>();
+		
+		for(Query qry: queryPath) {
+			List<EntityTree> queryChoices = new ArrayList<EntityTree>();
 			
-			EntityTree newTree = new EntityTree(qry.getEntity(), qryList);
-			Set<Field> affectedFields = newTree.getAffectedFields();
+			for(EntityTree candidate: this.initialCandidatesPerEntity.get(qry.getEntity())) {
+				if(candidate.canQuery(qry))
+					queryChoices.add(candidate);
+			}
 			
-			System.out.println(qry);
-			System.out.println(newTree.getAffectedFields());
+			choices.add(queryChoices);
+		}
+		
+		QueryPathings<EntityTree> pathings = new QueryPathings<EntityTree>(choices);
+		
+		if(pathings.getNumberOfPathings() <= Config.MAX_ROOT_QUERY_PLANS_PER_SEQUENCE)
+			return pathings;
+		
+		LOGGER.log(Level.FINE, "{0} root query plans, limited to {1}", new Object[] { pathings.getNumberOfPathings(), Config.MAX_ROOT_QUERY_PLANS_PER_SEQUENCE });
+		
+		if(Config.SAMPLE_ROOT_QUERY_PLANS)
+			return pathings.sample(Config.MAX_ROOT_QUERY_PLANS_PER_SEQUENCE, new Random(Config.ROOT_QUERY_PLANS_SEED)).iterator();
+		
+		return Iterators.limit(pathings, Config.MAX_ROOT_QUERY_PLANS_PER_SEQUENCE);
+	}
+	
+	/**
+	 * Creates the initial set of candidates.
+	 * The root query plans are added as they are enumerated.
+	 * 
+	 * @param Sequence
+	 * 		  Create root candidates for a given sequence.
+	 */
+	private void createRootQueryplans(Sequence sequence) {
+		
+		LOGGER.log(Level.FINE, "Root query plans of {0}", sequence);
+		
+		Iterator<List<EntityTree>> queryPathings = getQueryPathings(sequence.getQueryPath());
+		
+		// Per path: Create query plan and candidates based on a path of EntityTrees.
+		while(queryPathings.hasNext()) {
+			List<EntityTree> queryPath = queryPathings.next();
+			Iterator<Query> queries = sequence.getQueryPath().iterator();
 			
-			if(!candidates.containsKey(affectedFields))
-				candidates.put(affectedFields, newTree);
+			LinkedList<CandidateSequences> rootCandidates = new LinkedList<CandidateSequences>();
+			QueryPlan<CandidateSequences> rootPlan = new QueryPlan<CandidateSequences>(sequence, rootCandidates);		
+			rootPlan.setCostStepCache(costStepCache);
 			
-			for(EntityTree tree: candidates.values()) {
-				newTree = tree.clone();
-				newTree.addQuery(qry);
+			for(EntityTree candidateTree: queryPath) {
+				CandidateSequences candidate = new CandidateSequences(candidateTree);
+				candidate.intern(treeInterner);
+				candidate = registry.getOrCreate(candidate);
 				
-				if(!tree.getAffectedFields().equals(newTree.getAffectedFields()))
-					if(!candidates.containsKey(newTree.getAffectedFields()))
-						candidates.put(newTree.getAffectedFields(), newTree);
+				// Create query data mapping
+				LinkedList<Query> queryMap = new LinkedList<Query>();
+				queryMap.add(queries.next());
+				rootPlan.getMapping().put(rootPlan.getMapping().size(), queryMap);
+				
+				rootCandidates.add(candidate);
 			}
+			
+			rootPlan.invalidateCost();
+			
+			if(LOGGER.isLoggable(Level.FINER))
+				LOGGER.finer(rootPlan.toString());
+			
+			addQueryPlan(rootPlan);
 		}
+	}
+	
+	public void startGeneration() {
+		long startTime = System.currentTimeMillis();
+		startGeneration(Config.MAX_ITERATIONS);
 		
-		Set<EntityTree> treeCandidates = new HashSet<EntityTree>();
-		treeCandidates.addAll(candidates.values());
-		return treeCandidates;
+		long endTime   = System.currentTimeMillis();
+		long totalTime = endTime - startTime;
+		LOGGER.log(Level.INFO, "Execution time {0}ms", totalTime);
+	}
+	
+	/**
+	 * Start popping the root query plan and inserting new query plans until
+	 * the stack is no longer altered.
+	 */
+	public void startGeneration(int cycles) {
+		startGeneration(new GenerationBudget(cycles));
 	}
 	
 	/**
-	 * Creates all possible query pathings over EntityTrees for a given query path.
+	 * Generates until the stack is no longer altered, or a limit of the budget is reached.
 	 * 
+	 * The data structures are pruned when the generation stops, unless it was cancelled.
 	 * 
-	 * @param queryPath
-	 * @return
+	 * @param budget
+	 * @return The best query plans found.
 	 */
-	private Set<LinkedList<EntityTree>> getPossibleQueryPlans(LinkedList<Query> queryPath) {
-		// First step, create basic stack of Q0 candidates.
-		Iterator<Query> queryIterator = queryPath.iterator();
-		Query qry = queryIterator.next();
+	public Recommendation startGeneration(GenerationBudget budget) {
+		GenerationBudget.Tracker run = budget.start();
+		StopReason reason;
 		
-	
-		Set<EntityTree> candidates = this.initialCandidatesPerEntity.get(qry.getEntity());
+		if(parallelism > 1)
+			reason = startParallelGeneration(run);
+		else
+			reason = startSequentialGeneration(run);
 		
-//		Candidate EntityTrees
-//		for(EntityTree et: candidates)
-//			System.out.println(et.getQueries());
+		notifyPendingCandidates();
 		
-		HashSet<LinkedList<EntityTree>> queryPathings = new HashSet<LinkedList<EntityTree>>();
+		// Stopped before the final pruning of the generation schedule.
+		if(reason == StopReason.DEADLINE || reason == StopReason.MEMORY || reason == StopReason.CONVERGED)
+			pruneOrCompact(0);
 		
-		for(EntityTree candidate: candidates) {
-			if(candidate.canQuery(qry)) {
-				LinkedList<EntityTree> candidatePathing = new LinkedList<EntityTree>();
-				candidatePathing.add(candidate);
-				queryPathings.add(candidatePathing);
-			}
+		if(checkpoint != null) {
+			checkpoint.write(this);
+			checkpoint.await();
+		}
+		
+		if(metricsReporter != null)
+			writeMetricsSnapshot();
+		
+		if(trace != null)
+			trace.flush();
+		
+		if(LOGGER.isLoggable(Level.INFO)) {
+			LOGGER.info("---End generation--- " + reason);
+			LOGGER.info(generatedQueryPlans.toString());
+			LOGGER.info(queryPlanPruner.toString());
+			LOGGER.info(mergeCache.toString());
+			LOGGER.info(metrics.toString());
+			
+			if(Config.MULTI_THREADING_NOTIFIER)
+				LOGGER.info(notifierPool.toString());
 		}
+		
+		recommendation = createRecommendation(run, reason);
+		
+		return recommendation;
+	}
+	
+	private StopReason startSequentialGeneration(GenerationBudget.Tracker run) {
+		StopReason reason = run.check();
+		
+		while(reason == null) {
+			if(queryPlansStack.isEmpty())
+				return StopReason.EXHAUSTED;
+			
+			int cycles = run.getRemainingIterations() - 1;
+			
+//			printQueryPlansPerSequence();
+			
+			if(LOGGER.isLoggable(Level.FINE))
+				LOGGER.fine("--- Iteration --- " + cycles + ", frontier: " + queryPlansStack.size());
+			
+			QueryPlan<CandidateSequences> root = queryPlansStack.poll();
+			tracePopped(root);
+			
+//			System.out.println("Optimizing: " + root);
+			Set<CandidateSequences> newCandidates = optimize(root);
+			
+//			System.out.println("New Candidates: " + newCandidates);
+			
+			registerNewCandidates(newCandidates, cycles);
+			
+			pruneOrCompact(cycles);
+			
+			endIteration(run);
+			reason = run.check();
+		}
+		
+		return reason;
+	}
+	
+	/**
+	 * Parallel variant of the generation loop.
+	 * 
+	 * A batch of query plans is popped from the frontier and optimized concurrently.
+	 * The new candidates are then registered in the order the query plans were popped,
+	 * followed by the same pruning and compaction schedule as the sequential loop.
+	 * 
+	 * A query plan pruned while its batch is registered is skipped and does not count as an iteration,
+	 * as it would never have been popped by the sequential loop.
+	 * In FIFO mode, this yields the same pop order as the sequential loop. 
+	 * Results can differ slightly, since candidates merge based on the subscribed query plans at the start of the batch.
+	 * 
+	 * When the budget runs out within a batch, the remaining query plans of the batch return to the frontier.
+	 */
+	private StopReason startParallelGeneration(GenerationBudget.Tracker run) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		StopReason reason = run.check();
+		
+		try {
+			while(reason == null) {
+				if(queryPlansStack.isEmpty())
+					return StopReason.EXHAUSTED;
+				
+				List<QueryPlan<CandidateSequences>> batch = new ArrayList<QueryPlan<CandidateSequences>>();
+				
+				while(batch.size() < Math.min(run.getRemainingIterations(), Config.GENERATION_BATCH_SIZE) && !queryPlansStack.isEmpty())
+					batch.add(queryPlansStack.poll());
+				
+				List<OptimizeTask> tasks = new ArrayList<OptimizeTask>();
+				
+				for(QueryPlan<CandidateSequences> qp: batch)
+					tasks.add(new OptimizeTask(qp));
 				
-		// Next steps, check each candidate, add new candidate option if possible. (can grow N*N).
-		while(queryIterator.hasNext()) {
-			qry = queryIterator.next();
-			HashSet<LinkedList<EntityTree>> newQueryPathings = new HashSet<LinkedList<EntityTree>>();
-			
-			candidates = this.initialCandidatesPerEntity.get(qry.getEntity());
-			
-			for(EntityTree candidate: candidates) {
-				if(candidate.canQuery(qry)) {
-					// Add this candidate step to all PREVIOUS steps. (= LARGE)
-					for(LinkedList<EntityTree> path: queryPathings) {
-						LinkedList<EntityTree> newPath = new LinkedList<EntityTree>(path);
-						newPath.add(candidate);
-						newQueryPathings.add(newPath);
+				List<Future<Set<CandidateSequences>>> results = pool.invokeAll(tasks);
+				
+				for(int i=0; i < batch.size(); i++) {
+					QueryPlan<CandidateSequences> root = batch.get(i);
+					
+					if(!existingQueryPlans.get(root.getSequence()).contains(root))
+						continue;
+					
+					if(reason != null) {
+						queryPlansStack.add(root);
+						continue;
 					}
+					
+					int cycles = run.getRemainingIterations() - 1;
+					tracePopped(root);
+					
+					if(LOGGER.isLoggable(Level.FINE))
+						LOGGER.fine("--- Iteration --- " + cycles + ", frontier: " + queryPlansStack.size());
+					
+					registerNewCandidates(getResult(results.get(i)), cycles);
+					
+					pruneOrCompact(cycles);
+					
+					endIteration(run);
+					reason = run.check();
 				}
 			}
+		} finally {
+			pool.shutdown();
+		}
+		
+		return reason;
+	}
+	
+	/**
+	 * Records the iteration, and keeps the recommendation if the query plans improved.
+	 * 
+	 * @param run
+	 */
+	private void endIteration(GenerationBudget.Tracker run) {
+		completedIterations++;
+		metrics.iteration(queryPlansStack.size());
+		
+		if(checkpoint != null && completedIterations % checkpointInterval == 0) {
+			notifyPendingCandidates();
+			checkpoint.write(this);
+		}
+		
+		Map<Sequence, QueryPlan<CandidateSequences>> bestQueryPlans = getBestQueryPlans();
+		double weightedCost = Recommendation.getWeightedCost(bestQueryPlans);
+		
+		if(trace != null)
+			trace.iteration(weightedCost, queryPlansStack.size());
+		
+		events.iteration(completedIterations, weightedCost, queryPlansStack.size());
+		
+		if(run.iteration(weightedCost)) {
+			recommendation = new Recommendation(bestQueryPlans, run.getIterations(), TimeUnit.NANOSECONDS.toMillis(run.getElapsedNanos()), null);
+			events.bestPlanImproved(recommendation.getQueryPlans(), weightedCost);
+		}
+	}
+	
+	/**
+	 * Starts tracing the next iteration, with the query plan optimized.
+	 * 
+	 * @param root
+	 */
+	private void tracePopped(QueryPlan<CandidateSequences> root) {
+		if(trace == null)
+			return;
+		
+		trace.setIteration(completedIterations + 1);
+		trace.popped(root.getCost(), root.getSequence().getId());
+	}
+	
+	private Recommendation createRecommendation(GenerationBudget.Tracker run, StopReason reason) {
+		return new Recommendation(getBestQueryPlans(), run.getIterations(), TimeUnit.NANOSECONDS.toMillis(run.getElapsedNanos()), reason);
+	}
+	
+	/**
+	 * Cheapest query plan of each sequence.
+	 * 
+	 * @return
+	 */
+	private Map<Sequence, QueryPlan<CandidateSequences>> getBestQueryPlans() {
+		Map<Sequence, QueryPlan<CandidateSequences>> bestQueryPlans = new LinkedHashMap<Sequence, QueryPlan<CandidateSequences>>();
+		
+		for(Sequence seq: sequences) {
+			QueryPlanStore<CandidateSequences> store = existingQueryPlans.get(seq);
+			QueryPlan<CandidateSequences> best = store == null ? null : store.getBest();
 			
-			queryPathings = newQueryPathings;
+			if(best != null)
+				bestQueryPlans.put(seq, best);
 		}
 		
-		return queryPathings;
+		return bestQueryPlans;
+	}
+	
+	private Set<CandidateSequences> getResult(Future<Set<CandidateSequences>> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while optimizing query plans.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to optimize query plan.", e.getCause());
+		}
+	}
+	
+	/**
+	 * Registers the candidates which do not exist yet.
+	 * Notifies the subscribed query plans of each new candidate, and adds the resulting query plans.
+	 * 
+	 * Within a notification window, the new candidates are notified together at the end of the window,
+	 * or before the data structures are pruned.
+	 * 
+	 * @param newCandidates
+	 * @param cycles Remaining iterations after this one.
+	 */
+	private void registerNewCandidates(Set<CandidateSequences> newCandidates, int cycles) {
+		int deduplicated = 0;
+		
+		for(CandidateSequences candidate: newCandidates) {
+			candidate.intern(treeInterner);
+			
+			if(!registry.add(candidate)) {
+				// Later merges of the pair return the registered candidate.
+				mergeCache.setCanonical(candidate, registry.get(candidate));
+				deduplicated++;
+				continue;
+			}
+			
+			mergeCache.setCanonical(candidate, candidate);
+			
+			if(trace != null)
+				trace.merged(candidate.getId(), getId(candidate.getLeftMerge()), getId(candidate.getRightMerge()));
+			
+			events.candidateRegistered(candidate);
+			
+			if(notificationWindow == 0)
+				notifyCandidates(Collections.singletonList(candidate));
+			else
+				pendingCandidates.add(candidate);
+		}
+		
+		metrics.candidatesCreated(newCandidates.size() - deduplicated, deduplicated);
+		
+		if(notificationWindow > 0 && (++pendingIterations >= notificationWindow || cycles == 0 || queryPlansStack.isEmpty()))
+			notifyPendingCandidates();
+	}
+	
+	/**
+	 * Notifies the candidates registered in the current notification window.
+	 */
+	private void notifyPendingCandidates() {
+		pendingIterations = 0;
+		
+		if(pendingCandidates.isEmpty())
+			return;
+		
+		List<CandidateSequences> pending = new ArrayList<CandidateSequences>();
+		
+		// Skip candidates pruned within the window.
+		for(CandidateSequences candidate: pendingCandidates) {
+			if(registry.get(candidate) == candidate)
+				pending.add(candidate);
+		}
+		
+		pendingCandidates.clear();
+		
+		if(!pending.isEmpty())
+			notifyCandidates(pending);
+	}
+	
+	/**
+	 * Notifies the subscribed query plans of new candidates in a single pass, and adds the resulting query plans.
+	 * 
+	 * @param newCandidates
+	 */
+	private void notifyCandidates(List<CandidateSequences> newCandidates) {
+		// Notify subscribed QPs of new data structures.
+		Set<QueryPlan<CandidateSequences>> newQPs;
+		long start = System.nanoTime();
+		
+		if(Config.MULTI_THREADING_NOTIFIER) {
+			QueryPlanNotifier<CandidateSequences> notifier = new QueryPlanNotifier<CandidateSequences>(newCandidates, generatedQueryPlans, notifierPool);
+			newQPs = notifier.getNewQueryPlans();
+			
+			if(trace != null) {
+				for(int i=0; i < newCandidates.size(); i++)
+					trace.notified(newCandidates.get(i).getId(), notifier.getNewQueryPlans(i));
+			}
+		} else {
+			newQPs = new HashSet<QueryPlan<CandidateSequences>>();
+			
+			for(CandidateSequences candidate: newCandidates) {
+				Set<QueryPlan<CandidateSequences>> candidateQPs = candidate.notifySubscribers(candidate);
+				Iterator<QueryPlan<CandidateSequences>> it = candidateQPs.iterator();
+				
+				while(it.hasNext()) {
+					if(generatedQueryPlans.contains(it.next()))
+						it.remove();
+				}
+				
+				if(trace != null)
+					trace.notified(candidate.getId(), candidateQPs.size());
+				
+				newQPs.addAll(candidateQPs);
+			}
+		}
+		
+		metrics.notification(System.nanoTime() - start, newQPs.size());
+		
+		for(QueryPlan<CandidateSequences> qp: newQPs) {
+			generatedQueryPlans.add(qp);
+			addQueryPlan(qp);
+		}
+		
+		events.queryPlansAdded(newQPs);
+	}
+	
+	/**
+	 * New candidates merging adjacent candidates of the query plan.
+	 * 
+	 * @param qp
+	 * @return
+	 */
+	private Set<CandidateSequences> optimize(QueryPlan<CandidateSequences> qp) {
+		return Config.MERGE_CACHING ? qp.optimize(mergeCache) : qp.optimize();
+	}
+	
+	public MergeCache<CandidateSequences> getMergeCache() {
+		return mergeCache;
+	}
+	
+	public CostStepCache getCostStepCache() {
+		return costStepCache;
+	}
+	
+	private static int getId(Candidate<CandidateSequences> candidate) {
+		return candidate == null ? -1 : candidate.getId();
+	}
+	
+	/**
+	 * Restores a registered candidate with its id, in the order of their ids.
+	 * 
+	 * @param candidate
+	 * @param id
+	 * @param alive False if the candidate was pruned.
+	 */
+	void restoreCandidate(CandidateSequences candidate, int id, boolean alive) {
+		candidate.intern(treeInterner);
+		registry.restore(candidate, id, alive);
+	}
+	
+	void restoreNextCandidateId(int nextId) {
+		registry.restoreNextId(nextId);
+	}
+	
+	int getNextCandidateId() {
+		return registry.getNextId();
+	}
+	
+	/**
+	 * Restores an existing query plan, without adding it to the frontier.
+	 * 
+	 * @param qp
+	 */
+	void restoreQueryPlan(QueryPlan<CandidateSequences> qp) {
+		qp.setCostStepCache(costStepCache);
+		qp.subscribeToCandidates();
+		existingQueryPlans.get(qp.getSequence()).add(qp);
+	}
+	
+	void restoreGeneratedQueryPlans(QueryPlanFingerprints generatedQueryPlans) {
+		this.generatedQueryPlans = generatedQueryPlans;
+	}
+	
+	List<CandidateSequences> getRegisteredCandidates() {
+		return registry.getRegisteredCandidates();
+	}
+	
+	QueryPlanFrontier<CandidateSequences> getFrontier() {
+		return queryPlansStack;
+	}
+	
+	void setCompletedIterations(int completedIterations) {
+		this.completedIterations = completedIterations;
+	}
+	
+	/**
+	 * Iterations completed over all generation runs, including those before resuming from a checkpoint.
+	 * 
+	 * @return
+	 */
+	public int getCompletedIterations() {
+		return completedIterations;
+	}
+	
+	/**
+	 * Checkpoints the generator state to the file every {@link Config#CHECKPOINT_INTERVAL} iterations, 
+	 * and when a generation run ends.
+	 * 
+	 * @param file Null stops checkpointing.
+	 */
+	public void setCheckpoint(Path file) {
+		setCheckpoint(file, Config.CHECKPOINT_INTERVAL);
+	}
+	
+	/**
+	 * Checkpoints the generator state to the file every given number of iterations, and when a generation run ends.
+	 * 
+	 * @param file Null stops checkpointing.
+	 * @param interval
+	 */
+	public void setCheckpoint(Path file, int interval) {
+		if(interval < 1)
+			throw new IllegalArgumentException("Checkpoint interval should be at least 1.");
+		
+		if(checkpoint != null)
+			checkpoint.close();
+		
+		this.checkpoint = file == null ? null : new GeneratorCheckpoint(file);
+		this.checkpointInterval = interval;
+	}
+	
+	/**
+	 * @param id
+	 * @return The registered candidate with the given id, or null if it was pruned.
+	 */
+	public CandidateSequences getCandidate(int id) {
+		return registry.getCandidate(id);
+	}
+	
+	/**
+	 * Number of threads optimizing query plans concurrently, 1 runs the sequential generation loop.
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism should be at least 1.");
+		
+		this.parallelism = parallelism;
+	}
+	
+	public int getParallelism() {
+		return this.parallelism;
+	}
+	
+	/**
+	 * Sets the pool notifying query plans of new candidates, 
+	 * by default the pool is shared with other generators.
+	 * 
+	 * @param notifierPool
+	 */
+	public void setNotifierPool(NotifierPool notifierPool) {
+		if(notifierPool == null)
+			throw new IllegalArgumentException("Notifier pool should not be null.");
+		
+		this.notifierPool = notifierPool;
+		this.metrics.setNotifierPool(notifierPool);
+	}
+	
+	public NotifierPool getNotifierPool() {
+		return this.notifierPool;
+	}
+	
+	/**
+	 * Number of iterations whose new candidates are notified together, 
+	 * in a single pass over the query plans subscribed to any of them.
+	 * 
+	 * 0 notifies each new candidate when it is registered, 
+	 * so query plans generated by a candidate can be rewritten with the next candidates of the same iteration.
+	 * 
+	 * @param notificationWindow
+	 */
+	public void setNotificationWindow(int notificationWindow) {
+		if(notificationWindow < 0)
+			throw new IllegalArgumentException("Notification window should not be negative.");
+		
+		notifyPendingCandidates();
+		this.notificationWindow = notificationWindow;
+	}
+	
+	public int getNotificationWindow() {
+		return this.notificationWindow;
+	}
+	
+	/**
+	 * Counters of all generation runs.
+	 * 
+	 * @return
+	 */
+	public GenerationMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * Writes a JSON snapshot of the metrics to the file every {@link Config#METRICS_SNAPSHOT_INTERVAL} seconds, 
+	 * and when a generation run ends.
+	 * 
+	 * @param file Null stops writing snapshots.
+	 */
+	public void setMetricsSnapshot(Path file) {
+		if(metricsReporter != null)
+			metricsReporter.close();
+		
+		metricsReporter = null;
+		
+		if(file != null) {
+			metricsReporter = new MetricsReporter(metrics);
+			metricsReporter.startSnapshots(file, Config.METRICS_SNAPSHOT_INTERVAL, TimeUnit.SECONDS);
+		}
+	}
+	
+	/**
+	 * Adds a listener, which receives the events of the generation asynchronously.
+	 * 
+	 * @param listener
+	 */
+	public void addGenerationListener(GenerationListener<CandidateSequences> listener) {
+		events.addListener(listener);
+	}
+	
+	public boolean removeGenerationListener(GenerationListener<CandidateSequences> listener) {
+		return events.removeListener(listener);
+	}
+	
+	public GenerationEvents<CandidateSequences> getGenerationEvents() {
+		return events;
+	}
+	
+	/**
+	 * Records the events of the generation in a ring file of {@link Config#TRACE_CAPACITY} events, see {@link TraceReader}.
+	 * 
+	 * @param file Null stops tracing.
+	 * @throws IOException
+	 */
+	public void setTrace(Path file) throws IOException {
+		setTrace(file, Config.TRACE_CAPACITY);
 	}
 	
 	/**
-	 * Creates the initial set of candidates.
+	 * Records the events of the generation in a ring file, see {@link TraceReader}.
 	 * 
-	 * @param Sequence
-	 * 		  Create root candidates for a given sequence.
+	 * @param file Null stops tracing.
+	 * @param capacity Number of events kept.
+	 * @throws IOException
 	 */
-	private void createRootQueryplans(Sequence sequence) {
-		
-		System.out.println(sequence);
+	public void setTrace(Path file, int capacity) throws IOException {
+		if(trace != null)
+			trace.close();
 		
-		Set<LinkedList<EntityTree>> queryPathings = getPossibleQueryPlans(sequence.getQueryPath());
-		Set<QueryPlan<CandidateSequences>> rootPlans = new HashSet<QueryPlan<CandidateSequences>>();
+		trace = null;
 		
-		// Per path: Create query plan and candidates based on a path of EntityTrees.
-		for(LinkedList<EntityTree> queryPath : queryPathings) {
-			
-			LinkedList<CandidateSequences> rootCandidates = new LinkedList<CandidateSequences>();
-			QueryPlan<CandidateSequences> rootPlan = new QueryPlan<CandidateSequences>(sequence, rootCandidates);		
-			
-			for(EntityTree candidateTree: queryPath) {
-				CandidateSequences candidate = new CandidateSequences(candidateTree);
-				
-				if(candidates.contains(candidate)) {
-					for(CandidateSequences cand: candidates) {
-						if(cand.equals(candidate)) {
-							candidate = cand;
-						}
-					}
-				}
-				
-				// Create query data mapping
-				LinkedList<Query> queryMap = new LinkedList<Query>();
-				queryMap.add(sequence.getQueryPath().get(rootPlan.getMapping().size()));
-				rootPlan.getMapping().put(rootPlan.getMapping().size(), queryMap);
-				
-				rootPlans.add(rootPlan);
-				rootCandidates.add(candidate);
-			}
-			
-			System.out.println(rootPlan);
-			
-			addCandidates(rootCandidates);
-			addQueryPlans(rootPlans);
+		if(file != null)
+			trace = new TraceRecorder(file, capacity);
+	}
+	
+	private void writeMetricsSnapshot() {
+		try {
+			metricsReporter.writeSnapshot();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to write metrics snapshot.", e);
 		}
 	}
 	
-	public void startGeneration() {
-		long startTime = System.currentTimeMillis();
-		startGeneration(Config.MAX_ITERATIONS);
-		
-		long endTime   = System.currentTimeMillis();
-		long totalTime = endTime - startTime;
-		System.out.println("Execution time" + totalTime);
+	/**
+	 * Pruning statistics of all generation runs.
+	 * 
+	 * @return
+	 */
+	public QueryPlanPruner<Sequence, CandidateSequences> getQueryPlanPruner() {
+		return this.queryPlanPruner;
 	}
 	
 	/**
-	 * Start popping the root query plan and inserting new query plans until
-	 * the stack is no longer altered.
+	 * Optimizes a single query plan, on a worker thread.
+	 * 
+	 * Only reads the shared generator state, and drops candidates which are already registered.
 	 */
-	public void startGeneration(int cycles) {
-		while(!queryPlansStack.isEmpty() && cycles > 0) {
-			cycles--;
-			
-//			printQueryPlansPerSequence();
-			
-			System.out.println("--- Iteration ---" + cycles);
-			System.out.println(queryPlansStack.size());
-			QueryPlan<CandidateSequences> root = queryPlansStack.removeFirst();
-			
-//			System.out.println("Optimizing: " + root);
-			Set<CandidateSequences> newCandidates = root.optimize();
-			
-//			System.out.println("New Candidates: " + newCandidates);
-			
-			for(CandidateSequences candidate: newCandidates) {				
-				if(candidates.contains(candidate)) {
-					continue;
-				}
-				
-				TreeSet<QueryPlan<CandidateSequences>> iterationQueryPlans = new TreeSet<QueryPlan<CandidateSequences>>();
-				Set<Sequence> sequencesAffected = new HashSet<Sequence>();
-				
-				// Add candidate, notify subscribed QPs of new data structure.
-				if(!candidates.contains(candidate)) {
-					candidates.add(candidate);
-					Set<QueryPlan<CandidateSequences>> newQPs;
-					
-					if(Config.MULTI_THREADING_NOTIFIER) {
-						QueryPlanNotifier<CandidateSequences> notifier = new QueryPlanNotifier<CandidateSequences>(candidate, generatedQueryPlans);
-						newQPs = notifier.getNewQueryPlans();
-					} else {
-						newQPs = candidate.notifySubscribers(candidate);
-						newQPs.removeAll(generatedQueryPlans);
-					}
-										
-					generatedQueryPlans.addAll(newQPs);					
-					
-					for(QueryPlan<CandidateSequences> qp: newQPs) {
-						addQueryPlan(qp);
-					}
-				}
-			}
-			
-			pruneOrCompact(cycles);
+	private class OptimizeTask implements Callable<Set<CandidateSequences>> {
+		
+		private final QueryPlan<CandidateSequences> qp;
+		
+		public OptimizeTask(QueryPlan<CandidateSequences> qp) {
+			this.qp = qp;
 		}
 		
-		System.out.println("---End generation---");
+		@Override
+		public Set<CandidateSequences> call() {
+			Set<CandidateSequences> newCandidates = optimize(qp);
+			newCandidates.removeAll(candidates);
+			
+			return newCandidates;
+		}
 	}
 	
 	/**
@@ -367,7 +1127,11 @@ public class MultiSequenceCandidateGenerator {
 		}
 		
 //		System.out.println(removeQPs.size());
-		existingQueryPlans.get(seq).removeQueryPlans(removeQPs);
+		QueryPlanStore<CandidateSequences> store = existingQueryPlans.get(seq);
+		
+		for(QueryPlan<CandidateSequences> qp: removeQPs)
+			store.remove(qp);
+		
 		queryPlansStack.removeAll(removeQPs);	
 		
 	}
@@ -382,17 +1146,10 @@ public class MultiSequenceCandidateGenerator {
 	private void removeQueryPlan(QueryPlan<CandidateSequences> removeQP) {
 		removeQP.unsubscribeToCandidates();
 		
-		existingQueryPlans.get(removeQP.getSequence()).removeQueryPlan(removeQP);
+		existingQueryPlans.get(removeQP.getSequence()).remove(removeQP);
 		queryPlansStack.remove(removeQP);			
 	}
 
-	/**
-	 * Adds candidates.
-	 */
-	private void addCandidates(List<CandidateSequences> candidates) {
-		this.candidates.addAll(candidates);
-	}
-	
 	private void addQueryPlans(Collection<QueryPlan<CandidateSequences>> qps) {
 		for(QueryPlan<CandidateSequences> qp: qps)
 			addQueryPlan(qp);
@@ -403,7 +1160,7 @@ public class MultiSequenceCandidateGenerator {
 	 */
 	private void addQueryPlan(QueryPlan<CandidateSequences> qp) {	
 		if(!existingQueryPlans.containsKey(qp.getSequence()))
-			existingQueryPlans.put(qp.getSequence(), new QueryPlansBucket());
+			existingQueryPlans.put(qp.getSequence(), new QueryPlanStore<CandidateSequences>());
 		
 		if(existingQueryPlans.get(qp.getSequence()).contains(qp))
 			return;
@@ -414,7 +1171,7 @@ public class MultiSequenceCandidateGenerator {
 		qp.subscribeToCandidates();
 		
 //		System.out.println("add: " + qp);
-		this.existingQueryPlans.get(qp.getSequence()).addQueryPlan(qp);
+		this.existingQueryPlans.get(qp.getSequence()).add(qp);
 		
 		if(qp.size() > 1)
 			this.queryPlansStack.add(qp);
@@ -428,11 +1185,19 @@ public class MultiSequenceCandidateGenerator {
 		return sequences;
 	}
 	
+	public WorkloadCompiler getWorkload() {
+		return workload;
+	}
+	
+	public QueryPlanFingerprints getGeneratedQueryPlans() {
+		return generatedQueryPlans;
+	}
+	
 	public Set<QueryPlan<CandidateSequences>> getExistingQueryPlan(Sequence sequence) {
 		return this.existingQueryPlans.get(sequence).getQueryPlans();
 	}
 	
-	public HashMap<Sequence, QueryPlansBucket> getQueryPlansPerSequence() {
+	public HashMap<Sequence, QueryPlanStore<CandidateSequences>> getQueryPlansPerSequence() {
 		return this.existingQueryPlans;
 	}
 	
@@ -454,15 +1219,20 @@ public class MultiSequenceCandidateGenerator {
 	}
 	
 	/**
-	 * Can be called at the end of a generation process.
+	 * Best query plan per sequence found so far, and the data structures they use.
 	 * 
-	 * Filters best query plans per sequence, drops unused data structures.
-	 * Requires ranking.
+	 * Can be called from another thread during a generation run, 
+	 * it then returns the last recommendation which improved the weighted cost.
 	 * 
-	 * TODO: Implement
+	 * @return
 	 */
-	public void getRecommendation() {
+	public Recommendation getRecommendation() {
+		Recommendation current = recommendation;
+		
+		if(current == null)
+			return new Recommendation(getBestQueryPlans(), 0, 0, null);
 		
+		return current;
 	}
 	
 	/**
@@ -500,7 +1270,7 @@ public class MultiSequenceCandidateGenerator {
 				pruner.beforePruning();
 				
 				if(size != existingQueryPlans.get(seq).size()) {
-					System.out.println("Compacted: " + (size - existingQueryPlans.get(seq).size()));
+					LOGGER.log(Level.FINE, "Compacted: {0}", size - existingQueryPlans.get(seq).size());
 				}
 			}
 		}
@@ -510,9 +1280,9 @@ public class MultiSequenceCandidateGenerator {
 			Pruner pruner = new Pruner(this);
 			pruner.beforePruning();
 
-			System.out.println("Pruned data structures:" + candidates.size());
+			LOGGER.log(Level.FINE, "Pruned data structures: {0}", candidates.size());
 			pruner.pruneDataStructures();
-			System.out.println("Size data structures: " + candidates.size());
+			LOGGER.log(Level.FINE, "Size data structures: {0}", candidates.size());
 			
 			pruner = new Pruner(this);
 			pruner.beforePruning();
@@ -546,7 +1316,7 @@ public class MultiSequenceCandidateGenerator {
 			if(!newQP.getSequence().equals(seq))
 				continue;
 			
-			Set<QueryPlan<CandidateSequences>> setQPs = existingQueryPlans.get(seq).getQueryPlansOfSize(newQP.size() - 1);
+			Set<QueryPlan<CandidateSequences>> setQPs = existingQueryPlans.get(seq).getQueryPlansOfLength(newQP.size() - 1);
 			
 			if(setQPs == null || setQPs.isEmpty())
 				continue;
@@ -566,6 +1336,12 @@ public class MultiSequenceCandidateGenerator {
 		}
 		
 		removeQueryPlans(seq, removeQPs);
+		metrics.queryPlansCompacted(removeQPs.size());
+		
+		if(trace != null && !removeQPs.isEmpty())
+			trace.compacted(seq.getId(), removeQPs.size());
+		
+		events.compaction(seq, removeQPs);
 	}
 	
 	/**
@@ -578,81 +1354,125 @@ public class MultiSequenceCandidateGenerator {
 		
 		private HashMap<CandidateSequences, LinkedHashMap<Sequence, Double>> fitnessPerCandidate;
 		
+		/**
+		 * Candidates by ascending weighted fitness, the lowest ranked data structure first.
+		 */
+		private IndexedPriorityQueue<CandidateSequences> ranking;
+		
+		/**
+		 * The candidates ranked, by identity. Query plans may hold equal candidates which are not listed in the generator.
+		 */
+		private Set<CandidateSequences> rankedCandidates;
+		
 		public Pruner(MultiSequenceCandidateGenerator gen) {
 			this.gen = gen;
 		}
 				
 		public void beforePruning() {
-			HashMap<Sequence, QueryPlansBucket> queryPlansPerSequence = gen.getQueryPlansPerSequence();
+			HashMap<Sequence, QueryPlanStore<CandidateSequences>> queryPlansPerSequence = gen.getQueryPlansPerSequence();
 			
 			// Calculate all the ranks of the QueryPlans.
 			for(Sequence seq: queryPlansPerSequence.keySet()) {
-				queryPlansPerSequence.get(seq).precalculateQueryPlanRanks();
+				queryPlansPerSequence.get(seq).rankQueryPlans();
 			}
 	
 			this.fitnessPerCandidate = getFitnessForDataStructures();
 		}
 		
 		/**
-		 * Only execute during pruning! Costly function.		 * 
+		 * Rank per candidate, from 1 for the lowest weighted fitness.
 		 */
 		public HashMap<CandidateSequences,Integer> getRanksForDataStructures() {	
 			HashMap<CandidateSequences, Integer> ranksPerCandidate = new HashMap<CandidateSequences, Integer>();
-			
-			// keep sorted list of keys of QP costs. (sometimes weights overlap multiple candidates).
-			TreeMap<Double, LinkedList<CandidateSequences>> weightPerCandidate = new TreeMap<Double, LinkedList<CandidateSequences>>();
-			 
-			// Insert candidate's weights in ordered list.
-			for(CandidateSequences candidate: getCandidates()) {
-				double candidateWeight = getWeightedFitnessForCandidate(candidate);
-				
-				if(!weightPerCandidate.containsKey(candidateWeight))
-					weightPerCandidate.put(candidateWeight, new LinkedList<CandidateSequences>());
-				
-				weightPerCandidate.get(candidateWeight).add(candidate);
-			}
-			
-			// Rank candidate
 			int rank = 1;
 			
-			for(Double weight: weightPerCandidate.keySet()) {
-				for(CandidateSequences candidate: weightPerCandidate.get(weight)) {
-					ranksPerCandidate.put(candidate, rank);
-					rank++;
-				}
+			for(CandidateSequences candidate: ranking.toSortedList()) {
+				ranksPerCandidate.put(candidate, rank);
+				rank++;
 			}
 			
-			
 			return ranksPerCandidate;
 		}
 		
 		public HashMap<CandidateSequences, LinkedHashMap<Sequence, Double>> getFitnessForDataStructures() {
 			LinkedHashMap<Sequence,Double> totalFitnessPerSequence = getTotalFitnessPerSequence();
 			this.fitnessPerCandidate = new HashMap<CandidateSequences,LinkedHashMap<Sequence,Double>>();
+			this.ranking = new IndexedPriorityQueue<CandidateSequences>();
+			this.rankedCandidates = newIdentitySet(getCandidates());
 			
 			for(CandidateSequences candidate: getCandidates()) {
 				fitnessPerCandidate.put(candidate, candidate.getFitness(totalFitnessPerSequence));
+				ranking.set(candidate, getWeightedFitnessForCandidate(candidate));
 			}
 			
-			try {
-				System.out.println(fitnessPerCandidate);
-//				TimeUnit.SECONDS.sleep(2);
+			if(LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.finer(fitnessPerCandidate.toString());
 				printFitnessPerDataStructure();
-//				TimeUnit.SECONDS.sleep(5);
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				try {
-					TimeUnit.SECONDS.sleep(15);
-				} catch (InterruptedException e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
-				}
-				e.printStackTrace();
 			}
 			
 			return fitnessPerCandidate;
 		}
 		
+		/**
+		 * Recalculates the fitness of the candidates for the sequences whose query plans were removed,
+		 * and updates their weighted fitness in the ranking.
+		 * 
+		 * Only the candidates used by the query plans of those sequences, or by the removed plans, are updated.
+		 * Their fitness is summed in the same order as {@link CandidateSequences#getFitness(LinkedHashMap)}, so ties rank the same.
+		 * 
+		 * @param removedQPs
+		 */
+		private void updateFitness(Collection<QueryPlan<CandidateSequences>> removedQPs) {
+			Set<Sequence> sequences = new HashSet<Sequence>();
+			Set<CandidateSequences> affected = newIdentitySet(new ArrayList<CandidateSequences>());
+			
+			for(QueryPlan<CandidateSequences> qp: removedQPs) {
+				sequences.add(qp.getSequence());
+				affected.addAll(qp.getCandidatesPlan());
+			}
+			
+			HashMap<Sequence, Double> totalFitnessPerSequence = new HashMap<Sequence, Double>();
+			
+			for(Sequence seq: sequences) {
+				QueryPlanStore<CandidateSequences> store = existingQueryPlans.get(seq);
+				totalFitnessPerSequence.put(seq, store.getTotalFitness());
+				
+				for(QueryPlan<CandidateSequences> qp: store.getQueryPlans())
+					affected.addAll(qp.getCandidatesPlan());
+			}
+			
+			affected.retainAll(rankedCandidates);
+			
+			for(CandidateSequences candidate: affected) {
+				LinkedHashMap<Sequence, Double> fitnessPerSequence = fitnessPerCandidate.get(candidate);
+				
+				for(Sequence seq: sequences)
+					fitnessPerSequence.put(seq, Double.valueOf(0));
+				
+				for(QueryPlan<CandidateSequences> qp: candidate.getSubscribedQueryPlans()) {
+					if(!sequences.contains(qp.getSequence()))
+						continue;
+					
+					// Candidate may appear multiple times in the same query plan.
+					Double relativeFitnessInQP = (Collections.frequency(qp.getCandidatesPlan(), candidate) * qp.getFitness()) / qp.getCandidatesPlan().size();
+					fitnessPerSequence.put(qp.getSequence(), relativeFitnessInQP + fitnessPerSequence.get(qp.getSequence()));
+				}
+				
+				// Normalize
+				for(Sequence seq: sequences)
+					fitnessPerSequence.put(seq, fitnessPerSequence.get(seq) / totalFitnessPerSequence.get(seq).doubleValue());
+				
+				ranking.set(candidate, getWeightedFitnessForCandidate(candidate));
+			}
+		}
+		
+		private Set<CandidateSequences> newIdentitySet(Collection<CandidateSequences> candidates) {
+			Set<CandidateSequences> set = Collections.newSetFromMap(new IdentityHashMap<CandidateSequences, Boolean>());
+			set.addAll(candidates);
+			
+			return set;
+		}
+		
 		/**
 		 * Gets sum of relative fitness for the candidate per sequence, 
 		 * multiplies this fitness by the sequence's relative importance (frequency).
@@ -683,13 +1503,14 @@ public class MultiSequenceCandidateGenerator {
 			// Should be 1 if normalized total sum.
 			HashMap<Sequence, Double> totalFitnessPerSequence = new HashMap<Sequence, Double>();
 			
-			for(Sequence seq: getTotalFitnessPerSequence().keySet()) {
-				System.out.println(seq);
-				System.out.println(getTotalFitnessPerSequence().get(seq));
+			for(Map.Entry<Sequence, Double> entry: getTotalFitnessPerSequence().entrySet()) {
+				LOGGER.finer(entry.getKey() + ": " + entry.getValue());
 				
-				totalFitnessPerSequence.put(seq, new Double(0));
+				totalFitnessPerSequence.put(entry.getKey(), new Double(0));
 			}
 			
+			HashMap<CandidateSequences, Integer> ranks = getRanksForDataStructures();
+			
 			// Per candidate print out fitness for each sequence, and weighted total fitness.
 			for(CandidateSequences candidate: fitnessPerCandidate.keySet()) {
 				String line = String.format("%" + maxLength + "s", candidate.toString()) + " ";
@@ -702,10 +1523,10 @@ public class MultiSequenceCandidateGenerator {
 				}
 				
 				line += String.format("w: %.4f", getWeightedFitnessForCandidate(candidate));
-				line += String.format("   r: %d", getRanksForDataStructures().get(candidate));
+				line += String.format("   r: %d", ranks.get(candidate));
 				line += String.format("   QP size: %d", candidate.getSubscribedQueryPlans().size());
 				
-				System.out.println(line);		
+				LOGGER.finer(line);
 			}
 			
 			// Print sum of fitness per sequence. (should be 1s).
@@ -715,7 +1536,7 @@ public class MultiSequenceCandidateGenerator {
 				line += String.format("%.4f", totalFitnessPerSequence.get(seq)) + "  ";
 			}
 			
-			System.out.println(line);
+			LOGGER.finer(line);
 		}
 		
 		public LinkedHashMap<Sequence, Double> getTotalFitnessPerSequence() {
@@ -735,41 +1556,40 @@ public class MultiSequenceCandidateGenerator {
 		 * - (2) Non-essential (not contained in essential queryPlan).
 		 */
 		public void pruneDataStructures() {
-			// Inverse - put Rank per Candidate
-			HashMap<CandidateSequences, Integer> dataStructureRanks = getRanksForDataStructures();
-			HashMap<Integer, CandidateSequences> ranksDataStructures = new HashMap<>();
-			
-			for(Map.Entry<CandidateSequences, Integer> entry : dataStructureRanks.entrySet()){
-				ranksDataStructures.put(entry.getValue(), entry.getKey());
-			}
-			
-			// Start at the lowest rank 1 and remove until sufficient documents have been pruned.
-			int lowestRank = 1;
-			
+			// Start at the lowest rank and remove until sufficient documents have been pruned.
 			while(getCandidates().size() > Config.MAX_NR_DOCUMENTS) {
-				CandidateSequences candidate = ranksDataStructures.get(lowestRank);
-				System.out.println(lowestRank);
-				if(candidate==null || lowestRank > getCandidates().size() * 2)
-					break;
+				CandidateSequences candidate = null;
+				Iterator<CandidateSequences> iterator = ranking.ascendingIterator();
 				
-				if(canRemoveDataStructure(candidate)) {
-					pruneDocument(candidate);
-					// Recalculate ranks
-					beforePruning();
-					
-					dataStructureRanks = getRanksForDataStructures();
-					for(Map.Entry<CandidateSequences, Integer> entry : dataStructureRanks.entrySet()){
-						ranksDataStructures.put(entry.getValue(), entry.getKey());
-					}
-					
-					if(getCandidates().size() <= 8) {
-						gen.printQueryPlansPerSequence();
-					}
+				while(iterator.hasNext() && candidate == null) {
+					CandidateSequences next = iterator.next();
 					
-					lowestRank=0;
+					if(canRemoveDataStructure(next))
+						candidate = next;
 				}
 				
-				lowestRank++;				
+				if(candidate == null)
+					break;
+				
+				ranking.remove(candidate);
+				rankedCandidates.remove(candidate);
+				fitnessPerCandidate.remove(candidate);
+				
+				List<QueryPlan<CandidateSequences>> removedQPs = pruneDocument(candidate);
+				metrics.candidatesPruned(1);
+				
+				if(trace != null)
+					trace.prunedCandidate(candidate.getId(), removedQPs.size());
+				
+				events.prune(removedQPs, candidate);
+				
+				// Recalculate ranks of the sequences affected.
+				updateFitness(removedQPs);
+				
+				
+				if(getCandidates().size() <= 8 && LOGGER.isLoggable(Level.FINEST)) {
+					gen.printQueryPlansPerSequence();
+				}
 			}
 		}
 		
@@ -777,16 +1597,24 @@ public class MultiSequenceCandidateGenerator {
 		 * Remove a document.
 		 * 
 		 * @param candidate
+		 * @return Query plans removed with the document.
 		 */
-		private void pruneDocument(CandidateSequences candidate) {
+		private List<QueryPlan<CandidateSequences>> pruneDocument(CandidateSequences candidate) {
+			List<QueryPlan<CandidateSequences>> removedQPs = new ArrayList<QueryPlan<CandidateSequences>>();
+			
 			if(!canRemoveDataStructure(candidate))
-				return;
+				return removedQPs;
 			
-			gen.candidates.remove(candidate);
+			gen.registry.remove(candidate);
+			gen.mergeCache.remove(candidate);
+			gen.treeInterner.remove(candidate.getCandidate());
 			
 			for(QueryPlan<CandidateSequences> qp: candidate.getSubscribedQueryPlans()) {
 				gen.removeQueryPlan(qp);
+				removedQPs.add(qp);
 			}
+			
+			return removedQPs;
 		}
 
 		/**
@@ -821,255 +1649,22 @@ public class MultiSequenceCandidateGenerator {
 		 * Per query plan bucket size: only keep the X best query plans.
 		 */
 		public void pruneQueryPlans() {
-			int removed = 0;
-			
-			for(Sequence seq: existingQueryPlans.keySet()) {
-				List<QueryPlan<CandidateSequences>> toBeRemoved = 
-						existingQueryPlans.get(seq).pruneEachBucketAndLeaveNrOfQps(Config.PRUNE_LEAVE_NR_PLANS_PER_BUCKET);
-				
-				removed += toBeRemoved.size();
-				gen.removeQueryPlans(seq, toBeRemoved);
-			}
-			
-			System.out.println("Removed QPs:" + removed);
-		}
-	}
-	
-	/**
-	 * Stores query plans per size in buckets.
-	 * 
-	 * Each sequence has a big query plans bucket, that are sorted internally by size.
-	 * 
-	 * @author vincent
-	 *
-	 */
-	private class QueryPlansBucket  {
-		
-		private HashMap<Integer, HashSet<QueryPlan<CandidateSequences>>> queryPlans = new HashMap<Integer, HashSet<QueryPlan<CandidateSequences>>>();
-		
-		// keep sorted list of keys of QP costs.
-		//TODO: Fix something wrong!!
-		private TreeMap<Integer, HashSet<QueryPlan<CandidateSequences>>> queryPlansByCost = new TreeMap<Integer, HashSet<QueryPlan<CandidateSequences>>>();
-		
-		/**
-		 * Inserts QP in the correct bucket.
-		 * Inserts QP in the general list ordered by cost.
-		 * 
-		 * @param qp
-		 */
-		public void addQueryPlan(QueryPlan<CandidateSequences> qp) {
-			if(qp == null)
-				return;
-			
-			// Insert QP in correct bucket
-			if(!queryPlans.containsKey(Integer.valueOf(qp.size())))
-					queryPlans.put(Integer.valueOf(qp.size()), new HashSet<QueryPlan<CandidateSequences>>());
-			
-			queryPlans.get(Integer.valueOf(qp.size())).add(qp);
-			
-			// Insert QP into rank
-			if(!queryPlansByCost.containsKey(qp.getCost()))
-				queryPlansByCost.put(qp.getCost(), new HashSet<QueryPlan<CandidateSequences>>());
-			
-			queryPlansByCost.get(qp.getCost()).add(qp);
-		}
-		
-		/**
-		 * Add multiple query plans.
-		 * 
-		 * @param qps
-		 */
-		public void addQueryPlans(Set<QueryPlan<CandidateSequences>> qps) {
-			for(QueryPlan<CandidateSequences> qp: qps) {
-				this.addQueryPlan(qp);
-			}
-		}
-		
-		/**
-		 * Checks if any bucket contains the given query plan.
-		 * 
-		 * @param qp
-		 * @return
-		 */
-		public boolean contains(QueryPlan<CandidateSequences> qp) {
-			if(qp == null)
-				return false;
-			
-			if(!queryPlans.containsKey(Integer.valueOf(qp.size())))
-				return false;
-			
-			return queryPlans.get(Integer.valueOf(qp.size())).contains(qp);			
-		}
-		
-		/**
-		 * Remove QP from bucket size.
-		 * Remove QP form ordered cost TreeMap.
-		 * 
-		 * @param qp
-		 */
-		public void removeQueryPlan(QueryPlan<CandidateSequences> qp) {
-			if(qp == null)
-				return;
-			
-			qp.unsubscribeToCandidates();
-			
-			queryPlans.get(Integer.valueOf(qp.size())).remove(qp);
-			queryPlansByCost.get(qp.getCost()).remove(qp);
-		}
-		
-		/**
-		 * Remove multiple query plans.
-		 * 
-		 * @param qps
-		 */
-		public void removeQueryPlans(Collection<QueryPlan<CandidateSequences>> qps) {
-			for(QueryPlan<CandidateSequences> qp: qps) {
-				this.removeQueryPlan(qp);
-			}
-		}
-		
-		/**
-		 * Gets all query plans in this bucket, regardless of size.
-		 * 
-		 * @return
-		 */
-		public Set<QueryPlan<CandidateSequences>> getQueryPlans() {
-			TreeSet<QueryPlan<CandidateSequences>> allQueryPlans = new TreeSet<QueryPlan<CandidateSequences>>();
-			
-			for(Integer sizeKey: queryPlans.keySet()) {
-				allQueryPlans.addAll(queryPlans.get(sizeKey));
-			}
-			
-			return allQueryPlans;
-		}
-		
-		/**
-		 * Gets all query plans in of a certain size.
-		 * 
-		 * @return
-		 */
-		public Set<QueryPlan<CandidateSequences>> getQueryPlansOfSize(int size) {
-			return queryPlans.get(Integer.valueOf(size));
-		}
-		
-		/**
-		 * Total number of query plans.
-		 * 
-		 * @return
-		 */
-		public int size() {
-			int size = 0;
-			
-			for(Integer sizeKey: queryPlans.keySet()) {
-				size += queryPlans.get(sizeKey).size();
-			}
-			
-			return size;
-		}
-		
-		/**
-		 * Returns set of query plans of a certain size.
-		 * @param size
-		 * @return
-		 */
-		public HashSet<QueryPlan<CandidateSequences>> getQueryPlans(int size) {
-			return queryPlans.get(Integer.valueOf(size));
-		}
-		
-		public List<QueryPlan<CandidateSequences>> pruneEachBucketAndLeaveNrOfQps(int amountToLeave) {
-			List<QueryPlan<CandidateSequences>> toBeRemovedQPs = new ArrayList<QueryPlan<CandidateSequences>>();
-			
-			for(Integer bucketSize: queryPlans.keySet()) {
-				
-				// first sort QPs by cost per buck
-				HashSet<QueryPlan<CandidateSequences>> qps = queryPlans.get(bucketSize);
-				Set<QueryPlan<CandidateSequences>> bestQPs = selectBestQueryPlans(amountToLeave, qps);
+			int removed = queryPlanPruner.prune(existingQueryPlans, new QueryPlanPruner.Removal<Sequence, CandidateSequences>() {
 				
-						
-				// leave X best QPs
-				for(QueryPlan<CandidateSequences> qp: queryPlans.get(bucketSize)) {
-					if(!bestQPs.contains(qp)) {
-						toBeRemovedQPs.add(qp);
-					}
-				}
-				
-				System.out.println("bucket size " + bucketSize);
-				System.out.println("Original QPS: " + qps.size());
-				System.out.println("To be removed:" + toBeRemovedQPs.size());
-				
-			}
-			
-			
-			return toBeRemovedQPs;
-		}
-		
-		public double getTotalFitness() {
-			double fitness = 0;
-			
-			for(QueryPlan<CandidateSequences> qp: getQueryPlans()) {
-				fitness += qp.getFitness();
-			}
-			
-			return fitness;
-		}
-		
-		/**
-		 * Done every now and then before pruning.
-		 */
-		public void precalculateQueryPlanRanks() {
-			// Cost in ascending order
-			int totalRank = size();
-			int rank = size();
-			
-			// Ordered keys in ascending order (ascending cost).
-			// Cheapest QP first.
-			for(int cost: queryPlansByCost.keySet()) {
-				for(QueryPlan<CandidateSequences> qp: queryPlansByCost.get(cost)) {
-					qp.setRank(rank);
-					qp.setFitness(rank, totalRank);
-//					System.out.println(qp);
-//					System.out.println(rank);
+				@Override
+				public void remove(Sequence seq, List<QueryPlan<CandidateSequences>> qps) {
+					gen.removeQueryPlans(seq, qps);
 					
-					rank--;
-				}
-				
-				
-			}
-		}
-		
-		/**
-		 * Selects X best query plans by cost.
-		 * 
-		 * @param amount
-		 * @return
-		 */
-		private Set<QueryPlan<CandidateSequences>> selectBestQueryPlans(int amount, Set<QueryPlan<CandidateSequences>> qps) {
-			// Keep same indexes between these structures.
-			LinkedList<Integer> bestCosts = new LinkedList<Integer>();
-			LinkedList<QueryPlan<CandidateSequences>> bestQPs = new LinkedList<QueryPlan<CandidateSequences>>();
-			
-			
-			// Per QP check if its better than any of the existing X QPS.
-			for(QueryPlan<CandidateSequences> qp: qps) {
-				int cost = qp.getCost();
-				
-				if(bestQPs.size() < amount) {
-					bestCosts.add(cost);
-					bestQPs.add(qp);
-				}
-				else if(cost < Collections.max(bestCosts)) {
-					int index = bestCosts.indexOf(Collections.max(bestCosts));
-					bestCosts.remove(index);
-					bestQPs.remove(index);
+					if(trace != null)
+						trace.prunedPlans(seq.getId(), qps.size());
 					
-					bestCosts.add(cost);
-					bestQPs.add(qp);
+					events.prune(qps, null);
 				}
-			}
+			});
 			
-			return new HashSet<QueryPlan<CandidateSequences>>(bestQPs);
+			metrics.queryPlansPruned(removed);
+			LOGGER.log(Level.FINE, "Removed QPs: {0}", removed);
 		}
 	}
 	
 }
-
@@ -0,0 +1,107 @@
+package dbsr.candidate.generator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.GenerationBudget.StopReason;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+/**
+ * Best query plan found per sequence, and the data structures they use.
+ *
+ * The weighted cost is the cost of the best query plans weighted by the frequency of their sequence.
+ *
+ * @author vincent
+ */
+public class Recommendation {
+
+	private final Map<Sequence, QueryPlan<CandidateSequences>> queryPlans;
+
+	private final Set<CandidateSequences> dataStructures;
+
+	private final double weightedCost;
+
+	private final int iterations;
+
+	private final long elapsedMillis;
+
+	private final StopReason stopReason;
+
+	public Recommendation(Map<Sequence, QueryPlan<CandidateSequences>> queryPlans, int iterations, long elapsedMillis, StopReason stopReason) {
+		this.queryPlans = Collections.unmodifiableMap(new LinkedHashMap<Sequence, QueryPlan<CandidateSequences>>(queryPlans));
+		this.iterations = iterations;
+		this.elapsedMillis = elapsedMillis;
+		this.stopReason = stopReason;
+
+		Set<CandidateSequences> dataStructures = new LinkedHashSet<CandidateSequences>();
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans.values())
+			dataStructures.addAll(qp.getCandidatesPlan());
+
+		this.dataStructures = Collections.unmodifiableSet(dataStructures);
+		this.weightedCost = getWeightedCost(queryPlans);
+	}
+
+	/**
+	 * Cost of the query plans, weighted by the frequency of their sequence.
+	 *
+	 * @param queryPlans
+	 * @return
+	 */
+	public static double getWeightedCost(Map<Sequence, QueryPlan<CandidateSequences>> queryPlans) {
+		double cost = 0;
+
+		for(Map.Entry<Sequence, QueryPlan<CandidateSequences>> entry: queryPlans.entrySet())
+			cost += (double) entry.getValue().getCost() * entry.getKey().getFrequency();
+
+		return cost;
+	}
+
+	public Map<Sequence, QueryPlan<CandidateSequences>> getQueryPlans() {
+		return queryPlans;
+	}
+
+	public QueryPlan<CandidateSequences> getQueryPlan(Sequence sequence) {
+		return queryPlans.get(sequence);
+	}
+
+	public Set<CandidateSequences> getDataStructures() {
+		return dataStructures;
+	}
+
+	public double getWeightedCost() {
+		return weightedCost;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return Why the generation stopped, or null if it is still running.
+	 */
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Recommendation [stopReason=" + stopReason + ", iterations=" + iterations + ", elapsed=" + elapsedMillis
+				+ "ms, weightedCost=" + weightedCost + "]\n");
+
+		for(CandidateSequences dataStructure: dataStructures)
+			sb.append(dataStructure).append("\n");
+
+		return sb.toString();
+	}
+}
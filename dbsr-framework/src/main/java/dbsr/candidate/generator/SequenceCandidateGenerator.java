@@ -1,11 +1,15 @@
 package dbsr.candidate.generator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import dbsr.candidate.CandidateSequence;
 import dbsr.model.tree.EntityTree;
@@ -83,6 +87,8 @@ import dbsr.workload.query.Query;
  */
 public class SequenceCandidateGenerator {
 	
+	private static final Logger LOGGER = Logger.getLogger(SequenceCandidateGenerator.class.getName());
+	
 	private final Sequence sequence;
 	
 	private Set<CandidateSequence> candidates = new HashSet<CandidateSequence>();
@@ -94,6 +100,18 @@ public class SequenceCandidateGenerator {
 	
 	private LinkedList<QueryPlan<CandidateSequence>> queryPlans = new LinkedList<QueryPlan<CandidateSequence>>();
 	
+	/**
+	 * Delivers the events of the generation to listeners.
+	 */
+	private final GenerationEvents<CandidateSequence> events = new GenerationEvents<CandidateSequence>();
+	
+	private int iterations = 0;
+	
+	/**
+	 * Cost of the cheapest query plan, tracked only for listeners.
+	 */
+	private int bestCost = Integer.MAX_VALUE;
+	
 	public SequenceCandidateGenerator(Sequence seq) {
 		this.sequence = seq;
 		
@@ -108,6 +126,23 @@ public class SequenceCandidateGenerator {
 		return existingQueryPlans;
 	}
 	
+	/**
+	 * Adds a listener, which receives the events of the generation asynchronously.
+	 * 
+	 * @param listener
+	 */
+	public void addGenerationListener(GenerationListener<CandidateSequence> listener) {
+		events.addListener(listener);
+	}
+	
+	public boolean removeGenerationListener(GenerationListener<CandidateSequence> listener) {
+		return events.removeListener(listener);
+	}
+	
+	public GenerationEvents<CandidateSequence> getGenerationEvents() {
+		return events;
+	}
+	
 	/**
 	 * Creates the initial set of candidates.
 	 */
@@ -134,7 +169,7 @@ public class SequenceCandidateGenerator {
 	 */
 	public void startGeneration() {
 		while(!queryPlans.isEmpty()) {
-			System.out.println("--- Iteration ---");
+			LOGGER.fine("--- Iteration ---");
 			QueryPlan<CandidateSequence> root = queryPlans.removeFirst();
 			
 			Set<CandidateSequence> newCandidates = root.optimize();
@@ -143,8 +178,9 @@ public class SequenceCandidateGenerator {
 				TreeSet<QueryPlan<CandidateSequence>> iterationQueryPlans = new TreeSet<QueryPlan<CandidateSequence>>();
 				
 				if(!candidates.contains(candidate)) {
-					System.out.println("Candidate: " + candidate);
+					LOGGER.log(Level.FINE, "Candidate: {0}", candidate);
 					candidates.add(candidate);
+					events.candidateRegistered(candidate);
 					Set<QueryPlan<CandidateSequence>> qps = candidate.notifySubscribers(candidate);
 					
 					for(QueryPlan<CandidateSequence> qp: qps) {
@@ -153,8 +189,14 @@ public class SequenceCandidateGenerator {
 					
 					compactQueryPlans(iterationQueryPlans);
 					
-					for(QueryPlan<CandidateSequence> qp: iterationQueryPlans)
-						addQueryPlan(qp);
+					List<QueryPlan<CandidateSequence>> added = new ArrayList<QueryPlan<CandidateSequence>>();
+					
+					for(QueryPlan<CandidateSequence> qp: iterationQueryPlans) {
+						if(addQueryPlan(qp))
+							added.add(qp);
+					}
+					
+					events.queryPlansAdded(added);
 				}
 			}
 			
@@ -169,9 +211,11 @@ public class SequenceCandidateGenerator {
 			// TODO secondary indexing
 			compactQueryPlans(existingQueryPlans);
 			
+			iterations++;
+			endIteration();
 		}
 		
-		System.out.println("---End generation---");
+		LOGGER.info("---End generation---");
 	}
 	
 	/**
@@ -205,6 +249,32 @@ public class SequenceCandidateGenerator {
 		}
 		
 		qps.removeAll(removeQPs);
+		
+		if(qps == existingQueryPlans)
+			events.compaction(sequence, removeQPs);
+	}
+	
+	/**
+	 * Notifies listeners of the iteration, and of a cheaper query plan.
+	 */
+	private void endIteration() {
+		if(!events.hasListeners())
+			return;
+		
+		QueryPlan<CandidateSequence> best = null;
+		
+		for(QueryPlan<CandidateSequence> qp: existingQueryPlans) {
+			if(best == null || qp.getCost() < best.getCost())
+				best = qp;
+		}
+		
+		double weightedCost = best == null ? 0 : (double) best.getCost() * sequence.getFrequency();
+		events.iteration(iterations, weightedCost, queryPlans.size());
+		
+		if(best != null && best.getCost() < bestCost) {
+			bestCost = best.getCost();
+			events.bestPlanImproved(Collections.singletonMap(sequence, best), weightedCost);
+		}
 	}
 	
 	/**
@@ -217,17 +287,19 @@ public class SequenceCandidateGenerator {
 	/**
 	 * Adds a query plan.
 	 */
-	private void addQueryPlan(QueryPlan<CandidateSequence> qp) {
+	private boolean addQueryPlan(QueryPlan<CandidateSequence> qp) {
 		if(existingQueryPlans.contains(qp))
-			return;
+			return false;
 		
 		qp.subscribeToCandidates();
 		
-		System.out.println("add: " + qp);
+		LOGGER.log(Level.FINER, "add: {0}", qp);
 		this.existingQueryPlans.add(qp);
 		
 		if(qp.size() > 1)
 			this.queryPlans.add(qp);
+		
+		return true;
 	}
 	
 }
@@ -0,0 +1,190 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dbsr.candidate.Candidate;
+
+/**
+ * Canonical instances of the candidates of a generator, keyed by their tree.
+ *
+ * Equal candidates, e.g. identical merges of different query plans, resolve to a single instance and its subscribed query plans.
+ * A lookup is a hash lookup, concurrent with other lookups and registrations.
+ *
+ * Each candidate is assigned the next id when it is registered, before it becomes visible to lookups.
+ * Ids are not reused: a removed candidate is no longer found by its id, and an equal candidate registered afterwards gets a new id.
+ * A removed instance registered again keeps its id, as merge histories and checkpoints refer to it by that id.
+ *
+ * @author vincent
+ */
+public class CandidateRegistry<T extends Candidate<T>> {
+
+	private final ConcurrentHashMap<T, T> canonical = new ConcurrentHashMap<T, T>();
+
+	/**
+	 * Registered candidates by id, guarded by the registry.
+	 */
+	private final TreeMap<Integer, T> candidatesById = new TreeMap<Integer, T>();
+
+	private int nextId = 0;
+
+	/**
+	 * Returns the canonical instance equal to the candidate, registers the candidate if there is none.
+	 *
+	 * @param candidate
+	 * @return
+	 */
+	public T getOrCreate(T candidate) {
+		T existing = canonical.get(candidate);
+
+		if(existing != null)
+			return existing;
+
+		synchronized(this) {
+			existing = canonical.get(candidate);
+
+			if(existing != null)
+				return existing;
+
+			register(candidate);
+
+			return candidate;
+		}
+	}
+
+	/**
+	 * Registers the candidate, unless an equal candidate is registered.
+	 *
+	 * @param candidate
+	 * @return True if the candidate is the new canonical instance.
+	 */
+	public boolean add(T candidate) {
+		if(canonical.containsKey(candidate))
+			return false;
+
+		synchronized(this) {
+			if(canonical.containsKey(candidate))
+				return false;
+
+			register(candidate);
+
+			return true;
+		}
+	}
+
+	/**
+	 * @param candidate
+	 * @return The canonical instance equal to the candidate, or null if none is registered.
+	 */
+	public T get(T candidate) {
+		return canonical.get(candidate);
+	}
+
+	public boolean contains(T candidate) {
+		return canonical.containsKey(candidate);
+	}
+
+	/**
+	 * Removes the canonical instance equal to the candidate, its id is not reused.
+	 *
+	 * @param candidate
+	 * @return
+	 */
+	public synchronized boolean remove(T candidate) {
+		T removed = canonical.remove(candidate);
+
+		if(removed == null)
+			return false;
+
+		candidatesById.remove(Integer.valueOf(removed.getId()));
+
+		return true;
+	}
+
+	/**
+	 * Restores a candidate with the id it was registered with, in the order of their ids.
+	 *
+	 * @param candidate
+	 * @param id
+	 * @param alive False if the candidate was removed, it only keeps its id.
+	 */
+	public synchronized void restore(T candidate, int id, boolean alive) {
+		if(id < nextId)
+			throw new IllegalArgumentException("Candidates should be restored in the order of their ids.");
+
+		candidate.setId(id);
+		nextId = id + 1;
+
+		if(alive) {
+			candidatesById.put(Integer.valueOf(id), candidate);
+			canonical.put(candidate, candidate);
+		}
+	}
+
+	/**
+	 * Continues the ids after those of a restored registry, including the ids of candidates which were not restored.
+	 *
+	 * @param nextId
+	 */
+	public synchronized void restoreNextId(int nextId) {
+		if(nextId < this.nextId)
+			throw new IllegalArgumentException("Next id " + nextId + " is already assigned.");
+
+		this.nextId = nextId;
+	}
+
+	/**
+	 * Assigns the next id, and publishes the candidate once it has its id.
+	 * A removed candidate registered again keeps its id.
+	 */
+	private void register(T candidate) {
+		if(!candidate.isRegistered())
+			candidate.setId(nextId++);
+
+		candidatesById.put(Integer.valueOf(candidate.getId()), candidate);
+		canonical.put(candidate, candidate);
+	}
+
+	/**
+	 * @param id
+	 * @return The registered candidate with the given id, or null if it was removed.
+	 */
+	public synchronized T getCandidate(int id) {
+		return candidatesById.get(Integer.valueOf(id));
+	}
+
+	/**
+	 * Registered candidates in the order of their ids.
+	 *
+	 * @return
+	 */
+	public synchronized List<T> getRegisteredCandidates() {
+		return Collections.unmodifiableList(new ArrayList<T>(candidatesById.values()));
+	}
+
+	/**
+	 * Id the next registered candidate receives.
+	 *
+	 * @return
+	 */
+	public synchronized int getNextId() {
+		return nextId;
+	}
+
+	/**
+	 * Canonical candidates, an unmodifiable view.
+	 *
+	 * @return
+	 */
+	public Set<T> getCandidates() {
+		return Collections.unmodifiableSet(canonical.keySet());
+	}
+
+	public int size() {
+		return canonical.size();
+	}
+}
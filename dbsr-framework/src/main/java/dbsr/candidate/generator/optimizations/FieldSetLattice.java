@@ -0,0 +1,138 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Closure of field sets under union, e.g. the field sets of the data structures of an entity answering any subset of its queries.
+ *
+ * Each field set is kept once, keyed by its bitset, with the elements whose union it is.
+ * Adding an element joins its field set with every field set so far,
+ * a union which already exists keeps the elements it was first reached with.
+ *
+ * The lattice can be limited to a maximum number of field sets.
+ * When it grows beyond, the two nearest field sets, differing in the fewest fields, are clustered into their union,
+ * until the lattice fits.
+ *
+ * @author vincent
+ */
+public class FieldSetLattice<E> {
+
+	private final LinkedHashMap<BitSet, List<E>> fieldSets = new LinkedHashMap<BitSet, List<E>>();
+
+	private final int maxFieldSets;
+
+	private int clustered = 0;
+
+	public FieldSetLattice() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxFieldSets Maximum number of field sets kept.
+	 */
+	public FieldSetLattice(int maxFieldSets) {
+		if(maxFieldSets < 1)
+			throw new IllegalArgumentException("Maximum number of field sets should be at least 1.");
+
+		this.maxFieldSets = maxFieldSets;
+	}
+
+	/**
+	 * Adds the field set of an element, and its unions with the field sets so far.
+	 *
+	 * @param element
+	 * @param fields
+	 */
+	public void add(E element, BitSet fields) {
+		List<Map.Entry<BitSet, List<E>>> existing = new ArrayList<Map.Entry<BitSet, List<E>>>(fieldSets.entrySet());
+
+		if(!fieldSets.containsKey(fields)) {
+			List<E> elements = new ArrayList<E>();
+			elements.add(element);
+			fieldSets.put((BitSet) fields.clone(), elements);
+		}
+
+		for(Map.Entry<BitSet, List<E>> entry: existing) {
+			BitSet union = (BitSet) entry.getKey().clone();
+			union.or(fields);
+
+			if(!fieldSets.containsKey(union)) {
+				List<E> elements = new ArrayList<E>(entry.getValue());
+				elements.add(element);
+				fieldSets.put(union, elements);
+			}
+		}
+
+		if(fieldSets.size() > maxFieldSets)
+			cluster();
+	}
+
+	/**
+	 * Clusters the nearest field sets until the maximum is reached.
+	 */
+	private void cluster() {
+		while(fieldSets.size() > maxFieldSets) {
+			List<BitSet> keys = new ArrayList<BitSet>(fieldSets.keySet());
+			int first = 0;
+			int second = 1;
+			int distance = Integer.MAX_VALUE;
+
+			for(int i=0; i < keys.size(); i++) {
+				for(int j=i + 1; j < keys.size(); j++) {
+					BitSet difference = (BitSet) keys.get(i).clone();
+					difference.xor(keys.get(j));
+
+					if(difference.cardinality() < distance) {
+						distance = difference.cardinality();
+						first = i;
+						second = j;
+					}
+				}
+			}
+
+			List<E> elements = fieldSets.remove(keys.get(first));
+			List<E> otherElements = fieldSets.remove(keys.get(second));
+
+			BitSet union = (BitSet) keys.get(first).clone();
+			union.or(keys.get(second));
+
+			if(!fieldSets.containsKey(union)) {
+				for(E element: otherElements) {
+					if(!elements.contains(element))
+						elements.add(element);
+				}
+
+				fieldSets.put(union, elements);
+			}
+
+			clustered++;
+		}
+	}
+
+	/**
+	 * Field sets in the order they were reached, with the elements whose union they are.
+	 *
+	 * @return
+	 */
+	public Map<BitSet, List<E>> getFieldSets() {
+		return Collections.unmodifiableMap(fieldSets);
+	}
+
+	public int size() {
+		return fieldSets.size();
+	}
+
+	/**
+	 * Number of times two field sets were clustered.
+	 *
+	 * @return
+	 */
+	public int getClustered() {
+		return clustered;
+	}
+}
@@ -0,0 +1,256 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Binary min-heap of elements with a double key, which keeps the position of each element.
+ *
+ * The key of an element can be changed, and an element removed, in O(log n) without scanning the heap.
+ * Equal keys are ordered by the time the element was first added, NaN keys are ordered last.
+ *
+ * @author vincent
+ */
+public class IndexedPriorityQueue<E> {
+
+	private final ArrayList<Entry<E>> heap = new ArrayList<Entry<E>>();
+
+	private final HashMap<E, Entry<E>> entries = new HashMap<E, Entry<E>>();
+
+	private long insertions = 0;
+
+	/**
+	 * Adds the element with the given key, or changes its key if it is already present.
+	 *
+	 * @param element
+	 * @param key
+	 * @return True if the element was added.
+	 */
+	public boolean set(E element, double key) {
+		if(element == null)
+			throw new IllegalArgumentException("Element should not be null.");
+
+		Entry<E> entry = entries.get(element);
+
+		if(entry != null) {
+			double previous = entry.key;
+			entry.key = key;
+
+			int compare = Double.compare(key, previous);
+
+			if(compare < 0)
+				siftUp(entry.position);
+			else if(compare > 0)
+				siftDown(entry.position);
+
+			return false;
+		}
+
+		entry = new Entry<E>(element, key, insertions++, heap.size());
+		heap.add(entry);
+		entries.put(element, entry);
+		siftUp(entry.position);
+
+		return true;
+	}
+
+	public boolean remove(E element) {
+		Entry<E> entry = entries.remove(element);
+
+		if(entry == null)
+			return false;
+
+		removeAt(entry.position);
+
+		return true;
+	}
+
+	public boolean contains(E element) {
+		return entries.containsKey(element);
+	}
+
+	/**
+	 * @param element
+	 * @return Key of the element, or null if it is not present.
+	 */
+	public Double getKey(E element) {
+		Entry<E> entry = entries.get(element);
+
+		return entry == null ? null : entry.key;
+	}
+
+	/**
+	 * @return Element with the lowest key, or null if empty.
+	 */
+	public E peek() {
+		return heap.isEmpty() ? null : heap.get(0).element;
+	}
+
+	/**
+	 * Removes the element with the lowest key.
+	 *
+	 * @return The element, or null if empty.
+	 */
+	public E poll() {
+		if(heap.isEmpty())
+			return null;
+
+		Entry<E> entry = heap.get(0);
+		entries.remove(entry.element);
+		removeAt(0);
+
+		return entry.element;
+	}
+
+	public int size() {
+		return heap.size();
+	}
+
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	/**
+	 * Elements by ascending key, the queue is left unchanged.
+	 *
+	 * @return
+	 */
+	public List<E> toSortedList() {
+		List<Entry<E>> sorted = new ArrayList<Entry<E>>(heap);
+		sorted.sort(null);
+
+		List<E> elements = new ArrayList<E>(sorted.size());
+
+		for(Entry<E> entry: sorted)
+			elements.add(entry.element);
+
+		return elements;
+	}
+
+	/**
+	 * Elements by ascending key, visited lazily without changing the queue.
+	 * Taking the next element costs O(log k) after k elements, the queue should not be changed while iterating.
+	 *
+	 * @return
+	 */
+	public Iterator<E> ascendingIterator() {
+		return new Iterator<E>() {
+
+			private final PriorityQueue<Entry<E>> next = new PriorityQueue<Entry<E>>();
+
+			{
+				if(!heap.isEmpty())
+					next.add(heap.get(0));
+			}
+
+			@Override
+			public boolean hasNext() {
+				return !next.isEmpty();
+			}
+
+			@Override
+			public E next() {
+				Entry<E> entry = next.poll();
+
+				if(entry == null)
+					throw new NoSuchElementException();
+
+				int child = 2 * entry.position + 1;
+
+				if(child < heap.size())
+					next.add(heap.get(child));
+
+				if(child + 1 < heap.size())
+					next.add(heap.get(child + 1));
+
+				return entry.element;
+			}
+		};
+	}
+
+	private void removeAt(int position) {
+		Entry<E> last = heap.remove(heap.size() - 1);
+
+		if(position == heap.size())
+			return;
+
+		heap.set(position, last);
+		last.position = position;
+
+		siftUp(position);
+		siftDown(last.position);
+	}
+
+	private void siftUp(int position) {
+		Entry<E> entry = heap.get(position);
+
+		while(position > 0) {
+			int parent = (position - 1) >>> 1;
+			Entry<E> parentEntry = heap.get(parent);
+
+			if(entry.compareTo(parentEntry) >= 0)
+				break;
+
+			heap.set(position, parentEntry);
+			parentEntry.position = position;
+			position = parent;
+		}
+
+		heap.set(position, entry);
+		entry.position = position;
+	}
+
+	private void siftDown(int position) {
+		Entry<E> entry = heap.get(position);
+		int half = heap.size() >>> 1;
+
+		while(position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+
+			if(right < heap.size() && heap.get(right).compareTo(heap.get(child)) < 0)
+				child = right;
+
+			Entry<E> childEntry = heap.get(child);
+
+			if(entry.compareTo(childEntry) <= 0)
+				break;
+
+			heap.set(position, childEntry);
+			childEntry.position = position;
+			position = child;
+		}
+
+		heap.set(position, entry);
+		entry.position = position;
+	}
+
+	private static class Entry<E> implements Comparable<Entry<E>> {
+
+		private final E element;
+
+		private double key;
+
+		private final long insertion;
+
+		private int position;
+
+		public Entry(E element, double key, long insertion, int position) {
+			this.element = element;
+			this.key = key;
+			this.insertion = insertion;
+			this.position = position;
+		}
+
+		@Override
+		public int compareTo(Entry<E> o) {
+			int compare = Double.compare(key, o.key);
+
+			return compare != 0 ? compare : Long.compare(insertion, o.insertion);
+		}
+	}
+}
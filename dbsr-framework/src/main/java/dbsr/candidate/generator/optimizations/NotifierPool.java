@@ -0,0 +1,193 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import dbsr.config.Config;
+
+/**
+ * Long-lived work-stealing pool that notifies query plans of new data structures.
+ *
+ * Threads are created once and reused for every new candidate.
+ * The number of threads can be changed at runtime, a new pool replaces the old one.
+ *
+ * Keeps track of how busy the threads are:
+ * the utilization is the time spent notifying, divided by the time the threads were available for it.
+ *
+ * @author vincent
+ */
+public class NotifierPool {
+
+	private static NotifierPool defaultPool;
+
+	private ForkJoinPool pool;
+
+	private int parallelism;
+
+	private final LongAdder invocations = new LongAdder();
+
+	private final LongAdder tasks = new LongAdder();
+
+	private final LongAdder busyNanos = new LongAdder();
+
+	private final LongAdder availableNanos = new LongAdder();
+
+	/**
+	 * Creates a pool sized to the number of cores.
+	 */
+	public NotifierPool() {
+		this(Config.NOTIFIER_THREADS);
+	}
+
+	public NotifierPool(int parallelism) {
+		setParallelism(parallelism);
+	}
+
+	/**
+	 * Pool shared by the generators, unless they are given their own.
+	 *
+	 * @return
+	 */
+	public static synchronized NotifierPool getDefault() {
+		if(defaultPool == null)
+			defaultPool = new NotifierPool();
+
+		return defaultPool;
+	}
+
+	/**
+	 * Resizes the pool, running notifications finish on the previous threads.
+	 *
+	 * @param parallelism
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Notifier pool needs at least 1 thread.");
+
+		if(this.pool != null && this.parallelism == parallelism)
+			return;
+
+		ForkJoinPool previous = this.pool;
+
+		this.pool = new ForkJoinPool(parallelism, new DaemonThreadFactory(), null, false);
+		this.parallelism = parallelism;
+
+		if(previous != null)
+			previous.shutdown();
+	}
+
+	public synchronized int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Runs the task on the pool and waits for its result.
+	 *
+	 * @param task
+	 * @return
+	 */
+	public <V> V invoke(ForkJoinTask<V> task) {
+		ForkJoinPool current;
+		int threads;
+
+		synchronized(this) {
+			if(pool == null)
+				throw new IllegalStateException("Notifier pool has been shut down.");
+
+			current = this.pool;
+			threads = this.parallelism;
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			return current.invoke(task);
+		} finally {
+			invocations.increment();
+			availableNanos.add((System.nanoTime() - start) * threads);
+		}
+	}
+
+	/**
+	 * Registers work done by a single task, called by the tasks themselves.
+	 *
+	 * @param nanos
+	 */
+	void recordTask(long nanos) {
+		tasks.increment();
+		busyNanos.add(nanos);
+	}
+
+	public long getInvocations() {
+		return invocations.sum();
+	}
+
+	public long getTasksExecuted() {
+		return tasks.sum();
+	}
+
+	public long getBusyTime(TimeUnit unit) {
+		return unit.convert(busyNanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Fraction of the available thread time spent notifying query plans, between 0 and 1.
+	 *
+	 * @return
+	 */
+	public double getUtilization() {
+		long available = availableNanos.sum();
+
+		if(available == 0)
+			return 0;
+
+		return Math.min(1.0, (double) busyNanos.sum() / available);
+	}
+
+	/**
+	 * Number of tasks stolen by idle threads from busy ones.
+	 *
+	 * @return
+	 */
+	public synchronized long getSteals() {
+		return pool == null ? 0 : pool.getStealCount();
+	}
+
+	public void resetStatistics() {
+		invocations.reset();
+		tasks.reset();
+		busyNanos.reset();
+		availableNanos.reset();
+	}
+
+	public synchronized void shutdown() {
+		if(pool != null)
+			pool.shutdown();
+
+		pool = null;
+	}
+
+	@Override
+	public String toString() {
+		return "NotifierPool [threads=" + getParallelism() + ", invocations=" + getInvocations() + ", tasks=" + getTasksExecuted()
+				+ ", steals=" + getSteals() + ", busy=" + getBusyTime(TimeUnit.MILLISECONDS) + "ms, utilization=" + String.format("%.2f", getUtilization()) + "]";
+	}
+
+	/**
+	 * Pool threads do not keep the JVM alive.
+	 */
+	private static class DaemonThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setDaemon(true);
+			thread.setName("notifier-" + thread.getPoolIndex());
+
+			return thread;
+		}
+	}
+}
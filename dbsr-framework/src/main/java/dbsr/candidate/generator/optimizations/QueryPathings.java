@@ -0,0 +1,151 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Enumerates the pathings of a query path lazily: one choice per query, e.g. the data structures which can answer it.
+ *
+ * The pathings are the cartesian product of the choices, enumerated like an odometer, the last query changing fastest.
+ * Only the current pathing is kept, instead of the product.
+ *
+ * Equal choices of a query are kept once, so every pathing is enumerated exactly once.
+ *
+ * @author vincent
+ */
+public class QueryPathings<E> implements Iterator<List<E>> {
+
+	private final List<List<E>> choices = new ArrayList<List<E>>();
+
+	/**
+	 * Index of the current choice of each query.
+	 */
+	private final int[] indexes;
+
+	private boolean hasNext;
+
+	/**
+	 * @param choices Choices of each query, in the order of the query path.
+	 */
+	public QueryPathings(List<? extends Collection<E>> choices) {
+		this.indexes = new int[choices.size()];
+		this.hasNext = !choices.isEmpty();
+
+		for(Collection<E> queryChoices: choices) {
+			this.choices.add(new ArrayList<E>(new LinkedHashSet<E>(queryChoices)));
+
+			if(queryChoices.isEmpty())
+				this.hasNext = false;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	@Override
+	public List<E> next() {
+		if(!hasNext)
+			throw new NoSuchElementException();
+
+		List<E> pathing = new ArrayList<E>(indexes.length);
+
+		for(int i=0; i < indexes.length; i++)
+			pathing.add(choices.get(i).get(indexes[i]));
+
+		advance();
+
+		return pathing;
+	}
+
+	private void advance() {
+		for(int i=indexes.length - 1; i >= 0; i--) {
+			if(++indexes[i] < choices.get(i).size())
+				return;
+
+			indexes[i] = 0;
+		}
+
+		hasNext = false;
+	}
+
+	/**
+	 * Total number of pathings, or {@link Long#MAX_VALUE} if there are more.
+	 *
+	 * @return
+	 */
+	public long getNumberOfPathings() {
+		if(choices.isEmpty())
+			return 0;
+
+		long pathings = 1;
+
+		for(List<E> queryChoices: choices) {
+			if(queryChoices.isEmpty())
+				return 0;
+
+			if(pathings > Long.MAX_VALUE / queryChoices.size())
+				return Long.MAX_VALUE;
+
+			pathings *= queryChoices.size();
+		}
+
+		return pathings;
+	}
+
+	/**
+	 * Samples distinct pathings uniformly, independent of the enumeration.
+	 *
+	 * The choice of each query is drawn directly, so the cost depends on the sample and not on the number of pathings.
+	 * Pathings drawn twice are drawn again, all pathings are returned in order when there are no more than the sample size.
+	 *
+	 * @param size Maximum number of pathings sampled.
+	 * @param random
+	 * @return
+	 */
+	public List<List<E>> sample(int size, Random random) {
+		if(size < 0)
+			throw new IllegalArgumentException("Sample size should not be negative.");
+
+		List<List<E>> sample = new ArrayList<List<E>>();
+		long pathings = getNumberOfPathings();
+
+		if(pathings <= size) {
+			QueryPathings<E> all = new QueryPathings<E>(choices);
+
+			while(all.hasNext())
+				sample.add(all.next());
+
+			return sample;
+		}
+
+		Set<List<Integer>> drawn = new HashSet<List<Integer>>();
+
+		while(sample.size() < size) {
+			List<Integer> indexes = new ArrayList<Integer>(choices.size());
+
+			for(List<E> queryChoices: choices)
+				indexes.add(random.nextInt(queryChoices.size()));
+
+			if(!drawn.add(indexes))
+				continue;
+
+			List<E> pathing = new ArrayList<E>(indexes.size());
+
+			for(int i=0; i < indexes.size(); i++)
+				pathing.add(choices.get(i).get(indexes.get(i)));
+
+			sample.add(pathing);
+		}
+
+		return sample;
+	}
+}
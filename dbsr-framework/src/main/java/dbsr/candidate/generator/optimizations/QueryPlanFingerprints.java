@@ -0,0 +1,339 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import dbsr.config.Config;
+import dbsr.workload.CompactQueryPlan;
+import dbsr.workload.QueryPlan;
+
+/**
+ * Set of the fingerprints of generated query plans, within a memory budget.
+ *
+ * Only the 64-bit fingerprint of a query plan is kept, so discarded plans and their candidates are not reachable.
+ * The fingerprints are stored in an open-addressing hash set of longs, which is exact up to fingerprint collisions.
+ * When the set would grow beyond the memory budget, its fingerprints move to a Bloom filter of the same size.
+ * A Bloom filter has no false negatives, but might report a plan as generated when it was not.
+ *
+ * Lookups can run concurrently, as long as no fingerprint is added at the same time.
+ *
+ * @author vincent
+ */
+public class QueryPlanFingerprints {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long memoryBudget;
+
+	private final double falsePositiveProbability;
+
+	/**
+	 * Open-addressing table with linear probing, 0 marks an empty slot.
+	 */
+	private long[] table = new long[INITIAL_CAPACITY];
+
+	private boolean containsZero = false;
+
+	private BloomFilter<Long> filter;
+
+	private long filterBits;
+
+	private long size = 0;
+
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Creates a set with the configured memory budget and false positive probability.
+	 */
+	public QueryPlanFingerprints() {
+		this(Config.GENERATED_PLANS_MEMORY, Config.GENERATED_PLANS_FPP);
+	}
+
+	/**
+	 * @param memoryBudget Bytes the fingerprints may use.
+	 * @param falsePositiveProbability Target false positive probability once the Bloom filter is used.
+	 */
+	public QueryPlanFingerprints(long memoryBudget, double falsePositiveProbability) {
+		if(memoryBudget < INITIAL_CAPACITY * 8)
+			throw new IllegalArgumentException("Memory budget should be at least " + (INITIAL_CAPACITY * 8) + " bytes.");
+
+		if(falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+			throw new IllegalArgumentException("False positive probability should be between 0 and 1.");
+
+		this.memoryBudget = memoryBudget;
+		this.falsePositiveProbability = falsePositiveProbability;
+	}
+
+	public void add(QueryPlan<?> qp) {
+		add(CompactQueryPlan.of(qp).getFingerprint());
+	}
+
+	public boolean contains(QueryPlan<?> qp) {
+		return contains(CompactQueryPlan.of(qp).getFingerprint());
+	}
+
+	/**
+	 * Adds a fingerprint.
+	 *
+	 * @param fingerprint
+	 * @return False if the fingerprint was (possibly) added before.
+	 */
+	public boolean add(long fingerprint) {
+		if(filter != null) {
+			if(!filter.put(Long.valueOf(fingerprint)))
+				return false;
+
+			size++;
+			return true;
+		}
+
+		if(fingerprint == 0) {
+			if(containsZero)
+				return false;
+
+			containsZero = true;
+			size++;
+			return true;
+		}
+
+		if(!insert(table, fingerprint))
+			return false;
+
+		size++;
+
+		if(2 * (size + 1) > table.length)
+			grow();
+
+		return true;
+	}
+
+	/**
+	 * @param fingerprint
+	 * @return True if the fingerprint was (possibly) added before.
+	 */
+	public boolean contains(long fingerprint) {
+		boolean found;
+
+		if(filter != null)
+			found = filter.mightContain(Long.valueOf(fingerprint));
+		else if(fingerprint == 0)
+			found = containsZero;
+		else
+			found = indexOf(table, fingerprint) >= 0;
+
+		if(found)
+			hits.increment();
+
+		return found;
+	}
+
+	private static boolean insert(long[] table, long fingerprint) {
+		int mask = table.length - 1;
+		int i = spread(fingerprint) & mask;
+
+		while(table[i] != 0) {
+			if(table[i] == fingerprint)
+				return false;
+
+			i = (i + 1) & mask;
+		}
+
+		table[i] = fingerprint;
+		return true;
+	}
+
+	private static int indexOf(long[] table, long fingerprint) {
+		int mask = table.length - 1;
+		int i = spread(fingerprint) & mask;
+
+		while(table[i] != 0) {
+			if(table[i] == fingerprint)
+				return i;
+
+			i = (i + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private static int spread(long fingerprint) {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+	/**
+	 * Doubles the table, or moves to a Bloom filter if the doubled table exceeds the memory budget.
+	 */
+	private void grow() {
+		long capacity = 2L * table.length;
+
+		if(capacity * 8 > memoryBudget || capacity > (1 << 30)) {
+			toBloomFilter();
+			return;
+		}
+
+		long[] newTable = new long[(int) capacity];
+
+		for(long fingerprint: table)
+			if(fingerprint != 0)
+				insert(newTable, fingerprint);
+
+		table = newTable;
+	}
+
+	private void toBloomFilter() {
+		// Number of insertions for which a filter of the budget's size reaches the target probability.
+		double bitsPerInsertion = -Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+		long expectedInsertions = Math.max(size, (long) (memoryBudget * 8 / bitsPerInsertion));
+		filterBits = (long) Math.ceil(expectedInsertions * bitsPerInsertion);
+
+		filter = BloomFilter.create(Funnels.longFunnel(), expectedInsertions, falsePositiveProbability);
+
+		for(long fingerprint: table)
+			if(fingerprint != 0)
+				filter.put(Long.valueOf(fingerprint));
+
+		if(containsZero)
+			filter.put(Long.valueOf(0));
+
+		table = null;
+	}
+
+	/**
+	 * Copy of the fingerprints added so far, which is not affected by later additions.
+	 *
+	 * @return
+	 */
+	public QueryPlanFingerprints copy() {
+		QueryPlanFingerprints copy = new QueryPlanFingerprints(memoryBudget, falsePositiveProbability);
+		copy.table = table == null ? null : table.clone();
+		copy.containsZero = containsZero;
+		copy.filter = filter == null ? null : filter.copy();
+		copy.filterBits = filterBits;
+		copy.size = size;
+
+		return copy;
+	}
+
+	/**
+	 * Writes the fingerprints in binary form.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeLong(memoryBudget);
+		out.writeDouble(falsePositiveProbability);
+		out.writeLong(size);
+		out.writeBoolean(isExact());
+
+		if(!isExact()) {
+			out.writeLong(filterBits);
+			filter.writeTo(out);
+			return;
+		}
+
+		out.writeBoolean(containsZero);
+		out.writeInt(table.length);
+
+		for(long fingerprint: table)
+			if(fingerprint != 0)
+				out.writeLong(fingerprint);
+	}
+
+	/**
+	 * Reads fingerprints written by {@link #writeTo(DataOutputStream)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static QueryPlanFingerprints readFrom(DataInputStream in) throws IOException {
+		QueryPlanFingerprints fingerprints = new QueryPlanFingerprints(in.readLong(), in.readDouble());
+		long size = in.readLong();
+
+		if(!in.readBoolean()) {
+			fingerprints.filterBits = in.readLong();
+			fingerprints.filter = BloomFilter.readFrom(in, Funnels.longFunnel());
+			fingerprints.table = null;
+			fingerprints.size = size;
+
+			return fingerprints;
+		}
+
+		fingerprints.containsZero = in.readBoolean();
+		int capacity = in.readInt();
+
+		if(capacity < INITIAL_CAPACITY || Integer.bitCount(capacity) != 1)
+			throw new IOException("Invalid fingerprint table capacity " + capacity + ".");
+
+		fingerprints.table = new long[capacity];
+
+		for(long i = fingerprints.containsZero ? 1 : 0; i < size; i++)
+			insert(fingerprints.table, in.readLong());
+
+		fingerprints.size = size;
+
+		return fingerprints;
+	}
+
+	/**
+	 * Number of fingerprints added, in the Bloom filter those which were not reported as present.
+	 *
+	 * @return
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Number of lookups which found the fingerprint.
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return True while fingerprints are kept in the exact set.
+	 */
+	public boolean isExact() {
+		return filter == null;
+	}
+
+	/**
+	 * Approximate number of bytes used.
+	 *
+	 * @return
+	 */
+	public long getMemorySize() {
+		if(filter != null)
+			return filterBits / 8;
+
+		return 8L * table.length;
+	}
+
+	/**
+	 * Probability that a lookup of a plan which was never added reports it as generated.
+	 * In the exact set, this is the probability of a fingerprint collision.
+	 *
+	 * @return
+	 */
+	public double getFalsePositiveProbability() {
+		if(filter != null)
+			return filter.expectedFpp();
+
+		return size / Math.pow(2, 64);
+	}
+
+	@Override
+	public String toString() {
+		return "QueryPlanFingerprints [size=" + size + ", exact=" + isExact() + ", memory=" + getMemorySize()
+				+ ", hits=" + hits.sum() + ", falsePositiveProbability=" + getFalsePositiveProbability() + "]";
+	}
+}
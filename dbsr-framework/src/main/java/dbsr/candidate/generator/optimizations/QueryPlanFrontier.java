@@ -0,0 +1,244 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import dbsr.candidate.Candidate;
+import dbsr.workload.QueryPlan;
+
+/**
+ * Remaining query plans to evaluate for optimization.
+ *
+ * Two modes are supported:
+ * - FIFO: query plans are popped in the order they were added (breadth-first).
+ * - Best-first: query plans are popped by ascending priority, e.g. frequency weighted cost.
+ *   Equal priorities are popped in the order they were added.
+ *
+ * Membership is indexed, so contains and remove do not scan the frontier.
+ * In best-first mode removed query plans are marked and skipped lazily when popped.
+ *
+ * @author vincent
+ */
+public class QueryPlanFrontier<T extends Candidate<T>> {
+
+	/**
+	 * Null in FIFO mode.
+	 */
+	private final QueryPlanPriority<T> priority;
+
+	/**
+	 * FIFO mode: insertion ordered query plans.
+	 */
+	private final LinkedHashSet<QueryPlan<T>> fifo = new LinkedHashSet<QueryPlan<T>>();
+
+	/**
+	 * Best-first mode: ordered entries, may contain entries which have been removed since.
+	 */
+	private final PriorityQueue<Entry<T>> queue = new PriorityQueue<Entry<T>>();
+
+	/**
+	 * Best-first mode: live entry per query plan.
+	 */
+	private final HashMap<QueryPlan<T>, Entry<T>> entries = new HashMap<QueryPlan<T>, Entry<T>>();
+
+	private long insertions = 0;
+
+	/**
+	 * Creates a FIFO frontier.
+	 */
+	public QueryPlanFrontier() {
+		this(null);
+	}
+
+	/**
+	 * Creates a best-first frontier ordered by the given priority function.
+	 *
+	 * @param priority Priority function, or null for FIFO ordering.
+	 */
+	public QueryPlanFrontier(QueryPlanPriority<T> priority) {
+		this.priority = priority;
+	}
+
+	public boolean isBestFirst() {
+		return this.priority != null;
+	}
+
+	/**
+	 * Adds the query plan, unless it is already present.
+	 *
+	 * @param qp
+	 * @return True if the query plan was added.
+	 */
+	public boolean add(QueryPlan<T> qp) {
+		if(qp == null)
+			return false;
+
+		if(!isBestFirst())
+			return fifo.add(qp);
+
+		if(entries.containsKey(qp))
+			return false;
+
+		Entry<T> entry = new Entry<T>(qp, priority.getPriority(qp), insertions++);
+		entries.put(qp, entry);
+		queue.add(entry);
+
+		return true;
+	}
+
+	/**
+	 * Removes and returns the next query plan to optimize, or null if the frontier is empty.
+	 *
+	 * @return
+	 */
+	public QueryPlan<T> poll() {
+		if(!isBestFirst()) {
+			Iterator<QueryPlan<T>> iterator = fifo.iterator();
+
+			if(!iterator.hasNext())
+				return null;
+
+			QueryPlan<T> qp = iterator.next();
+			iterator.remove();
+
+			return qp;
+		}
+
+		while(!queue.isEmpty()) {
+			Entry<T> entry = queue.poll();
+
+			if(entry.removed)
+				continue;
+
+			entries.remove(entry.qp);
+			return entry.qp;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the next query plan to optimize without removing it, or null if the frontier is empty.
+	 *
+	 * @return
+	 */
+	public QueryPlan<T> peek() {
+		if(!isBestFirst())
+			return fifo.isEmpty() ? null : fifo.iterator().next();
+
+		while(!queue.isEmpty() && queue.peek().removed)
+			queue.poll();
+
+		return queue.isEmpty() ? null : queue.peek().qp;
+	}
+
+	public boolean contains(QueryPlan<T> qp) {
+		if(!isBestFirst())
+			return fifo.contains(qp);
+
+		return entries.containsKey(qp);
+	}
+
+	public boolean remove(QueryPlan<T> qp) {
+		if(!isBestFirst())
+			return fifo.remove(qp);
+
+		Entry<T> entry = entries.remove(qp);
+
+		if(entry == null)
+			return false;
+
+		entry.removed = true;
+
+		// Lazily deleted entries are dropped once they outnumber the live ones.
+		if(queue.size() > 2 * entries.size() + 64) {
+			Iterator<Entry<T>> iterator = queue.iterator();
+
+			while(iterator.hasNext()) {
+				if(iterator.next().removed)
+					iterator.remove();
+			}
+		}
+
+		return true;
+	}
+
+	public void removeAll(Collection<QueryPlan<T>> qps) {
+		for(QueryPlan<T> qp: qps)
+			remove(qp);
+	}
+
+	public int size() {
+		if(!isBestFirst())
+			return fifo.size();
+
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Query plans in the frontier, in the order they were added.
+	 * Adding them in this order to an empty frontier restores the same order of optimization.
+	 *
+	 * @return
+	 */
+	public List<QueryPlan<T>> toList() {
+		if(!isBestFirst())
+			return new ArrayList<QueryPlan<T>>(fifo);
+
+		List<Entry<T>> live = new ArrayList<Entry<T>>(entries.values());
+		Collections.sort(live, new Comparator<Entry<T>>() {
+			@Override
+			public int compare(Entry<T> e1, Entry<T> e2) {
+				return Long.compare(e1.order, e2.order);
+			}
+		});
+
+		List<QueryPlan<T>> qps = new ArrayList<QueryPlan<T>>(live.size());
+
+		for(Entry<T> entry: live)
+			qps.add(entry.qp);
+
+		return qps;
+	}
+
+	/**
+	 * Frontier entry, ordered by priority and then by insertion.
+	 */
+	private static class Entry<T extends Candidate<T>> implements Comparable<Entry<T>> {
+
+		private final QueryPlan<T> qp;
+
+		private final double priority;
+
+		private final long order;
+
+		private boolean removed = false;
+
+		public Entry(QueryPlan<T> qp, double priority, long order) {
+			this.qp = qp;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(Entry<T> o) {
+			int cmp = Double.compare(priority, o.priority);
+
+			if(cmp != 0)
+				return cmp;
+
+			return Long.compare(order, o.order);
+		}
+	}
+}
@@ -1,137 +1,333 @@
 package dbsr.candidate.generator.optimizations;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import com.google.common.collect.Iterables;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import dbsr.candidate.Candidate;
 import dbsr.config.Config;
+import dbsr.model.tree.EntityTree;
 import dbsr.workload.QueryPlan;
 
 /**
  * Notifies entire candidate tree and its associated query plans of the existence of a new data structure.
- * 
- * Manages notifier threads.
- * 
+ *
+ * Only query plans with a candidate which is a subset of the new data structure can be rewritten.
+ * Each distinct candidate of the subscribed query plans is checked once, and indexed by identity if it is a subset;
+ * its entities are compared first, a subset only uses entities of the new data structure.
+ * The other query plans are not notified.
+ *
+ * Multiple new data structures can be notified in a single pass, e.g. all merges of an iteration.
+ * Each query plan subscribed to several of them is notified once per data structure it can be rewritten with,
+ * and the new query plans are deduplicated over the batch.
+ *
+ * The subscribed query plans are split recursively over the threads of a notifier pool,
+ * idle threads steal the remaining halves of busy ones.
+ * Each task collects its own new query plans, which are merged when the tasks are joined.
+ *
+ * Few query plans are notified on the calling thread.
+ *
  * @author vincent
  */
 public class QueryPlanNotifier<T extends Candidate<T>> {
 
-	private final T candidate;
-	
-	private final Set<Candidate<T>> candidateTree;
-	
-	protected final HashSet<QueryPlan<T>> generatedQPs;
-	
-	private final LinkedHashSet<QueryPlan<T>> queryPlans = new LinkedHashSet<QueryPlan<T>>();
-	
-	private final Set<QueryPlan<T>> newQPs = new HashSet<QueryPlan<T>>();
-	
-	public QueryPlanNotifier(T candidate, HashSet<QueryPlan<T>> generatedQPs) {
+	private final List<T> candidates;
+
+	protected final QueryPlanFingerprints generatedQPs;
+
+	private final List<QueryPlan<T>> queryPlans;
+
+	/**
+	 * Indexes of the new candidates each query plan can be rewritten with, in the order of the query plans.
+	 */
+	private final int[][] rewrites;
+
+	/**
+	 * Candidates of the subscribed query plans which are a subset of each new candidate, by identity.
+	 */
+	private final List<Set<T>> subsets = new ArrayList<Set<T>>();
+
+	/**
+	 * Entities of the candidates checked so far, shared by the new candidates.
+	 */
+	private final IdentityHashMap<T, BitSet> entitiesPerCandidate = new IdentityHashMap<T, BitSet>();
+
+	/**
+	 * Number of new query plans of each new candidate.
+	 */
+	private final AtomicIntegerArray generated;
+
+	private final int subscribedQueryPlans;
+
+	private final NotifierPool pool;
+
+	private final Set<QueryPlan<T>> newQPs;
+
+	public QueryPlanNotifier(T candidate, QueryPlanFingerprints generatedQPs) {
+		this(candidate, generatedQPs, NotifierPool.getDefault());
+	}
+
+	public QueryPlanNotifier(T candidate, QueryPlanFingerprints generatedQPs, NotifierPool pool) {
+		this(Collections.singletonList(candidate), generatedQPs, pool);
+	}
+
+	/**
+	 * Notifies the query plans subscribed to any of the new candidates in a single pass.
+	 *
+	 * @param candidates New candidates, in the order they are tried on each query plan.
+	 * @param generatedQPs
+	 * @param pool
+	 */
+	public QueryPlanNotifier(List<T> candidates, QueryPlanFingerprints generatedQPs, NotifierPool pool) {
 		this.generatedQPs = generatedQPs;
-		
-		// collect candidates (into set)
-		this.candidate = candidate;
-		this.candidateTree = candidate.getCandidateTree();
-		
-//		System.out.println("candidate: " + candidate);
-//		System.out.println("candidate tree size: " + candidateTree.size());
-		
-		// merge all query plans
-		for(Candidate<T> cand: candidateTree) {
-			queryPlans.addAll(cand.getSubscribedQueryPlans());
+		this.pool = pool;
+
+		this.candidates = candidates;
+		this.generated = new AtomicIntegerArray(candidates.size());
+
+		// query plans which can be rewritten, with the candidates they can be rewritten with
+		LinkedHashMap<QueryPlan<T>, List<Integer>> rewritable = new LinkedHashMap<QueryPlan<T>, List<Integer>>();
+		Set<QueryPlan<T>> subscribed = new HashSet<QueryPlan<T>>();
+
+		for(int i=0; i < candidates.size(); i++) {
+			T candidate = candidates.get(i);
+
+			// merge all query plans of the candidate and its ancestors
+			LinkedHashSet<QueryPlan<T>> candidateSubscribed = new LinkedHashSet<QueryPlan<T>>();
+			candidate.collectSubscribedQueryPlans(candidateSubscribed);
+
+			for(Candidate<T> ancestor: candidate.getAncestors())
+				ancestor.collectSubscribedQueryPlans(candidateSubscribed);
+
+			subscribed.addAll(candidateSubscribed);
+			subsets.add(collectRewritableQueryPlans(candidate, i, candidateSubscribed, rewritable));
 		}
-		
-//		System.out.println(" query plan size: " + queryPlans.size());
-		
-		this.startThreads();
+
+		this.subscribedQueryPlans = subscribed.size();
+		this.queryPlans = new ArrayList<QueryPlan<T>>(rewritable.keySet());
+		this.rewrites = new int[queryPlans.size()][];
+
+		int index = 0;
+
+		for(List<Integer> candidateIndexes: rewritable.values()) {
+			rewrites[index] = new int[candidateIndexes.size()];
+
+			for(int i=0; i < candidateIndexes.size(); i++)
+				rewrites[index][i] = candidateIndexes.get(i);
+
+			index++;
+		}
+
+		this.newQPs = notifyQueryPlans();
 	}
-	
-	private void startThreads() {
-		// set number of threads
-		int numberOfThreads = Math.max(1, queryPlans.size() / 500);
-		numberOfThreads = Math.min(numberOfThreads, Config.MAX_THREADS);
-		
-		// divide set of query plans across MAX threads
-		Iterable<List<QueryPlan<T>>> queryPlanPartitions = Iterables.partition(queryPlans, (queryPlans.size() / numberOfThreads) +1);
-		Iterator<List<QueryPlan<T>>> iterator = queryPlanPartitions.iterator();
-		
-		// start MAX threads
-		ArrayList<NotifierThread> notifiers = new ArrayList<NotifierThread>();
-		
-		for(int i=0; i< numberOfThreads; i++) {
-			List<QueryPlan<T>> list = iterator.next();
-			NotifierThread notifier = new NotifierThread(i, list.iterator());
-			notifiers.add(notifier);
-			
-//			System.out.println(" new thread ");
-			notifier.start();
+
+	/**
+	 * Adds the query plans with a candidate which is a subset of the new candidate.
+	 *
+	 * @param candidate
+	 * @param index
+	 * @param subscribed
+	 * @param rewritable
+	 * @return Candidates of the subscribed query plans which are a subset of the new candidate.
+	 */
+	private Set<T> collectRewritableQueryPlans(T candidate, int index, Set<QueryPlan<T>> subscribed, Map<QueryPlan<T>, List<Integer>> rewritable) {
+		BitSet entities = getEntities(candidate);
+		Set<T> checked = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+		Set<T> candidateSubsets = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+
+		for(QueryPlan<T> qp: subscribed) {
+			boolean canRewrite = false;
+
+			for(T cand: qp.getCandidatesPlan()) {
+				if(checked.add(cand) && isSubSetOfCandidate(cand, candidate, entities))
+					candidateSubsets.add(cand);
+
+				canRewrite |= candidateSubsets.contains(cand);
+			}
+
+			if(canRewrite) {
+				List<Integer> candidateIndexes = rewritable.get(qp);
+
+				if(candidateIndexes == null) {
+					candidateIndexes = new ArrayList<Integer>(1);
+					rewritable.put(qp, candidateIndexes);
+				}
+
+				candidateIndexes.add(index);
+			}
 		}
-		
-		// wait till threads are finished.
-		for(Thread t: notifiers) {
-			try {
-				t.join();
-//				System.out.println(" threads finished");
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+
+		return candidateSubsets;
+	}
+
+	private boolean isSubSetOfCandidate(T cand, T candidate, BitSet entities) {
+		if(entities != null) {
+			BitSet candEntities = entitiesPerCandidate.get(cand);
+
+			if(candEntities == null && !entitiesPerCandidate.containsKey(cand)) {
+				candEntities = getEntities(cand);
+				entitiesPerCandidate.put(cand, candEntities);
+			}
+
+			if(candEntities != null) {
+				BitSet outside = (BitSet) candEntities.clone();
+				outside.andNot(entities);
+
+				if(!outside.isEmpty())
+					return false;
 			}
 		}
-		
-		// collect results
-		for(NotifierThread t: notifiers) {
-			newQPs.addAll(t.getNewQPs());
+
+		return cand.isSubSetOf(candidate);
+	}
+
+	/**
+	 * Ids of the entities of the candidate tree.
+	 *
+	 * @param cand
+	 * @return Null if an entity is not compiled.
+	 */
+	private static BitSet getEntities(Candidate<?> cand) {
+		BitSet entities = new BitSet();
+
+		for(EntityTree node: cand.getCandidate().getElements()) {
+			int id = node.getNode().getId();
+
+			if(id == -1)
+				return null;
+
+			entities.set(id);
 		}
-		
-//		System.out.println("new qps size:" + newQPs.size());
+
+		return entities;
+	}
+
+	/**
+	 * Number of query plans subscribed to the candidate trees, including those which were not notified.
+	 *
+	 * @return
+	 */
+	public int getSubscribedQueryPlans() {
+		return subscribedQueryPlans;
+	}
+
+	/**
+	 * Number of query plans notified.
+	 *
+	 * @return
+	 */
+	public int getNotifiedQueryPlans() {
+		return queryPlans.size();
+	}
+
+	/**
+	 * Number of new query plans of a new candidate, before they are deduplicated with those of the other new candidates.
+	 *
+	 * @param index Index of the new candidate.
+	 * @return
+	 */
+	public int getNewQueryPlans(int index) {
+		return generated.get(index);
+	}
+
+	private Set<QueryPlan<T>> notifyQueryPlans() {
+		if(queryPlans.size() <= Config.NOTIFIER_TASK_SIZE)
+			return notifyRange(0, queryPlans.size());
+
+		return pool.invoke(new NotifyTask(0, queryPlans.size()));
 	}
-	
+
+	/**
+	 * Notifies the query plans in the range [from, to).
+	 *
+	 * @param from
+	 * @param to
+	 * @return New query plans, which have not been generated before.
+	 */
+	private Set<QueryPlan<T>> notifyRange(int from, int to) {
+		Set<QueryPlan<T>> result = new HashSet<QueryPlan<T>>();
+
+		for(int i=from; i < to; i++) {
+			for(int index: rewrites[i]) {
+				Iterator<QueryPlan<T>> it = queryPlans.get(i).notifyNewCandidate(candidates.get(index), subsets.get(index)).iterator();
+				int candidateGenerated = 0;
+
+				while(it.hasNext()) {
+					QueryPlan<T> qp = it.next();
+
+					if(!generatedQPs.contains(qp)) {
+						result.add(qp);
+						candidateGenerated++;
+					}
+				}
+
+				generated.addAndGet(index, candidateGenerated);
+			}
+		}
+
+		return result;
+	}
+
 	public Set<QueryPlan<T>> getNewQueryPlans() {
 		return this.newQPs;
 	}
-	
+
 	/**
-	 * Notifier thread
-	 * 
+	 * Notifies a range of query plans, splits the range in halves until it is small enough.
+	 *
 	 * @author vincent
 	 */
-	public class NotifierThread extends Thread {
-		
-		/**
-		 * Used to allocate the range of query plans to process.
-		 */
-		private final Iterator<QueryPlan<T>> iterator;
-		
-		private final int threadNr;
-		
-		private final Set<QueryPlan<T>> newQPs = new HashSet<QueryPlan<T>>();
-		
-		public NotifierThread(int threadNr, Iterator<QueryPlan<T>> iterator) {
-			this.iterator = iterator;
-			this.threadNr = threadNr;
+	private class NotifyTask extends RecursiveTask<Set<QueryPlan<T>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+
+		private final int to;
+
+		public NotifyTask(int from, int to) {
+			this.from = from;
+			this.to = to;
 		}
-		
-		public void run() {
-			while(iterator.hasNext()) {
-				QueryPlan<T> qp = iterator.next();
-				
-				Set<QueryPlan<T>> newPlans = qp.notifyNewCandidate(candidate);
-				newPlans.removeAll(generatedQPs);
-				
-				newQPs.addAll(newPlans);
+
+		@Override
+		protected Set<QueryPlan<T>> compute() {
+			if(to - from <= Config.NOTIFIER_TASK_SIZE) {
+				long start = System.nanoTime();
+				Set<QueryPlan<T>> result = notifyRange(from, to);
+				pool.recordTask(System.nanoTime() - start);
+
+				return result;
 			}
+
+			int middle = (from + to) >>> 1;
+
+			NotifyTask left = new NotifyTask(from, middle);
+			NotifyTask right = new NotifyTask(middle, to);
+
+			left.fork();
+			Set<QueryPlan<T>> rightResult = right.compute();
+			Set<QueryPlan<T>> leftResult = left.join();
+
+			// merge the smaller result into the larger one
+			if(leftResult.size() < rightResult.size()) {
+				rightResult.addAll(leftResult);
+				return rightResult;
+			}
+
+			leftResult.addAll(rightResult);
+			return leftResult;
 		}
-			
-		public Set<QueryPlan<T>> getNewQPs() {
-			return this.newQPs;
-		}
-		
 	}
 
 }
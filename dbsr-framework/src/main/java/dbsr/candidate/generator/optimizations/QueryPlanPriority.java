@@ -0,0 +1,37 @@
+package dbsr.candidate.generator.optimizations;
+
+import dbsr.candidate.Candidate;
+import dbsr.workload.QueryPlan;
+
+/**
+ * Determines the order in which the generator explores query plans in a best-first search.
+ *
+ * Query plans with a lower priority value are explored first.
+ *
+ * @author vincent
+ */
+public interface QueryPlanPriority<T extends Candidate<T>> {
+
+	/**
+	 * Returns the priority of the query plan, lower values are explored first.
+	 *
+	 * The value is computed once, when the query plan enters the frontier.
+	 *
+	 * @param qp
+	 * @return
+	 */
+	public double getPriority(QueryPlan<T> qp);
+
+	/**
+	 * Default priority: the cost of the query plan weighted by the frequency of its sequence.
+	 *
+	 * Cheap query plans of frequent sequences are explored first.
+	 */
+	public static class WeightedCost<T extends Candidate<T>> implements QueryPlanPriority<T> {
+
+		@Override
+		public double getPriority(QueryPlan<T> qp) {
+			return (double) qp.getCost() * qp.getSequence().getFrequency();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import dbsr.candidate.Candidate;
+import dbsr.config.Config;
+import dbsr.workload.QueryPlan;
+
+/**
+ * Prunes the query plans of each sequence, and keeps the k cheapest plans of each length.
+ *
+ * The plans to remove are selected per sequence from its plan store, by seeking past the k cheapest plans of each length.
+ * Sequences are selected concurrently if enabled, the stores are only read while selecting.
+ * The selected plans are then removed one sequence at a time, in the order of the stores given.
+ *
+ * Keeps track of the time spent pruning, separately from the generation.
+ *
+ * @author vincent
+ */
+public class QueryPlanPruner<S, T extends Candidate<T>> {
+
+	/**
+	 * Removes the selected query plans of a sequence from the generator.
+	 */
+	public interface Removal<S, T extends Candidate<T>> {
+
+		public void remove(S sequence, List<QueryPlan<T>> qps);
+	}
+
+	private final int plansPerLength;
+
+	private final boolean parallel;
+
+	private long passes = 0;
+
+	private long plansRemoved = 0;
+
+	private long selectionNanos = 0;
+
+	private long removalNanos = 0;
+
+	/**
+	 * Pruner keeping {@link Config#PRUNE_LEAVE_NR_PLANS_PER_BUCKET} plans per length,
+	 * selecting concurrently if {@link Config#PARALLEL_PRUNING} is set.
+	 */
+	public QueryPlanPruner() {
+		this(Config.PRUNE_LEAVE_NR_PLANS_PER_BUCKET, Config.PARALLEL_PRUNING);
+	}
+
+	public QueryPlanPruner(int plansPerLength, boolean parallel) {
+		if(plansPerLength < 0)
+			throw new IllegalArgumentException("Number of plans to keep should not be negative.");
+
+		this.plansPerLength = plansPerLength;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Selects and removes the query plans beyond the k cheapest of each length, for each sequence.
+	 *
+	 * @param stores
+	 * @param removal
+	 * @return Number of query plans removed.
+	 */
+	public int prune(Map<S, QueryPlanStore<T>> stores, Removal<S, T> removal) {
+		long start = System.nanoTime();
+		Map<S, List<QueryPlan<T>>> selected = select(stores);
+		long selectedAt = System.nanoTime();
+
+		int removed = 0;
+
+		for(Map.Entry<S, List<QueryPlan<T>>> entry: selected.entrySet()) {
+			if(entry.getValue().isEmpty())
+				continue;
+
+			removal.remove(entry.getKey(), entry.getValue());
+			removed += entry.getValue().size();
+		}
+
+		passes++;
+		plansRemoved += removed;
+		selectionNanos += selectedAt - start;
+		removalNanos += System.nanoTime() - selectedAt;
+
+		return removed;
+	}
+
+	/**
+	 * Selects the query plans beyond the k cheapest of each length, for each sequence.
+	 *
+	 * @param stores
+	 * @return Selected query plans, in the order of the stores.
+	 */
+	public Map<S, List<QueryPlan<T>>> select(Map<S, QueryPlanStore<T>> stores) {
+		List<S> sequences = new ArrayList<S>(stores.keySet());
+		List<SelectTask> tasks = new ArrayList<SelectTask>(sequences.size());
+
+		for(S sequence: sequences)
+			tasks.add(new SelectTask(stores.get(sequence)));
+
+		if(parallel && tasks.size() > 1) {
+			ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		} else {
+			for(SelectTask task: tasks)
+				task.invoke();
+		}
+
+		Map<S, List<QueryPlan<T>>> selected = new LinkedHashMap<S, List<QueryPlan<T>>>();
+
+		for(int i=0; i < sequences.size(); i++)
+			selected.put(sequences.get(i), tasks.get(i).result);
+
+		return selected;
+	}
+
+	public long getPasses() {
+		return passes;
+	}
+
+	public long getPlansRemoved() {
+		return plansRemoved;
+	}
+
+	/**
+	 * Time spent selecting and removing query plans.
+	 *
+	 * @param unit
+	 * @return
+	 */
+	public long getTime(TimeUnit unit) {
+		return unit.convert(selectionNanos + removalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getSelectionTime(TimeUnit unit) {
+		return unit.convert(selectionNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getRemovalTime(TimeUnit unit) {
+		return unit.convert(removalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "QueryPlanPruner [passes=" + passes + ", removed=" + plansRemoved + ", selection=" + getSelectionTime(TimeUnit.MILLISECONDS)
+				+ "ms, removal=" + getRemovalTime(TimeUnit.MILLISECONDS) + "ms, parallel=" + parallel + "]";
+	}
+
+	/**
+	 * Selects the query plans to remove of a single sequence.
+	 */
+	private class SelectTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final QueryPlanStore<T> store;
+
+		private List<QueryPlan<T>> result;
+
+		public SelectTask(QueryPlanStore<T> store) {
+			this.store = store;
+		}
+
+		@Override
+		protected void compute() {
+			result = store.getAllButCheapestOfEachLength(plansPerLength);
+		}
+	}
+}
@@ -0,0 +1,542 @@
+package dbsr.candidate.generator.optimizations;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dbsr.candidate.Candidate;
+import dbsr.workload.CompactQueryPlan;
+import dbsr.workload.QueryPlan;
+
+/**
+ * Query plans of a single sequence, ordered by cost.
+ *
+ * Plans are kept in an order-statistic tree (a treap) keyed by their cost and fingerprint when added,
+ * and in a tree per plan length (number of candidates).
+ * Adding, removing, the rank of a plan and the k cheapest plans take O(log n) (plus k).
+ * The key is kept with the plan, so a plan is removed even if its cost changed since it was added.
+ *
+ * Ranks and fitness of the plans are only recalculated when plans were added or removed since the last ranking.
+ *
+ * The views returned are live and ordered by cost, they should not be iterated while plans are added or removed.
+ *
+ * @author vincent
+ */
+public class QueryPlanStore<T extends Candidate<T>> {
+
+	private final HashMap<QueryPlan<T>, Key> keys = new HashMap<QueryPlan<T>, Key>();
+
+	private final Treap<T> byCost = new Treap<T>();
+
+	private final TreeMap<Integer, Treap<T>> byLength = new TreeMap<Integer, Treap<T>>();
+
+	private long insertions = 0;
+
+	private boolean ranked = false;
+
+	private double totalFitness = 0;
+
+	/**
+	 * Adds the query plan, unless it is already present.
+	 *
+	 * @param qp
+	 * @return True if the query plan was added.
+	 */
+	public boolean add(QueryPlan<T> qp) {
+		if(qp == null || keys.containsKey(qp))
+			return false;
+
+		Key key = new Key(qp.getCost(), CompactQueryPlan.of(qp).getFingerprint(), insertions++);
+		keys.put(qp, key);
+
+		byCost.insert(qp, key);
+
+		Treap<T> lengthTree = byLength.get(Integer.valueOf(qp.size()));
+
+		if(lengthTree == null) {
+			lengthTree = new Treap<T>();
+			byLength.put(Integer.valueOf(qp.size()), lengthTree);
+		}
+
+		lengthTree.insert(qp, key);
+		ranked = false;
+
+		return true;
+	}
+
+	/**
+	 * @param qp
+	 * @return True if the query plan was present.
+	 */
+	public boolean remove(QueryPlan<T> qp) {
+		Key key = keys.remove(qp);
+
+		if(key == null)
+			return false;
+
+		byCost.remove(key);
+
+		Treap<T> lengthTree = byLength.get(Integer.valueOf(qp.size()));
+		lengthTree.remove(key);
+
+		if(lengthTree.size() == 0)
+			byLength.remove(Integer.valueOf(qp.size()));
+
+		ranked = false;
+
+		return true;
+	}
+
+	public boolean contains(QueryPlan<T> qp) {
+		return qp != null && keys.containsKey(qp);
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	public boolean isEmpty() {
+		return keys.isEmpty();
+	}
+
+	/**
+	 * @return The cheapest query plan, or null if there is none.
+	 */
+	public QueryPlan<T> getBest() {
+		return size() == 0 ? null : byCost.get(0);
+	}
+
+	/**
+	 * Position of the query plan by ascending cost, 0 is the cheapest.
+	 *
+	 * @param qp
+	 * @return The position, or -1 if the query plan is not present.
+	 */
+	public int indexOf(QueryPlan<T> qp) {
+		Key key = keys.get(qp);
+
+		if(key == null)
+			return -1;
+
+		return byCost.indexOf(key);
+	}
+
+	/**
+	 * Query plan at the given position by ascending cost.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public QueryPlan<T> get(int index) {
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size() + " query plans.");
+
+		return byCost.get(index);
+	}
+
+	/**
+	 * @param k
+	 * @return The k cheapest query plans, cheapest first.
+	 */
+	public List<QueryPlan<T>> getCheapest(int k) {
+		return byCost.getFirst(k);
+	}
+
+	/**
+	 * All query plans, by ascending cost.
+	 *
+	 * @return
+	 */
+	public Set<QueryPlan<T>> getQueryPlans() {
+		return byCost.view(keys);
+	}
+
+	/**
+	 * Query plans with the given number of candidates, by ascending cost.
+	 *
+	 * @param length
+	 * @return
+	 */
+	public Set<QueryPlan<T>> getQueryPlansOfLength(int length) {
+		Treap<T> lengthTree = byLength.get(Integer.valueOf(length));
+
+		if(lengthTree == null)
+			return Collections.emptySet();
+
+		return lengthTree.view(keys);
+	}
+
+	/**
+	 * Lengths of the query plans present, ascending.
+	 *
+	 * @return
+	 */
+	public Set<Integer> getLengths() {
+		return Collections.unmodifiableSet(byLength.keySet());
+	}
+
+	/**
+	 * Query plans which are not among the k cheapest of their length.
+	 * Only the plans returned are visited.
+	 *
+	 * @param k
+	 * @return
+	 */
+	public List<QueryPlan<T>> getAllButCheapestOfEachLength(int k) {
+		List<QueryPlan<T>> qps = new ArrayList<QueryPlan<T>>();
+
+		for(Treap<T> lengthTree: byLength.values())
+			lengthTree.collectFrom(k, qps);
+
+		return qps;
+	}
+
+	/**
+	 * Ranks the query plans, if plans were added or removed since the last ranking.
+	 * The cheapest plan has the highest rank, equal to the number of plans.
+	 */
+	public void rankQueryPlans() {
+		if(ranked)
+			return;
+
+		int totalRank = size();
+		int rank = totalRank;
+		double fitness = 0;
+
+		for(QueryPlan<T> qp: getQueryPlans()) {
+			qp.setRank(rank);
+			qp.setFitness(rank, totalRank);
+			fitness += qp.getFitness();
+
+			rank--;
+		}
+
+		this.totalFitness = fitness;
+		this.ranked = true;
+	}
+
+	/**
+	 * Sum of the fitness of all query plans.
+	 *
+	 * @return
+	 */
+	public double getTotalFitness() {
+		rankQueryPlans();
+
+		return totalFitness;
+	}
+
+	/**
+	 * Order of a query plan in the store, fixed when it is added.
+	 */
+	private static final class Key implements Comparable<Key> {
+
+		private final int cost;
+
+		private final long fingerprint;
+
+		private final long insertion;
+
+		public Key(int cost, long fingerprint, long insertion) {
+			this.cost = cost;
+			this.fingerprint = fingerprint;
+			this.insertion = insertion;
+		}
+
+		@Override
+		public int compareTo(Key o) {
+			int cmp = Integer.compare(cost, o.cost);
+
+			if(cmp != 0)
+				return cmp;
+
+			cmp = Long.compare(fingerprint, o.fingerprint);
+
+			if(cmp != 0)
+				return cmp;
+
+			return Long.compare(insertion, o.insertion);
+		}
+	}
+
+	/**
+	 * Treap of query plans ordered by key, each node keeps the size of its subtree.
+	 */
+	private static final class Treap<T extends Candidate<T>> {
+
+		private Node<T> root;
+
+		private int seed = 0x2545F491;
+
+		public int size() {
+			return size(root);
+		}
+
+		public void insert(QueryPlan<T> qp, Key key) {
+			root = insert(root, new Node<T>(qp, key, nextPriority()));
+		}
+
+		public void remove(Key key) {
+			root = remove(root, key);
+		}
+
+		public QueryPlan<T> get(int index) {
+			Node<T> node = root;
+
+			while(node != null) {
+				int leftSize = size(node.left);
+
+				if(index < leftSize) {
+					node = node.left;
+				} else if(index == leftSize) {
+					return node.qp;
+				} else {
+					index -= leftSize + 1;
+					node = node.right;
+				}
+			}
+
+			throw new IndexOutOfBoundsException();
+		}
+
+		public int indexOf(Key key) {
+			Node<T> node = root;
+			int index = 0;
+
+			while(node != null) {
+				int cmp = key.compareTo(node.key);
+
+				if(cmp < 0) {
+					node = node.left;
+				} else if(cmp == 0) {
+					return index + size(node.left);
+				} else {
+					index += size(node.left) + 1;
+					node = node.right;
+				}
+			}
+
+			return -1;
+		}
+
+		public List<QueryPlan<T>> getFirst(int k) {
+			List<QueryPlan<T>> qps = new ArrayList<QueryPlan<T>>(Math.min(k, size()));
+			Iterator<QueryPlan<T>> iterator = new InOrder<T>(root);
+
+			while(qps.size() < k && iterator.hasNext())
+				qps.add(iterator.next());
+
+			return qps;
+		}
+
+		/**
+		 * Adds the query plans from the given position onwards, without visiting the ones before it.
+		 */
+		public void collectFrom(int index, List<QueryPlan<T>> qps) {
+			Iterator<QueryPlan<T>> iterator = new InOrder<T>(root, index);
+
+			while(iterator.hasNext())
+				qps.add(iterator.next());
+		}
+
+		public Set<QueryPlan<T>> view(final HashMap<QueryPlan<T>, Key> keys) {
+			return new AbstractSet<QueryPlan<T>>() {
+				@Override
+				public Iterator<QueryPlan<T>> iterator() {
+					return new InOrder<T>(root);
+				}
+
+				@Override
+				public int size() {
+					return Treap.this.size();
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					Key key = keys.get(o);
+
+					return key != null && indexOf(key) >= 0;
+				}
+			};
+		}
+
+		private int nextPriority() {
+			// xorshift, the priorities only need to be spread, not unpredictable.
+			seed ^= seed << 13;
+			seed ^= seed >>> 17;
+			seed ^= seed << 5;
+
+			return seed;
+		}
+
+		private static <T extends Candidate<T>> int size(Node<T> node) {
+			return node == null ? 0 : node.size;
+		}
+
+		private static <T extends Candidate<T>> Node<T> insert(Node<T> node, Node<T> newNode) {
+			if(node == null)
+				return newNode;
+
+			if(newNode.key.compareTo(node.key) < 0) {
+				node.left = insert(node.left, newNode);
+
+				if(node.left.priority > node.priority)
+					node = rotateRight(node);
+			} else {
+				node.right = insert(node.right, newNode);
+
+				if(node.right.priority > node.priority)
+					node = rotateLeft(node);
+			}
+
+			node.update();
+			return node;
+		}
+
+		private static <T extends Candidate<T>> Node<T> remove(Node<T> node, Key key) {
+			if(node == null)
+				return null;
+
+			int cmp = key.compareTo(node.key);
+
+			if(cmp < 0) {
+				node.left = remove(node.left, key);
+			} else if(cmp > 0) {
+				node.right = remove(node.right, key);
+			} else {
+				return merge(node.left, node.right);
+			}
+
+			node.update();
+			return node;
+		}
+
+		private static <T extends Candidate<T>> Node<T> merge(Node<T> left, Node<T> right) {
+			if(left == null)
+				return right;
+
+			if(right == null)
+				return left;
+
+			if(left.priority > right.priority) {
+				left.right = merge(left.right, right);
+				left.update();
+				return left;
+			}
+
+			right.left = merge(left, right.left);
+			right.update();
+			return right;
+		}
+
+		private static <T extends Candidate<T>> Node<T> rotateRight(Node<T> node) {
+			Node<T> left = node.left;
+			node.left = left.right;
+			left.right = node;
+
+			node.update();
+			left.update();
+			return left;
+		}
+
+		private static <T extends Candidate<T>> Node<T> rotateLeft(Node<T> node) {
+			Node<T> right = node.right;
+			node.right = right.left;
+			right.left = node;
+
+			node.update();
+			right.update();
+			return right;
+		}
+	}
+
+	private static final class Node<T extends Candidate<T>> {
+
+		private final QueryPlan<T> qp;
+
+		private final Key key;
+
+		private final int priority;
+
+		private Node<T> left;
+
+		private Node<T> right;
+
+		private int size = 1;
+
+		public Node(QueryPlan<T> qp, Key key, int priority) {
+			this.qp = qp;
+			this.key = key;
+			this.priority = priority;
+		}
+
+		private void update() {
+			size = 1 + Treap.size(left) + Treap.size(right);
+		}
+	}
+
+	/**
+	 * Iterates a treap in ascending order.
+	 */
+	private static final class InOrder<T extends Candidate<T>> implements Iterator<QueryPlan<T>> {
+
+		private final Deque<Node<T>> stack = new ArrayDeque<Node<T>>();
+
+		public InOrder(Node<T> root) {
+			pushLeft(root);
+		}
+
+		/**
+		 * Starts at the given position, in O(log n).
+		 */
+		public InOrder(Node<T> root, int index) {
+			Node<T> node = root;
+
+			while(node != null) {
+				int leftSize = Treap.size(node.left);
+
+				if(index < leftSize) {
+					stack.push(node);
+					node = node.left;
+				} else if(index == leftSize) {
+					stack.push(node);
+					return;
+				} else {
+					index -= leftSize + 1;
+					node = node.right;
+				}
+			}
+		}
+
+		private void pushLeft(Node<T> node) {
+			while(node != null) {
+				stack.push(node);
+				node = node.left;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+
+		@Override
+		public QueryPlan<T> next() {
+			if(stack.isEmpty())
+				throw new NoSuchElementException();
+
+			Node<T> node = stack.pop();
+			pushLeft(node.right);
+
+			return node.qp;
+		}
+	}
+}
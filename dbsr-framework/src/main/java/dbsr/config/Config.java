@@ -6,8 +6,20 @@ public class Config {
 	
 	/**
 	 * Number of threads to process notification of new data structure.
+	 * The generator's notifier pool can be resized at runtime.
 	 */
-	public static final int MAX_THREADS = 3;
+	public static final int NOTIFIER_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Number of query plans notified by a single task, larger sets are split across the notifier threads.
+	 */
+	public static final int NOTIFIER_TASK_SIZE = 250;
+	
+	/**
+	 * Number of iterations whose new candidates are notified together, in a single pass over their subscribed query plans.
+	 * 0 notifies each new candidate when it is registered.
+	 */
+	public static final int NOTIFICATION_WINDOW = 0;
 	
 	/**
 	 * Can the document store cut-off results from a selected documented at a certain depth.
@@ -53,8 +65,115 @@ public class Config {
 	 */
 	public static final int PRUNE_AT_QUERY_STACK_SIZE = 30000;
 	
+	/**
+	 * Maximum number of initial candidates per entity, near-identical field sets are clustered beyond.
+	 */
+	public static final int MAX_INITIAL_CANDIDATES_PER_ENTITY = Integer.MAX_VALUE;
+	
+	/**
+	 * Create the initial candidates of multiple entities concurrently.
+	 */
+	public static final boolean PARALLEL_INITIAL_CANDIDATES = true;
+	
+	/**
+	 * Maximum number of root query plans created per sequence, the first ones in the order of enumeration.
+	 */
+	public static final int MAX_ROOT_QUERY_PLANS_PER_SEQUENCE = Integer.MAX_VALUE;
+	
+	/**
+	 * Sample the root query plans of a sequence uniformly when there are more than the maximum, instead of taking the first ones.
+	 */
+	public static final boolean SAMPLE_ROOT_QUERY_PLANS = false;
+	
+	/**
+	 * Seed of the sample of root query plans, so generations can be reproduced.
+	 */
+	public static final long ROOT_QUERY_PLANS_SEED = 42;
+	
 	/**
 	 * Maximum iterations for the generator.
 	 */
 	public static final int MAX_ITERATIONS = 4000;
+	
+	/**
+	 * Share the cost of query plan steps between query plans using the same data structures.
+	 */
+	public static final boolean COST_STEP_CACHING = true;
+	
+	/**
+	 * Maximum number of cached query plan steps.
+	 */
+	public static final int COST_STEP_CACHE_SIZE = 200000;
+
+	/**
+	 * Maximum number of memoized query paths per frozen candidate tree, and per kind of lookup.
+	 */
+	public static final int COMPILED_TREE_PATHS_SIZE = 1024;
+	
+	/**
+	 * Share the merges of pairs of candidates between the query plans optimized, only the first occurrence of a pair merges the trees.
+	 */
+	public static final boolean MERGE_CACHING = true;
+
+	/**
+	 * Maximum number of cached merges of pairs of candidates.
+	 */
+	public static final int MERGE_CACHE_SIZE = 200000;
+
+	/**
+	 * Explore the cheapest (frequency weighted) query plans first, instead of in the order they were generated.
+	 */
+	public static final boolean BEST_FIRST_SEARCH = false;
+	
+	/**
+	 * Optimize multiple query plans of the frontier concurrently.
+	 */
+	public static final boolean PARALLEL_GENERATION = false;
+	
+	/**
+	 * Number of threads to optimize query plans with, when generating in parallel.
+	 */
+	public static final int GENERATION_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Select the query plans to prune of multiple sequences concurrently.
+	 * Off by default: for workloads of a few sequences, handing the selection to other threads costs more than it saves.
+	 */
+	public static final boolean PARALLEL_PRUNING = false;
+	
+	/**
+	 * Seconds between snapshots of the generation metrics, when written to a file.
+	 */
+	public static final int METRICS_SNAPSHOT_INTERVAL = 10;
+	
+	/**
+	 * Number of events kept in a generation trace, 32 bytes each.
+	 */
+	public static final int TRACE_CAPACITY = 1 << 20;
+	
+	/**
+	 * Number of generation events queued for listeners, further events are dropped until the listeners catch up.
+	 */
+	public static final int GENERATION_EVENTS_QUEUE_SIZE = 10000;
+	
+	/**
+	 * Number of query plans popped from the frontier at once, when generating in parallel.
+	 */
+	public static final int GENERATION_BATCH_SIZE = 64;
+	
+	/**
+	 * Memory budget in bytes for the fingerprints of generated query plans.
+	 * Once the exact set exceeds it, the fingerprints are kept in a Bloom filter of this size instead.
+	 */
+	public static final long GENERATED_PLANS_MEMORY = 64L * 1024 * 1024;
+	
+	/**
+	 * Target false positive probability of the Bloom filter of generated query plans.
+	 */
+	public static final double GENERATED_PLANS_FPP = 0.001;
+	
+	/**
+	 * Number of iterations between checkpoints of the generator state, when a checkpoint file is set.
+	 */
+	public static final int CHECKPOINT_INTERVAL = 500;
 }
@@ -3,9 +3,12 @@ package dbsr.cost;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import dbsr.candidate.Candidate;
 import dbsr.candidate.CandidateSequences;
+import dbsr.config.Config;
+import dbsr.cost.CostStepCache.StepCost;
 import dbsr.cost.values.CostValueJoinQuery;
 import dbsr.cost.values.CostValueMultiJoinQuery;
 import dbsr.cost.values.CostValueQuery;
@@ -21,6 +24,8 @@ import dbsr.workload.query.Query;
  * - Data size of the records returned
  * - Number of queries executed at each step.
  * 
+ * The cost of each step is shared with other query plans through the {@link CostStepCache} of the query plan, if any.
+ * 
  * TODO: Make static?
  * 
  * @author vincent
@@ -46,7 +51,21 @@ public class CostCalculatorPlan<T extends Candidate<T>> implements Cost {
 	 */
 	@Override
 	public int getCost() {
-
+		CostStepCache cache = qp.getCostStepCache();
+		
+		if(cache == null)
+			return calculateCost();
+		
+		long start = System.nanoTime();
+		
+		try {
+			return calculateCost();
+		} finally {
+			cache.recordEvaluation(System.nanoTime() - start);
+		}
+	}
+	
+	private int calculateCost() {
 		HashMap<Integer, LinkedList<Query>> mapping = this.qp.getMapping();
 		HashMap<Integer, EntityTree> secondaryIndexes = this.qp.getSecondaryIndexes();
 		LinkedList<T> candidates = this.qp.getCandidatesPlan();
@@ -79,7 +98,34 @@ public class CostCalculatorPlan<T extends Candidate<T>> implements Cost {
 	 * 
 	 * @return
 	 */
-	private CostValueSingleJoinQuery getCostAtStep(HashMap<Integer, EntityTree> secondaryIndexes, EntityTree candidate, int candidateIndex, LinkedList<Query> queries) {
+	private CostValueSingleJoinQuery getCostAtStep(final HashMap<Integer, EntityTree> secondaryIndexes, final EntityTree candidate, final int candidateIndex, final LinkedList<Query> queries) {
+		StepCost stepCost;
+		CostStepCache cache = qp.getCostStepCache();
+		
+		if(Config.COST_STEP_CACHING && cache != null) {
+			stepCost = cache.get(candidate, secondaryIndexes.get(candidateIndex), queries, new Callable<StepCost>() {
+				
+				@Override
+				public StepCost call() {
+					return calculateStepCost(secondaryIndexes, candidate, candidateIndex, queries);
+				}
+			});
+		} else {
+			stepCost = calculateStepCost(secondaryIndexes, candidate, candidateIndex, queries);
+		}
+		
+		int frequency = qp.getSelectFrequencyBetweenCandidates(candidateIndex-1, candidateIndex);
+		
+		return new CostValueSingleJoinQuery(frequency, stepCost.getRecordsSelected(), stepCost.getQueryCosts());
+	}
+	
+	/**
+	 * Calculates the costs of the queries executed at a single data structure, 
+	 * independent of how many times the step is executed.
+	 * 
+	 * @return
+	 */
+	private StepCost calculateStepCost(HashMap<Integer, EntityTree> secondaryIndexes, EntityTree candidate, int candidateIndex, LinkedList<Query> queries) {
 		
 		LinkedList<CostValueQuery> queryCosts = new LinkedList<CostValueQuery>();
 		
@@ -156,14 +202,13 @@ public class CostCalculatorPlan<T extends Candidate<T>> implements Cost {
 			
 		}
 		
-		int frequency = qp.getSelectFrequencyBetweenCandidates(candidateIndex-1, candidateIndex);
 		int recordsSelected = 1;
 		
 		// if index present, then the record selected is also multiplied by the general times it appear.
 		if(secondaryIndexes.containsKey(candidateIndex))
 			recordsSelected = secondaryIndexes.get(candidateIndex).getNodeFrequencyReverse();
 		
-		return new CostValueSingleJoinQuery(frequency, recordsSelected, queryCosts);
+		return new StepCost(queryCosts, recordsSelected);
 	}
 
 	/**
@@ -0,0 +1,182 @@
+package dbsr.cost;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import dbsr.config.Config;
+import dbsr.cost.values.CostValueQuery;
+import dbsr.metrics.LatencyHistogram;
+import dbsr.model.tree.EntityTree;
+import dbsr.workload.query.Query;
+
+/**
+ * Cache of the cost of a single step in the query plans of a generator.
+ *
+ * The cost of executing a list of queries on a data structure only depends on:
+ * - The candidate tree.
+ * - The queries mapped to it.
+ * - The secondary index node, if any.
+ *
+ * Query plans created by cloning or replacing a candidate share most of their steps,
+ * so only the steps which changed are calculated again.
+ *
+ * Trees and index nodes are compared by identity, so only steps on frozen trees are cached,
+ * the steps of other trees are calculated on every request.
+ * The frequency a step is executed depends on the previous step, and is not cached.
+ *
+ * Each generator has its own cache, given to its query plans, see {@link dbsr.workload.QueryPlan#setCostStepCache(CostStepCache)}.
+ * The trees it holds are released with the generator.
+ * The cache also measures the cost calculations of these query plans, for the metrics of the generator.
+ *
+ * @author vincent
+ */
+public class CostStepCache {
+
+	private final Cache<StepKey, StepCost> cache;
+
+	/**
+	 * Duration of the cost calculations of the query plans using this cache.
+	 */
+	private final LatencyHistogram evaluations = new LatencyHistogram();
+
+	public CostStepCache() {
+		this(Config.COST_STEP_CACHE_SIZE);
+	}
+
+	/**
+	 * @param maximumSize Maximum number of cached steps.
+	 */
+	public CostStepCache(long maximumSize) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Returns the cached step cost, or calculates it with the given loader.
+	 *
+	 * @param candidate
+	 * @param secondaryIndex Null if no secondary index is used.
+	 * @param queries
+	 * @param loader
+	 * @return
+	 */
+	public StepCost get(EntityTree candidate, EntityTree secondaryIndex, List<Query> queries, Callable<StepCost> loader) {
+		if(!candidate.isFrozen() || (secondaryIndex != null && !secondaryIndex.isFrozen()))
+			return load(loader);
+
+		try {
+			return cache.get(new StepKey(candidate, secondaryIndex, queries), loader);
+		} catch (UncheckedExecutionException e) {
+			// Keep the original exception of the cost calculation.
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			
+			throw e;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to calculate step cost.", e.getCause());
+		}
+	}
+
+	private static StepCost load(Callable<StepCost> loader) {
+		try {
+			return loader.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to calculate step cost.", e);
+		}
+	}
+
+	/**
+	 * Records the duration of the cost calculation of a query plan using this cache.
+	 *
+	 * @param nanos
+	 */
+	public void recordEvaluation(long nanos) {
+		evaluations.record(nanos);
+	}
+
+	public LatencyHistogram getEvaluations() {
+		return evaluations;
+	}
+
+	public CacheStats getStatistics() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Costs of the queries executed at a step, and the number of records they select.
+	 */
+	public static class StepCost {
+
+		private final LinkedList<CostValueQuery> queryCosts;
+
+		private final int recordsSelected;
+
+		public StepCost(LinkedList<CostValueQuery> queryCosts, int recordsSelected) {
+			this.queryCosts = queryCosts;
+			this.recordsSelected = recordsSelected;
+		}
+
+		public LinkedList<CostValueQuery> getQueryCosts() {
+			return new LinkedList<CostValueQuery>(queryCosts);
+		}
+
+		public int getRecordsSelected() {
+			return recordsSelected;
+		}
+	}
+
+	private static class StepKey {
+
+		private final EntityTree candidate;
+
+		private final EntityTree secondaryIndex;
+
+		private final List<Query> queries;
+
+		private final int hash;
+
+		public StepKey(EntityTree candidate, EntityTree secondaryIndex, List<Query> queries) {
+			this.candidate = candidate;
+			this.secondaryIndex = secondaryIndex;
+			this.queries = new LinkedList<Query>(queries);
+
+			this.hash = 31 * (31 * System.identityHashCode(candidate) + System.identityHashCode(secondaryIndex)) + queries.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof StepKey))
+				return false;
+
+			StepKey other = (StepKey) obj;
+
+			return candidate == other.candidate && secondaryIndex == other.secondaryIndex && queries.equals(other.queries);
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package dbsr.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.CacheStats;
+
+import dbsr.candidate.generator.optimizations.NotifierPool;
+import dbsr.cost.CostStepCache;
+
+/**
+ * Counters of a generator, updated from the generation loop at the cost of an increment.
+ *
+ * Rates are measured from the first recorded iteration, or the last reset.
+ * Cost evaluations and the cost step cache hit rate are those of the query plans of the generator, measured by its {@link CostStepCache}.
+ *
+ * @author vincent
+ */
+public class GenerationMetrics implements GenerationMetricsMXBean {
+
+	private final LongAdder iterations = new LongAdder();
+
+	private volatile long frontierSize = 0;
+
+	private volatile long startNanos = 0;
+
+	private final LongAdder candidatesCreated = new LongAdder();
+
+	private final LongAdder candidatesDeduplicated = new LongAdder();
+
+	private final LongAdder candidatesPruned = new LongAdder();
+
+	private final LongAdder queryPlansGenerated = new LongAdder();
+
+	private final LongAdder queryPlansCompacted = new LongAdder();
+
+	private final LongAdder queryPlansPruned = new LongAdder();
+
+	private final LatencyHistogram notifications = new LatencyHistogram();
+
+	private volatile NotifierPool notifierPool;
+
+	private final CostStepCache costStepCache;
+
+	/**
+	 * Statistics of the cost step cache at the last reset.
+	 */
+	private volatile CacheStats costStepCacheReset;
+
+	public GenerationMetrics(NotifierPool notifierPool, CostStepCache costStepCache) {
+		this.notifierPool = notifierPool;
+		this.costStepCache = costStepCache;
+		this.costStepCacheReset = costStepCache.getStatistics();
+	}
+
+	/**
+	 * Records a completed iteration, and the size of the frontier afterwards.
+	 *
+	 * @param frontierSize
+	 */
+	public void iteration(long frontierSize) {
+		if(startNanos == 0)
+			startNanos = System.nanoTime();
+
+		iterations.increment();
+		this.frontierSize = frontierSize;
+	}
+
+	/**
+	 * Records candidates created by optimizing a query plan.
+	 *
+	 * @param created
+	 * @param deduplicated Candidates which already existed.
+	 */
+	public void candidatesCreated(int created, int deduplicated) {
+		candidatesCreated.add(created);
+		candidatesDeduplicated.add(deduplicated);
+	}
+
+	public void candidatesPruned(int pruned) {
+		candidatesPruned.add(pruned);
+	}
+
+	/**
+	 * Records the notification of the subscribed query plans of a new candidate.
+	 *
+	 * @param nanos
+	 * @param generated New query plans.
+	 */
+	public void notification(long nanos, int generated) {
+		notifications.record(nanos);
+		queryPlansGenerated.add(generated);
+	}
+
+	public void queryPlansCompacted(int compacted) {
+		queryPlansCompacted.add(compacted);
+	}
+
+	public void queryPlansPruned(int pruned) {
+		queryPlansPruned.add(pruned);
+	}
+
+	public void setNotifierPool(NotifierPool notifierPool) {
+		this.notifierPool = notifierPool;
+	}
+
+	@Override
+	public long getIterations() {
+		return iterations.sum();
+	}
+
+	@Override
+	public double getIterationsPerSecond() {
+		return perSecond(getIterations());
+	}
+
+	@Override
+	public long getFrontierSize() {
+		return frontierSize;
+	}
+
+	@Override
+	public long getCandidatesCreated() {
+		return candidatesCreated.sum();
+	}
+
+	@Override
+	public long getCandidatesDeduplicated() {
+		return candidatesDeduplicated.sum();
+	}
+
+	@Override
+	public long getCandidatesPruned() {
+		return candidatesPruned.sum();
+	}
+
+	@Override
+	public long getQueryPlansGenerated() {
+		return queryPlansGenerated.sum();
+	}
+
+	@Override
+	public long getQueryPlansCompacted() {
+		return queryPlansCompacted.sum();
+	}
+
+	@Override
+	public long getQueryPlansPruned() {
+		return queryPlansPruned.sum();
+	}
+
+	@Override
+	public long getCostEvaluations() {
+		return costStepCache.getEvaluations().getCount();
+	}
+
+	@Override
+	public double getCostEvaluationMeanMicros() {
+		return costStepCache.getEvaluations().getMeanNanos() / 1000;
+	}
+
+	@Override
+	public long getCostEvaluationP99Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(costStepCache.getEvaluations().getPercentileNanos(0.99));
+	}
+
+	@Override
+	public double getCostStepCacheHitRate() {
+		CacheStats statistics = costStepCache.getStatistics().minus(costStepCacheReset);
+
+		return statistics.requestCount() == 0 ? 0 : statistics.hitRate();
+	}
+
+	@Override
+	public long getNotifications() {
+		return notifications.getCount();
+	}
+
+	@Override
+	public double getNotificationsPerSecond() {
+		return perSecond(getNotifications());
+	}
+
+	@Override
+	public double getNotificationMeanMicros() {
+		return notifications.getMeanNanos() / 1000;
+	}
+
+	@Override
+	public long getNotifierTasks() {
+		return notifierPool.getTasksExecuted();
+	}
+
+	@Override
+	public double getNotifierUtilization() {
+		return notifierPool.getUtilization();
+	}
+
+	/**
+	 * All metrics by name, in a fixed order.
+	 *
+	 * @return
+	 */
+	public Map<String, Number> getValues() {
+		Map<String, Number> values = new LinkedHashMap<String, Number>();
+		values.put("iterations", getIterations());
+		values.put("iterationsPerSecond", getIterationsPerSecond());
+		values.put("frontierSize", getFrontierSize());
+		values.put("candidatesCreated", getCandidatesCreated());
+		values.put("candidatesDeduplicated", getCandidatesDeduplicated());
+		values.put("candidatesPruned", getCandidatesPruned());
+		values.put("queryPlansGenerated", getQueryPlansGenerated());
+		values.put("queryPlansCompacted", getQueryPlansCompacted());
+		values.put("queryPlansPruned", getQueryPlansPruned());
+		values.put("costEvaluations", getCostEvaluations());
+		values.put("costEvaluationMeanMicros", getCostEvaluationMeanMicros());
+		values.put("costEvaluationP99Micros", getCostEvaluationP99Micros());
+		values.put("costStepCacheHitRate", getCostStepCacheHitRate());
+		values.put("notifications", getNotifications());
+		values.put("notificationsPerSecond", getNotificationsPerSecond());
+		values.put("notificationMeanMicros", getNotificationMeanMicros());
+		values.put("notifierTasks", getNotifierTasks());
+		values.put("notifierUtilization", getNotifierUtilization());
+
+		return values;
+	}
+
+	@Override
+	public String getSnapshot() {
+		StringBuilder sb = new StringBuilder("{");
+
+		for(Map.Entry<String, Number> entry: getValues().entrySet()) {
+			if(sb.length() > 1)
+				sb.append(", ");
+
+			sb.append('"').append(entry.getKey()).append("\": ");
+
+			if(entry.getValue() instanceof Double && (((Double) entry.getValue()).isNaN() || ((Double) entry.getValue()).isInfinite()))
+				sb.append("null");
+			else if(entry.getValue() instanceof Double)
+				sb.append(String.format(Locale.ROOT, "%.3f", entry.getValue()));
+			else
+				sb.append(entry.getValue());
+		}
+
+		return sb.append("}").toString();
+	}
+
+	/**
+	 * Resets the counters of this generator, the statistics of the shared notifier pool are kept.
+	 */
+	@Override
+	public void reset() {
+		iterations.reset();
+		candidatesCreated.reset();
+		candidatesDeduplicated.reset();
+		candidatesPruned.reset();
+		queryPlansGenerated.reset();
+		queryPlansCompacted.reset();
+		queryPlansPruned.reset();
+		notifications.reset();
+		costStepCache.getEvaluations().reset();
+		costStepCacheReset = costStepCache.getStatistics();
+		startNanos = 0;
+	}
+
+	private double perSecond(long count) {
+		long start = startNanos;
+
+		if(start == 0 || count == 0)
+			return 0;
+
+		long elapsed = System.nanoTime() - start;
+
+		return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "GenerationMetrics " + getSnapshot();
+	}
+}
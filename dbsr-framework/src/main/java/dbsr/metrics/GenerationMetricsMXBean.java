@@ -0,0 +1,56 @@
+package dbsr.metrics;
+
+/**
+ * Generation metrics exposed through JMX.
+ *
+ * Durations are in microseconds.
+ *
+ * @author vincent
+ */
+public interface GenerationMetricsMXBean {
+
+	public long getIterations();
+
+	public double getIterationsPerSecond();
+
+	public long getFrontierSize();
+
+	public long getCandidatesCreated();
+
+	public long getCandidatesDeduplicated();
+
+	public long getCandidatesPruned();
+
+	public long getQueryPlansGenerated();
+
+	public long getQueryPlansCompacted();
+
+	public long getQueryPlansPruned();
+
+	public long getCostEvaluations();
+
+	public double getCostEvaluationMeanMicros();
+
+	public long getCostEvaluationP99Micros();
+
+	public double getCostStepCacheHitRate();
+
+	public long getNotifications();
+
+	public double getNotificationsPerSecond();
+
+	public double getNotificationMeanMicros();
+
+	public long getNotifierTasks();
+
+	public double getNotifierUtilization();
+
+	/**
+	 * All metrics as a JSON object.
+	 *
+	 * @return
+	 */
+	public String getSnapshot();
+
+	public void reset();
+}
@@ -0,0 +1,118 @@
+package dbsr.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Histogram of durations, in buckets of powers of two nanoseconds.
+ *
+ * Recording is lock-free and can be done from multiple threads.
+ * Percentiles are estimated by the upper bound of their bucket, so they are at most twice the actual duration.
+ *
+ * @author vincent
+ */
+public class LatencyHistogram {
+
+	private final LongAdder[] buckets = new LongAdder[64];
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator() {
+
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	}, 0);
+
+	public LatencyHistogram() {
+		for(int i=0; i < buckets.length; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+
+		buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotal(TimeUnit unit) {
+		return unit.convert(totalNanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	public double getMeanNanos() {
+		long count = getCount();
+
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * Estimated duration below which the given fraction of the durations fall.
+	 *
+	 * @param quantile Between 0 and 1.
+	 * @return Upper bound of the bucket, in nanoseconds.
+	 */
+	public long getPercentileNanos(double quantile) {
+		if(quantile < 0 || quantile > 1)
+			throw new IllegalArgumentException("Quantile should be between 0 and 1.");
+
+		long[] counts = new long[buckets.length];
+		long total = 0;
+
+		for(int i=0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+
+		if(total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+
+		for(int i=0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if(seen >= rank && counts[i] > 0)
+				return Math.min(i == 62 ? Long.MAX_VALUE : (2L << i) - 1, getMaxNanos());
+		}
+
+		return getMaxNanos();
+	}
+
+	public void reset() {
+		for(LongAdder bucket: buckets)
+			bucket.reset();
+
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram [count=" + getCount() + ", mean=" + String.format("%.1f", getMeanNanos() / 1000) + "us, p99="
+				+ getPercentileNanos(0.99) / 1000 + "us, max=" + getMaxNanos() / 1000 + "us]";
+	}
+}
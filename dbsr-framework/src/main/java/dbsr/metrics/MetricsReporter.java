@@ -0,0 +1,162 @@
+package dbsr.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exports the metrics of a generator:
+ *
+ * - As an MXBean on the platform MBean server, named dbsr:type=GenerationMetrics,name=...
+ * - As a JSON snapshot file, rewritten periodically in the background.
+ *
+ * @author vincent
+ */
+public class MetricsReporter {
+
+	private static final Logger LOGGER = Logger.getLogger(MetricsReporter.class.getName());
+
+	private final GenerationMetrics metrics;
+
+	private ObjectName objectName;
+
+	private ScheduledExecutorService writer;
+
+	private Path snapshotFile;
+
+	public MetricsReporter(GenerationMetrics metrics) {
+		if(metrics == null)
+			throw new IllegalArgumentException("Metrics should not be null.");
+
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Registers the metrics on the platform MBean server.
+	 *
+	 * @param name Distinguishes generators in the same JVM.
+	 * @return
+	 */
+	public synchronized ObjectName registerMBean(String name) {
+		if(objectName != null)
+			throw new IllegalStateException("Metrics are already registered as " + objectName + ".");
+
+		try {
+			ObjectName objectName = new ObjectName("dbsr:type=GenerationMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed to register metrics " + name + ".", e);
+		}
+
+		return objectName;
+	}
+
+	public synchronized void unregisterMBean() {
+		if(objectName == null)
+			return;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		try {
+			if(server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed to unregister metrics " + objectName + ".", e);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Writes a JSON snapshot of the metrics to the file at a fixed interval, on a daemon thread.
+	 *
+	 * @param file
+	 * @param interval
+	 * @param unit
+	 */
+	public synchronized void startSnapshots(Path file, long interval, TimeUnit unit) {
+		if(file == null)
+			throw new IllegalArgumentException("Snapshot file should not be null.");
+
+		if(interval <= 0)
+			throw new IllegalArgumentException("Snapshot interval should be positive.");
+
+		if(writer != null)
+			throw new IllegalStateException("Snapshots are already written to " + snapshotFile + ".");
+
+		this.snapshotFile = file;
+		this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "metrics-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		writer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeSnapshot();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to write metrics snapshot " + snapshotFile + ".", e);
+				}
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Writes the current metrics to the snapshot file, replacing the previous snapshot atomically.
+	 *
+	 * @throws IOException
+	 */
+	public void writeSnapshot() throws IOException {
+		Path file = snapshotFile;
+
+		if(file == null)
+			return;
+
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, (metrics.getSnapshot() + "\n").getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Stops the periodic snapshots after writing a last one, and unregisters the MXBean.
+	 */
+	public synchronized void close() {
+		try {
+			if(writer != null) {
+				writer.shutdown();
+				writer.awaitTermination(1, TimeUnit.MINUTES);
+				writeSnapshot();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to write metrics snapshot " + snapshotFile + ".", e);
+		} finally {
+			writer = null;
+			unregisterMBean();
+		}
+	}
+
+	public GenerationMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,302 @@
+package dbsr.metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import dbsr.metrics.TraceRecorder.EventType;
+
+/**
+ * Reads a trace written by the {@link TraceRecorder}, and converts it to convergence curves.
+ *
+ * A convergence curve has a point per iteration:
+ * the weighted cost of the best query plans and the frontier size after the iteration,
+ * and the events which happened during the iteration.
+ *
+ * Usage: TraceReader <trace file> [csv|json]
+ *
+ * @author vincent
+ */
+public class TraceReader {
+
+	/**
+	 * A recorded event.
+	 */
+	public static class Event {
+
+		private final EventType type;
+
+		private final int iteration;
+
+		private final long nanos;
+
+		private final long first;
+
+		private final long second;
+
+		public Event(EventType type, int iteration, long nanos, long first, long second) {
+			this.type = type;
+			this.iteration = iteration;
+			this.nanos = nanos;
+			this.first = first;
+			this.second = second;
+		}
+
+		public EventType getType() {
+			return type;
+		}
+
+		public int getIteration() {
+			return iteration;
+		}
+
+		/**
+		 * @return Nanoseconds since the recorder was created.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getFirst() {
+			return first;
+		}
+
+		public long getSecond() {
+			return second;
+		}
+
+		@Override
+		public String toString() {
+			return "Event [type=" + type + ", iteration=" + iteration + ", nanos=" + nanos + ", first=" + first + ", second=" + second + "]";
+		}
+	}
+
+	/**
+	 * A point of the convergence curve.
+	 */
+	public static class Point {
+
+		private int iteration;
+
+		private long millis;
+
+		private double weightedCost;
+
+		private long frontierSize;
+
+		private long poppedCost = -1;
+
+		private int candidates = 0;
+
+		private long queryPlansProduced = 0;
+
+		private long queryPlansCompacted = 0;
+
+		private long queryPlansPruned = 0;
+
+		private int candidatesPruned = 0;
+
+		public int getIteration() {
+			return iteration;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public double getWeightedCost() {
+			return weightedCost;
+		}
+
+		public long getFrontierSize() {
+			return frontierSize;
+		}
+
+		/**
+		 * @return Cost of the query plan optimized, or -1 if none was recorded.
+		 */
+		public long getPoppedCost() {
+			return poppedCost;
+		}
+
+		public int getCandidates() {
+			return candidates;
+		}
+
+		public long getQueryPlansProduced() {
+			return queryPlansProduced;
+		}
+
+		public long getQueryPlansCompacted() {
+			return queryPlansCompacted;
+		}
+
+		public long getQueryPlansPruned() {
+			return queryPlansPruned;
+		}
+
+		public int getCandidatesPruned() {
+			return candidatesPruned;
+		}
+	}
+
+	private static final String[] COLUMNS = { "iteration", "millis", "weightedCost", "frontierSize", "poppedCost", "candidates",
+			"queryPlansProduced", "queryPlansCompacted", "queryPlansPruned", "candidatesPruned" };
+
+	private final List<Event> events;
+
+	private final long count;
+
+	private final int capacity;
+
+	public TraceReader(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+		if(buffer.remaining() < TraceRecorder.HEADER_SIZE || buffer.getInt(0) != TraceRecorder.MAGIC)
+			throw new IllegalArgumentException(file + " is not a trace file.");
+
+		if(buffer.getInt(4) != TraceRecorder.VERSION)
+			throw new IllegalArgumentException("Unsupported trace version " + buffer.getInt(4) + ".");
+
+		this.capacity = buffer.getInt(8);
+		this.count = buffer.getLong(TraceRecorder.COUNT_POSITION);
+
+		EventType[] types = EventType.values();
+		long first = Math.max(0, count - capacity);
+		List<Event> events = new ArrayList<Event>((int) (count - first));
+
+		// Oldest event first.
+		for(long i=first; i < count; i++) {
+			int position = TraceRecorder.HEADER_SIZE + (int) (i % capacity) * TraceRecorder.RECORD_SIZE;
+
+			events.add(new Event(types[buffer.get(position)], buffer.getInt(position + 4), buffer.getLong(position + 8),
+					buffer.getLong(position + 16), buffer.getLong(position + 24)));
+		}
+
+		this.events = Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * Events in the order they were recorded, the overwritten events are missing.
+	 *
+	 * @return
+	 */
+	public List<Event> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Events overwritten because the ring was full.
+	 *
+	 * @return
+	 */
+	public long getEventsLost() {
+		return count - events.size();
+	}
+
+	public List<Point> getConvergence() {
+		List<Point> points = new ArrayList<Point>();
+		Point point = new Point();
+
+		for(Event event: events) {
+			switch(event.getType()) {
+				case POPPED:
+					point.poppedCost = event.getFirst();
+					break;
+				case MERGED:
+					point.candidates++;
+					break;
+				case NOTIFIED:
+					point.queryPlansProduced += event.getSecond();
+					break;
+				case COMPACTED:
+					point.queryPlansCompacted += event.getSecond();
+					break;
+				case PRUNED_PLANS:
+					point.queryPlansPruned += event.getSecond();
+					break;
+				case PRUNED_CANDIDATE:
+					point.candidatesPruned++;
+					point.queryPlansPruned += event.getSecond();
+					break;
+				case ITERATION:
+					point.iteration = event.getIteration();
+					point.millis = event.getNanos() / 1000000;
+					point.weightedCost = Double.longBitsToDouble(event.getFirst());
+					point.frontierSize = event.getSecond();
+					points.add(point);
+					point = new Point();
+					break;
+			}
+		}
+
+		return points;
+	}
+
+	public void writeCsv(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		out.println(String.join(",", COLUMNS));
+
+		for(Point point: getConvergence())
+			out.println(String.join(",", getValues(point)));
+
+		out.flush();
+	}
+
+	public void writeJson(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		out.println("[");
+
+		List<Point> points = getConvergence();
+
+		for(int i=0; i < points.size(); i++) {
+			String[] values = getValues(points.get(i));
+			StringBuilder sb = new StringBuilder("  {");
+
+			for(int j=0; j < COLUMNS.length; j++) {
+				if(j > 0)
+					sb.append(", ");
+
+				sb.append('"').append(COLUMNS[j]).append("\": ").append(values[j]);
+			}
+
+			out.println(sb.append(i < points.size() - 1 ? "}," : "}"));
+		}
+
+		out.println("]");
+		out.flush();
+	}
+
+	private String[] getValues(Point point) {
+		String weightedCost = Double.isNaN(point.weightedCost) || Double.isInfinite(point.weightedCost) ? "null" : String.format(Locale.ROOT, "%.1f", point.weightedCost);
+
+		return new String[] { String.valueOf(point.iteration), String.valueOf(point.millis), weightedCost, String.valueOf(point.frontierSize),
+				String.valueOf(point.poppedCost), String.valueOf(point.candidates), String.valueOf(point.queryPlansProduced),
+				String.valueOf(point.queryPlansCompacted), String.valueOf(point.queryPlansPruned), String.valueOf(point.candidatesPruned) };
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: TraceReader <trace file> [csv|json]");
+			System.exit(1);
+		}
+
+		TraceReader reader = new TraceReader(Paths.get(args[0]));
+		Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+
+		if(args.length > 1 && args[1].equalsIgnoreCase("json"))
+			reader.writeJson(out);
+		else
+			reader.writeCsv(out);
+	}
+}
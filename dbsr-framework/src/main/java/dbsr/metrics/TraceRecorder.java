@@ -0,0 +1,176 @@
+package dbsr.metrics;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records generation events in a memory-mapped ring file, for offline analysis with the {@link TraceReader}.
+ *
+ * Each event is a fixed-size binary record, written in place without allocating.
+ * When the ring is full, the oldest events are overwritten.
+ *
+ * Layout:
+ * - Header: magic, version, capacity (int), number of events written (long).
+ * - Records of {@link #RECORD_SIZE} bytes: type (byte), padding, iteration (int), nanoseconds since start (long), two values (long).
+ *
+ * Events are recorded from a single thread, the generation loop.
+ *
+ * @author vincent
+ */
+public class TraceRecorder implements AutoCloseable {
+
+	static final int MAGIC = 0x44425354;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 24;
+
+	static final int RECORD_SIZE = 32;
+
+	/**
+	 * Position of the number of events written in the header.
+	 */
+	static final int COUNT_POSITION = 12;
+
+	/**
+	 * Types of events, and the meaning of their two values.
+	 */
+	public enum EventType {
+		/** Query plan optimized: cost, sequence id. */
+		POPPED,
+		/** New candidate registered: candidate id, left and right merge ids (high and low int, -1 if none). */
+		MERGED,
+		/** Subscribed query plans notified of a new candidate: candidate id, query plans produced. */
+		NOTIFIED,
+		/** Superseded query plans removed: sequence id, query plans removed. */
+		COMPACTED,
+		/** Query plans pruned: sequence id, query plans removed. */
+		PRUNED_PLANS,
+		/** Data structure pruned: candidate id, query plans removed. */
+		PRUNED_CANDIDATE,
+		/** Iteration completed: weighted cost of the best query plans (double bits), frontier size. */
+		ITERATION
+	}
+
+	private final Path file;
+
+	private final int capacity;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final long startNanos = System.nanoTime();
+
+	private long count = 0;
+
+	private int iteration = 0;
+
+	/**
+	 * Creates or truncates the trace file.
+	 *
+	 * @param file
+	 * @param capacity Number of events kept.
+	 * @throws IOException
+	 */
+	public TraceRecorder(Path file, int capacity) throws IOException {
+		if(file == null)
+			throw new IllegalArgumentException("Trace file should not be null.");
+
+		if(capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+			throw new IllegalArgumentException("Trace capacity should be between 1 and " + (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE + ".");
+
+		this.file = file;
+		this.capacity = capacity;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, capacity);
+		buffer.putLong(COUNT_POSITION, 0);
+	}
+
+	/**
+	 * Sets the iteration of the events recorded next.
+	 *
+	 * @param iteration
+	 */
+	public void setIteration(int iteration) {
+		this.iteration = iteration;
+	}
+
+	public void popped(int cost, int sequenceId) {
+		record(EventType.POPPED, cost, sequenceId);
+	}
+
+	public void merged(int candidateId, int leftId, int rightId) {
+		record(EventType.MERGED, candidateId, ((long) leftId << 32) | (rightId & 0xFFFFFFFFL));
+	}
+
+	public void notified(int candidateId, int queryPlans) {
+		record(EventType.NOTIFIED, candidateId, queryPlans);
+	}
+
+	public void compacted(int sequenceId, int queryPlans) {
+		record(EventType.COMPACTED, sequenceId, queryPlans);
+	}
+
+	public void prunedPlans(int sequenceId, int queryPlans) {
+		record(EventType.PRUNED_PLANS, sequenceId, queryPlans);
+	}
+
+	public void prunedCandidate(int candidateId, int queryPlans) {
+		record(EventType.PRUNED_CANDIDATE, candidateId, queryPlans);
+	}
+
+	public void iteration(double weightedCost, int frontierSize) {
+		record(EventType.ITERATION, Double.doubleToRawLongBits(weightedCost), frontierSize);
+	}
+
+	private void record(EventType type, long first, long second) {
+		int position = HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE;
+
+		buffer.put(position, (byte) type.ordinal());
+		buffer.putInt(position + 4, iteration);
+		buffer.putLong(position + 8, System.nanoTime() - startNanos);
+		buffer.putLong(position + 16, first);
+		buffer.putLong(position + 24, second);
+
+		count++;
+		buffer.putLong(COUNT_POSITION, count);
+	}
+
+	/**
+	 * Number of events recorded, including those overwritten.
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes the recorded events to the file.
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
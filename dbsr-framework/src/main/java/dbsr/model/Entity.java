@@ -16,6 +16,16 @@ public class Entity {
 	
 	private final List<Relationship> relationships;
 	
+	/**
+	 * Dense id assigned by the workload compiler, only valid within the compilation it was assigned in.
+	 * Compilation 0 means this entity is not compiled.
+	 */
+	private int compilation = 0;
+	
+	private int id = -1;
+	
+	private int compiledHash;
+	
 	public Entity(String name, Field pk, Set<Field> fields) {
 		this(name,pk,fields, new ArrayList<Relationship>());
 	}
@@ -68,16 +78,49 @@ public class Entity {
 	}
 	
 	public void addRelationship(Relationship relation) {
-		if(!this.relationships.contains(relation))
+		if(!this.relationships.contains(relation)) {
 			this.relationships.add(relation);
+			this.compilation = 0;
+		}
 	}
 	
 	public List<Relationship> getRelationships() {
 		return this.relationships;
 	}
 	
+	/**
+	 * Assigns a dense id, equal entities within a compilation have the same id.
+	 * 
+	 * @param compilation
+	 * @param id
+	 */
+	public void compile(int compilation, int id) {
+		this.compilation = 0;
+		this.compiledHash = hashCode();
+		this.id = id;
+		this.compilation = compilation;
+	}
+	
+	public boolean isCompiled() {
+		return this.compilation != 0;
+	}
+	
+	public int getCompilation() {
+		return this.compilation;
+	}
+	
+	/**
+	 * @return Dense id of the entity, or -1 if not compiled.
+	 */
+	public int getId() {
+		return isCompiled() ? this.id : -1;
+	}
+	
 	@Override
 	public int hashCode() {
+		if(compilation != 0)
+			return compiledHash;
+		
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((fields == null) ? 0 : fields.hashCode());
@@ -96,6 +139,8 @@ public class Entity {
 		if (getClass() != obj.getClass())
 			return false;
 		Entity other = (Entity) obj;
+		if (compilation != 0 && compilation == other.compilation)
+			return id == other.id;
 		if (fields == null) {
 			if (other.fields != null)
 				return false;
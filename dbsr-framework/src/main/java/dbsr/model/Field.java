@@ -23,6 +23,13 @@ public class Field implements Cost {
 	 */
 	private final int size;
 	
+	/**
+	 * Dense id assigned by the workload compiler, only valid within the compilation it was assigned in.
+	 */
+	private int compilation = 0;
+	
+	private int id = -1;
+	
 	public Field(String fieldName) {
 		this.fieldName = fieldName;
 		this.value = "";
@@ -72,6 +79,28 @@ public class Field implements Cost {
 		return sum;
 	}
 
+	/**
+	 * Assigns a dense id, equal fields within a compilation have the same id.
+	 * 
+	 * @param compilation
+	 * @param id
+	 */
+	public void compile(int compilation, int id) {
+		this.id = id;
+		this.compilation = compilation;
+	}
+	
+	public int getCompilation() {
+		return this.compilation;
+	}
+	
+	/**
+	 * @return Dense id of the field, or -1 if not compiled.
+	 */
+	public int getId() {
+		return compilation != 0 ? this.id : -1;
+	}
+	
 	public String getFieldName() {
 		return fieldName;
 	}
@@ -97,6 +126,8 @@ public class Field implements Cost {
 		if (getClass() != obj.getClass())
 			return false;
 		Field other = (Field) obj;
+		if (compilation != 0 && compilation == other.compilation)
+			return id == other.id;
 		if (fieldName == null) {
 			if (other.fieldName != null)
 				return false;
@@ -0,0 +1,394 @@
+package dbsr.model.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dbsr.config.Config;
+import dbsr.workload.query.Query;
+
+/**
+ * Metrics and query lookups of a frozen entity tree, computed once for all its nodes.
+ *
+ * The nodes are numbered breadth-first from the top.
+ * Depth, width and frequencies are computed when the tree is frozen.
+ * The nodes able to answer a query, and the end nodes of a query path, are computed the first time they are asked.
+ *
+ * Lookups are memoized by the ids of compiled queries, so the memos do not keep queries reachable:
+ * the nodes answering a query per query id, and at most {@link Config#COMPILED_TREE_PATHS_SIZE} query paths.
+ * Lookups of queries which are not compiled are not memoized.
+ *
+ * @author vincent
+ */
+class CompiledEntityTree {
+
+	private final EntityTree[] nodes;
+
+	private final int[] maxDepths;
+
+	private final int[] maxWidths;
+
+	/**
+	 * Frequencies per node, null if the relationships of the tree are not valid.
+	 */
+	private final int[] frequencies;
+
+	private final int[] totalFrequencies;
+
+	/**
+	 * Nodes answering a query, by query id, of the compilation of the first query asked.
+	 * Replaced as a whole when a query is added, so readers see complete bitsets.
+	 */
+	private volatile AnsweringNodes answeringNodes = new AnsweringNodes(0, new BitSet[0]);
+
+	/**
+	 * End nodes of the query paths asked per start node, or the absence of a result.
+	 */
+	private final ConcurrentHashMap<Path, List<EntityTree>> endNodes = new ConcurrentHashMap<Path, List<EntityTree>>();
+
+	private final ConcurrentHashMap<Path, List<EntityTree>> queryPaths = new ConcurrentHashMap<Path, List<EntityTree>>();
+
+	/**
+	 * Structural keys per node, computed on the first request as the queries might not be compiled when frozen.
+	 */
+	private volatile long[] structuralKeys;
+
+	private static final List<EntityTree> NO_END_NODES = Collections.unmodifiableList(new ArrayList<EntityTree>());
+
+	CompiledEntityTree(EntityTree top) {
+		List<EntityTree> breadthFirst = new ArrayList<EntityTree>();
+		breadthFirst.add(top);
+
+		for(int i=0; i < breadthFirst.size(); i++)
+			breadthFirst.addAll(breadthFirst.get(i).getChildren());
+
+		this.nodes = breadthFirst.toArray(new EntityTree[breadthFirst.size()]);
+		this.maxDepths = new int[nodes.length];
+		this.maxWidths = new int[nodes.length];
+
+		for(int i=0; i < nodes.length; i++)
+			nodes[i].setCompiled(this, i);
+
+		// Children follow their parents, so bottom-up in reverse.
+		for(int i=nodes.length - 1; i >= 0; i--) {
+			int maxDepth = 0;
+			int maxWidth = nodes[i].getChildren().size();
+
+			for(EntityTree child: nodes[i].getChildren()) {
+				maxDepth = Math.max(maxDepths[child.getCompiledIndex()], maxDepth);
+				maxWidth = Math.max(maxWidths[child.getCompiledIndex()], maxWidth);
+			}
+
+			maxDepths[i] = maxDepth + 1;
+			maxWidths[i] = maxWidth;
+		}
+
+		this.frequencies = computeFrequencies();
+		this.totalFrequencies = frequencies == null ? null : computeTotalFrequencies();
+	}
+
+	private int[] computeFrequencies() {
+		int[] frequencies = new int[nodes.length];
+
+		try {
+			for(int i=0; i < nodes.length; i++) {
+				EntityTree node = nodes[i];
+
+				if(!node.hasParent())
+					frequencies[i] = 1;
+				else
+					frequencies[i] = frequencies[node.getParent().getCompiledIndex()]
+							* node.getRelationshipToParent().getCardinalityEntityTargeting(node.getParent().getNode());
+			}
+		} catch (IllegalStateException e) {
+			// Invalid relationship, computed on request to report it.
+			return null;
+		}
+
+		return frequencies;
+	}
+
+	private int[] computeTotalFrequencies() {
+		int[] totalFrequencies = new int[nodes.length];
+
+		for(int i=0; i < nodes.length; i++) {
+			for(EntityTree elem: nodes[i].getElements())
+				totalFrequencies[i] += frequencies[elem.getCompiledIndex()];
+		}
+
+		return totalFrequencies;
+	}
+
+	int getMaxDepth(int node) {
+		return maxDepths[node];
+	}
+
+	int getMaxWidth(int node) {
+		return maxWidths[node];
+	}
+
+	boolean hasFrequencies() {
+		return frequencies != null;
+	}
+
+	int getFrequency(int node) {
+		return frequencies[node];
+	}
+
+	int getTotalFrequency(int node) {
+		return totalFrequencies[node];
+	}
+
+	/**
+	 * Structural key of the subtree at a node, see {@link EntityTree#getStructuralKey()}.
+	 *
+	 * @param node
+	 * @return
+	 */
+	long getStructuralKey(int node) {
+		long[] keys = structuralKeys;
+
+		if(keys == null) {
+			keys = computeStructuralKeys();
+			structuralKeys = keys;
+		}
+
+		return keys[node];
+	}
+
+	private long[] computeStructuralKeys() {
+		long[] keys = new long[nodes.length];
+
+		// Children follow their parents, so bottom-up in reverse.
+		for(int i=nodes.length - 1; i >= 0; i--) {
+			long key = mix(0x9E3779B97F4A7C15L + nodes[i].getQueries().size());
+
+			for(Query query: nodes[i].getQueries()) {
+				if(query.getId() == -1)
+					throw new IllegalStateException("Entity tree contains a query which is not compiled.");
+
+				key = mix(key ^ query.getId());
+			}
+
+			// Children in order, as compared by equalsEntireTree.
+			for(EntityTree child: nodes[i].getChildren())
+				key = mix(key * 31 + keys[child.getCompiledIndex()]);
+
+			keys[i] = mix(key + nodes[i].getChildren().size());
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Finalizer of SplitMix64.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Checks if a node answers the query.
+	 *
+	 * @param node
+	 * @param query
+	 * @return
+	 */
+	boolean canQuery(int node, Query query) {
+		return getAnsweringNodes(query).get(node);
+	}
+
+	/**
+	 * First node answering the query breadth-first from a node, see {@link EntityTree#getFirstQueryOccurrence(Query)}.
+	 *
+	 * The breadth-first order of a subtree is the order of its nodes in the entire tree.
+	 *
+	 * @param node
+	 * @param query
+	 * @return
+	 */
+	EntityTree getFirstQueryOccurrence(int node, Query query) {
+		BitSet answering = getAnsweringNodes(query);
+
+		for(int i=answering.nextSetBit(node); i >= 0; i=answering.nextSetBit(i + 1)) {
+			if(i == node || nodes[node].isParentOf(nodes[i]))
+				return nodes[i];
+		}
+
+		return null;
+	}
+
+	private BitSet getAnsweringNodes(Query query) {
+		int id = query.getId();
+		AnsweringNodes memo = answeringNodes;
+
+		if(id >= 0 && id < memo.byId.length && memo.byId[id] != null && query.getCompilation() == memo.compilation)
+			return memo.byId[id];
+
+		BitSet answering = new BitSet(nodes.length);
+
+		for(int i=0; i < nodes.length; i++) {
+			if(query.isAnswerableBy(nodes[i].getQueries()))
+				answering.set(i);
+		}
+
+		if(id >= 0)
+			memoizeAnsweringNodes(query, answering);
+
+		return answering;
+	}
+
+	/**
+	 * Publishes a copy of the memo with the answering nodes of the query.
+	 */
+	private synchronized void memoizeAnsweringNodes(Query query, BitSet answering) {
+		AnsweringNodes memo = answeringNodes;
+
+		if(memo.compilation != 0 && memo.compilation != query.getCompilation())
+			return;
+
+		BitSet[] byId = Arrays.copyOf(memo.byId, Math.max(query.getId() + 1, memo.byId.length));
+		byId[query.getId()] = answering;
+
+		answeringNodes = new AnsweringNodes(query.getCompilation(), byId);
+	}
+
+	/**
+	 * End nodes of a query path from a node, see {@link EntityTree#getEndNodesOfQueryPath(LinkedList, int, boolean)}.
+	 *
+	 * @param node
+	 * @param path
+	 * @param index
+	 * @param directConnection
+	 * @return The end nodes, unmodifiable, or null if the path can not be answered.
+	 */
+	List<EntityTree> getEndNodesOfQueryPath(int node, LinkedList<Query> path, int index, boolean directConnection) {
+		Path key = Path.of(node, path, index, directConnection);
+		List<EntityTree> result = key == null ? null : endNodes.get(key);
+
+		if(result == null) {
+			List<EntityTree> computed = nodes[node].computeEndNodesOfQueryPath(path, index, directConnection);
+			result = computed == null ? NO_END_NODES : Collections.unmodifiableList(computed);
+			memoize(endNodes, key, result);
+		}
+
+		return result == NO_END_NODES ? null : result;
+	}
+
+	/**
+	 * Nodes answering a query path from a node, see {@link EntityTree#getQueryPaths(LinkedList, boolean)}.
+	 *
+	 * @param node
+	 * @param path
+	 * @param connectedPath
+	 * @return The nodes, unmodifiable.
+	 */
+	List<EntityTree> getQueryPaths(int node, LinkedList<Query> path, boolean connectedPath) {
+		Path key = Path.of(node, path, 0, connectedPath);
+		List<EntityTree> result = key == null ? null : queryPaths.get(key);
+
+		if(result == null) {
+			result = Collections.unmodifiableList(nodes[node].computeQueryPaths(path, connectedPath));
+			memoize(queryPaths, key, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Memoizes the result, unless the query path is not compiled or the memo is full.
+	 */
+	private static void memoize(ConcurrentHashMap<Path, List<EntityTree>> memo, Path key, List<EntityTree> result) {
+		if(key != null && memo.size() < Config.COMPILED_TREE_PATHS_SIZE)
+			memo.putIfAbsent(key, result);
+	}
+
+	/**
+	 * Nodes answering each query of a compilation, by query id, not modified once published.
+	 */
+	private static final class AnsweringNodes {
+
+		private final int compilation;
+
+		private final BitSet[] byId;
+
+		AnsweringNodes(int compilation, BitSet[] byId) {
+			this.compilation = compilation;
+			this.byId = byId;
+		}
+	}
+
+	/**
+	 * Query path from a node, by the ids of the compiled queries.
+	 */
+	private static final class Path {
+
+		private final int node;
+
+		private final int compilation;
+
+		private final int[] queries;
+
+		private final int index;
+
+		private final boolean connected;
+
+		private final int hash;
+
+		private Path(int node, int compilation, int[] queries, int index, boolean connected) {
+			this.node = node;
+			this.compilation = compilation;
+			this.queries = queries;
+			this.index = index;
+			this.connected = connected;
+
+			int hash = 31 * node + index;
+			hash = 31 * hash + (connected ? 1 : 0);
+			hash = 31 * hash + Arrays.hashCode(queries);
+
+			this.hash = hash;
+		}
+
+		/**
+		 * @return The key of the query path, or null if a query is not compiled with the others.
+		 */
+		static Path of(int node, LinkedList<Query> path, int index, boolean connected) {
+			int[] queries = new int[path.size()];
+			int compilation = path.isEmpty() ? 0 : path.getFirst().getCompilation();
+			int i = 0;
+
+			for(Query query: path) {
+				if(query.getId() == -1 || query.getCompilation() != compilation)
+					return null;
+
+				queries[i++] = query.getId();
+			}
+
+			return new Path(node, compilation, queries, index, connected);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Path))
+				return false;
+
+			Path other = (Path) obj;
+
+			return node == other.node && index == other.index && connected == other.connected && compilation == other.compilation
+					&& Arrays.equals(queries, other.queries);
+		}
+	}
+}
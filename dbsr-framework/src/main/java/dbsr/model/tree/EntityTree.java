@@ -1,12 +1,15 @@
 package dbsr.model.tree;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import dbsr.cost.Cost;
 import dbsr.cost.CostCalculatorEntityTree;
@@ -26,9 +29,28 @@ import dbsr.workload.query.Query;
  * @param <T>
  */
 public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverlap<EntityTree>, Cost{
+	
+	private static final Logger LOGGER = Logger.getLogger(EntityTree.class.getName());
 
 	private final List<Query> queries;
 	
+	/**
+	 * Frozen trees can no longer be modified, and cache their structural hash.
+	 */
+	private boolean frozen = false;
+	
+	private int frozenHash;
+	
+	/**
+	 * Metrics and query lookups of the frozen tree, shared by its nodes.
+	 */
+	private CompiledEntityTree compiled;
+	
+	/**
+	 * Breadth-first index of this node in the compiled tree.
+	 */
+	private int compiledIndex;
+	
 	public EntityTree(Entity data) {
 		this(data, new ArrayList<Query>());
 	}
@@ -117,6 +139,21 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 		return fields;
 	}
 	
+	/**
+	 * Returns the ids of the fields this node contains, the queries have to be compiled.
+	 * 
+	 * @return
+	 * @exception IllegalStateException If a query is not compiled.
+	 */
+	public BitSet getAffectedFieldIds() {
+		BitSet fields = new BitSet();
+		
+		for(Query qry: queries)
+			fields.or(qry.getAffectedFieldIds());
+		
+		return fields;
+	}
+	
 	/**
 	 * Returns whether or not this node has a query part of the given sequence.
 	 * 
@@ -171,6 +208,9 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 		if(query == null)
 			return false;
 		
+		if(compiled != null)
+			return compiled.canQuery(compiledIndex, query);
+		
 		return query.isAnswerableBy(getQueries());
 	}
 	
@@ -187,11 +227,18 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	/**
 	 * Checks if this EntityTree can answer a given query path.
 	 * 
-	 * Returns the relevant nodes.
+	 * Returns the relevant nodes, unmodifiable if the tree is frozen.
 	 * 
 	 * TODO: Check final end node; return that one too.
 	 */
-	public LinkedList<EntityTree> getQueryPaths(LinkedList<Query> path, boolean connectedPath) {
+	public List<EntityTree> getQueryPaths(LinkedList<Query> path, boolean connectedPath) {
+		if(compiled != null && path != null)
+			return compiled.getQueryPaths(compiledIndex, path, connectedPath);
+		
+		return computeQueryPaths(path, connectedPath);
+	}
+	
+	LinkedList<EntityTree> computeQueryPaths(LinkedList<Query> path, boolean connectedPath) {
 		LinkedList<EntityTree> nodes = new LinkedList<EntityTree>();
 		LinkedList<EntityTree> stack = new LinkedList<EntityTree>();
 		stack.push(this);
@@ -228,15 +275,51 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	/**
 	 * Checks if this node is an endNode in answering a query starting from the top parent.
 	 * 
-	 * We simply make a new EntityTree with a single path and apply topParent.hasQueryPathHere
+	 * The path is followed along the parents of this node, as in a tree with a single path down to this node,
+	 * see {@link #getTreePathToThisNode()}.
 	 * 
 	 * @param path
 	 * @return
 	 */
 	public boolean hasQueryPathToParent(LinkedList<Query> path) {
-		EntityTree pathTree = getTreePathToThisNode();
+		LinkedList<EntityTree> chain = new LinkedList<EntityTree>();
+		
+		for(EntityTree node = this; node != null; node = node.getParent()) {
+			// A node without relationship with its parent is not part of the path.
+			if(node.hasParent() && !node.getParent().isValidChild(node.getNode()))
+				chain.clear();
+			else
+				chain.addFirst(node);
+		}
 		
-		return pathTree.getTopParent().hasQueryPathHere(path, 0, false);
+		if(path == null || path.isEmpty())
+			return true;
+		
+		return hasQueryPathOnChain(new ArrayList<EntityTree>(chain), 0, path, 0, false);
+	}
+	
+	/**
+	 * Follows the path along a chain of nodes, each the only child of the previous one.
+	 * Same as {@link #getEndNodesOfQueryPath(LinkedList, int, boolean)} without direct connection.
+	 */
+	private static boolean hasQueryPathOnChain(List<EntityTree> chain, int position, LinkedList<Query> path, int index, boolean skippedNode) {
+		EntityTree node = chain.get(position);
+		boolean hasChild = position + 1 < chain.size();
+		boolean canQuery = node.canQuery(path.get(index));
+		
+		if(index == path.size() - 1 && canQuery)
+			return !skippedNode || node.isAlwaysContainedByParent();
+		
+		if(!hasChild)
+			return false;
+		
+		if(canQuery)
+			return hasQueryPathOnChain(chain, position + 1, path, index + 1, false);
+		
+		if(!node.isAlwaysContainedByParent())
+			return false;
+		
+		return hasQueryPathOnChain(chain, position + 1, path, index, true);
 	}
 	
 	/**
@@ -254,7 +337,22 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 			return false;
 	}
 	
+	/**
+	 * End nodes of the query path from this node, unmodifiable if the tree is frozen.
+	 * 
+	 * @param path
+	 * @param index
+	 * @param directConnection
+	 * @return Null if the path can not be answered.
+	 */
 	public List<EntityTree> getEndNodesOfQueryPath(LinkedList<Query> path, int index, boolean directConnection) { 
+		if(compiled != null && path != null)
+			return compiled.getEndNodesOfQueryPath(compiledIndex, path, index, directConnection);
+		
+		return computeEndNodesOfQueryPath(path, index, directConnection);
+	}
+	
+	List<EntityTree> computeEndNodesOfQueryPath(LinkedList<Query> path, int index, boolean directConnection) {
 		return getEndNodesOfQueryPath(path, index, directConnection, false);
 	}
 	
@@ -344,6 +442,8 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * @param query
 	 */
 	public void addQuery(Query query) {
+		checkNotFrozen();
+		
 		if(!isValidQuery(query))
 			throw new IllegalArgumentException("Invalid query which does not affect the entity at this node.");
 		
@@ -548,6 +648,9 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * @return
 	 */
 	public EntityTree getFirstQueryOccurrence(Query query) {
+		if(compiled != null && query != null)
+			return compiled.getFirstQueryOccurrence(compiledIndex, query);
+		
 		LinkedList<EntityTree> stack = new LinkedList<EntityTree>();
 		
 		stack.add(this);
@@ -683,6 +786,8 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * Throws an error, if the child has not valid relationship.
 	 */
 	public EntityTree addChild(Entity child) {
+		checkNotFrozen();
+		
 		if(!isValidChild(child))
 			return this;
 		
@@ -701,6 +806,8 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * -> This resonates to the top.
 	 */
 	public EntityTree addChild(EntityTree child) {
+		checkNotFrozen();
+		
 		if(!isValidChild(child))
 			return this;
 		
@@ -740,6 +847,9 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * @return
 	 */
 	public int getNodesTotalFrequency() {
+		if(compiled != null && compiled.hasFrequencies())
+			return compiled.getTotalFrequency(compiledIndex);
+		
 		int frequency = 0;
 		
 		for(EntityTree tree: getElements()) {
@@ -757,17 +867,18 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	 * @return
 	 */
 	public int getNodeFrequency() {
-		int frequency;;
+		int frequency;
 		
-		if(!hasParent())
+		if(compiled != null && compiled.hasFrequencies())
+			frequency = compiled.getFrequency(compiledIndex);
+		else if(!hasParent())
 			frequency = 1;
 		else
 			frequency = getParent().getNodeFrequency() * getRelationshipToParent().getCardinalityEntityTargeting(getParent().getNode());
 		
-		if(frequency==0) {
-			System.out.println(getRelationshipToParent().getCardinality().getSourceFreq());
-			System.out.println(getRelationshipToParent().getCardinality().getTargetFreq());
-			System.out.println("Here");
+		if(frequency==0 && LOGGER.isLoggable(Level.WARNING)) {
+			LOGGER.warning("Node frequency of 0, cardinality source: " + getRelationshipToParent().getCardinality().getSourceFreq()
+					+ ", target: " + getRelationshipToParent().getCardinality().getTargetFreq());
 		}
 		
 		return frequency;
@@ -1457,8 +1568,102 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 			return -1;
 	}
 	
+	@Override
+	public void setParent(EntityTree parent) {
+		checkNotFrozen();
+		
+		super.setParent(parent);
+	}
+	
+	/**
+	 * Freezes the entire tree this node is part of.
+	 * 
+	 * A frozen tree can no longer be modified, which allows its structural hash to be cached.
+	 * Clones of a frozen tree are not frozen.
+	 * 
+	 * Note: clones share the query list of the original tree, 
+	 * so queries should not be added to clones of a frozen tree.
+	 * 
+	 * @return This node.
+	 */
+	public EntityTree freeze() {
+		EntityTree top = getTopParent();
+		
+		if(!top.frozen) {
+			top.freezeRecursively();
+			new CompiledEntityTree(top);
+		}
+		
+		return this;
+	}
+	
+	void setCompiled(CompiledEntityTree compiled, int index) {
+		this.compiled = compiled;
+		this.compiledIndex = index;
+	}
+	
+	int getCompiledIndex() {
+		return compiledIndex;
+	}
+	
+	@Override
+	public int getMaxDepth() {
+		if(compiled != null)
+			return compiled.getMaxDepth(compiledIndex);
+		
+		return super.getMaxDepth();
+	}
+	
+	@Override
+	public int getMaxWidth() {
+		if(compiled != null)
+			return compiled.getMaxWidth(compiledIndex);
+		
+		return super.getMaxWidth();
+	}
+	
+	private int freezeRecursively() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((queries == null) ? 0 : queries.hashCode());
+		
+		for(EntityTree child: getChildren())
+			result = prime * result + child.freezeRecursively();
+		
+		this.frozenHash = result;
+		this.frozen = true;
+		
+		return result;
+	}
+	
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+	
+	private void checkNotFrozen() {
+		if(frozen)
+			throw new IllegalStateException("Frozen entity tree can not be modified.");
+	}
+	
+	/**
+	 * 64-bit structural key of the tree below this node, from the ids of the queries at its nodes.
+	 * Trees equal by {@link #equalsEntireTree(EntityTree)} have equal keys, whichever candidate they belong to.
+	 * 
+	 * @return
+	 * @exception IllegalStateException If the tree is not frozen, or a query is not compiled.
+	 */
+	public long getStructuralKey() {
+		if(compiled == null)
+			throw new IllegalStateException("Structural key of an entity tree which is not frozen.");
+		
+		return compiled.getStructuralKey(compiledIndex);
+	}
+	
 	@Override
 	public int hashCode() {
+		if(frozen)
+			return frozenHash;
+		
 		final int prime = 31;
 		int result = 1;
 //		result = prime * result + getNode().hashCode();
@@ -1491,6 +1696,13 @@ public class EntityTree extends TreeNode<Entity,EntityTree> implements TreeOverl
 	}
 	
 	public boolean equalsEntireTree(EntityTree tree) {
+		if(this == tree)
+			return true;
+		
+		// Frozen trees with different structural hashes can not be equal.
+		if(tree != null && frozen && tree.frozen && frozenHash != tree.frozenHash)
+			return false;
+		
 		if(!this.equals(tree))
 			return false;
 		
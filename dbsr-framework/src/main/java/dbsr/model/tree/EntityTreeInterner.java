@@ -0,0 +1,110 @@
+package dbsr.model.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps a single canonical instance of structurally equal entity trees.
+ *
+ * Interned trees are frozen, equal trees are then the same instance,
+ * and compare and hash in constant time.
+ *
+ * Only complete trees (without parent) are shared.
+ * A node within a larger tree depends on its parents for its frequencies,
+ * so it can not be replaced by an equal node of another tree, it is only frozen.
+ *
+ * Trees of pruned candidates are removed, an equal tree interned afterwards becomes the new canonical instance.
+ *
+ * @author vincent
+ */
+public class EntityTreeInterner {
+
+	private final ConcurrentHashMap<Key, EntityTree> trees = new ConcurrentHashMap<Key, EntityTree>();
+
+	/**
+	 * Returns the canonical instance of the given tree,
+	 * the given tree becomes the canonical instance if no equal tree was interned before.
+	 *
+	 * @param tree
+	 * @return
+	 */
+	public EntityTree intern(EntityTree tree) {
+		if(tree == null)
+			return null;
+
+		tree.freeze();
+
+		if(tree.hasParent())
+			return tree;
+
+		EntityTree canonical = trees.putIfAbsent(new Key(tree), tree);
+
+		return canonical == null ? tree : canonical;
+	}
+
+	/**
+	 * Removes the tree, if it is the canonical instance.
+	 *
+	 * @param tree
+	 * @return True if the tree was removed.
+	 */
+	public boolean remove(final EntityTree tree) {
+		if(tree == null || tree.hasParent())
+			return false;
+
+		final boolean[] removed = new boolean[1];
+
+		trees.computeIfPresent(new Key(tree), new BiFunction<Key, EntityTree, EntityTree>() {
+			@Override
+			public EntityTree apply(Key key, EntityTree canonical) {
+				if(canonical != tree)
+					return canonical;
+
+				removed[0] = true;
+				return null;
+			}
+		});
+
+		return removed[0];
+	}
+
+	/**
+	 * Number of distinct trees interned.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return trees.size();
+	}
+
+	public void clear() {
+		trees.clear();
+	}
+
+	/**
+	 * Compares trees over their entire structure.
+	 */
+	private static class Key {
+
+		private final EntityTree tree;
+
+		public Key(EntityTree tree) {
+			this.tree = tree;
+		}
+
+		@Override
+		public int hashCode() {
+			return tree.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Key))
+				return false;
+
+			return tree.equalsEntireTree(((Key) obj).tree);
+		}
+	}
+}
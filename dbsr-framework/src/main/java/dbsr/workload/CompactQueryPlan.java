@@ -0,0 +1,332 @@
+package dbsr.workload;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import dbsr.candidate.Candidate;
+import dbsr.model.tree.EntityTree;
+import dbsr.workload.query.Query;
+
+/**
+ * Compact representation of a query plan, using primitive arrays only.
+ *
+ * - Candidate ids at each position of the plan, to restore it.
+ * - Structural keys of the candidate trees at each position, see {@link EntityTree#getStructuralKey()}.
+ * - Query ids mapped to each position, flattened, with the offset of each position.
+ * - The secondary index at each position, as the index of the node in the candidate tree, or -1.
+ * - A 64-bit fingerprint of the sequence, candidate keys, query mapping and secondary indexes.
+ *
+ * The fingerprint and equality do not depend on the candidate ids:
+ * a pruned candidate merged again is a new candidate with a new id, its query plans have the same fingerprint as before.
+ * Two compact plans are equal if their query plans are equal and have the same secondary indexes.
+ *
+ * Requires registered candidates and a compiled workload.
+ *
+ * @author vincent
+ */
+public class CompactQueryPlan {
+
+	private final int sequenceId;
+
+	private final int[] candidateIds;
+
+	private final long[] candidateKeys;
+
+	/**
+	 * Queries at position i are queryIds[queryOffsets[i]] up to queryIds[queryOffsets[i+1]].
+	 */
+	private final int[] queryOffsets;
+
+	private final int[] queryIds;
+
+	private final int[] secondaryIndexNodes;
+
+	private final long fingerprint;
+
+	private CompactQueryPlan(int sequenceId, int[] candidateIds, long[] candidateKeys, int[] queryOffsets, int[] queryIds,
+			int[] secondaryIndexNodes) {
+		this.sequenceId = sequenceId;
+		this.candidateIds = candidateIds;
+		this.candidateKeys = candidateKeys;
+		this.queryOffsets = queryOffsets;
+		this.queryIds = queryIds;
+		this.secondaryIndexNodes = secondaryIndexNodes;
+		this.fingerprint = fingerprint(sequenceId, candidateKeys, queryOffsets, queryIds, secondaryIndexNodes);
+	}
+
+	/**
+	 * Encodes the query plan.
+	 *
+	 * @param qp
+	 * @return
+	 * @exception IllegalStateException If a candidate is not registered, or the workload is not compiled.
+	 */
+	public static <T extends Candidate<T>> CompactQueryPlan of(QueryPlan<T> qp) {
+		LinkedList<T> candidates = qp.getCandidatesPlan();
+		HashMap<Integer, LinkedList<Query>> mapping = qp.getMapping();
+		HashMap<Integer, EntityTree> secondaryIndexes = qp.getSecondaryIndexes();
+
+		int size = candidates.size();
+		int[] candidateIds = new int[size];
+		long[] candidateKeys = new long[size];
+		int[] queryOffsets = new int[size + 1];
+		int[] secondaryIndexNodes = new int[size];
+
+		int nrOfQueries = 0;
+
+		for(LinkedList<Query> queries: mapping.values())
+			nrOfQueries += queries.size();
+
+		int[] queryIds = new int[nrOfQueries];
+		int offset = 0;
+		int position = 0;
+
+		for(T candidate: candidates) {
+			if(!candidate.isRegistered())
+				throw new IllegalStateException("Query plan contains an unregistered candidate.");
+
+			candidateIds[position] = candidate.getId();
+			candidateKeys[position] = candidate.getCandidate().getStructuralKey();
+			queryOffsets[position] = offset;
+
+			LinkedList<Query> queries = mapping.get(position);
+
+			if(queries != null) {
+				for(Query qry: queries) {
+					if(qry.getId() == -1)
+						throw new IllegalStateException("Query plan contains a query which is not compiled.");
+
+					queryIds[offset++] = qry.getId();
+				}
+			}
+
+			EntityTree secondaryIndex = secondaryIndexes.get(position);
+			secondaryIndexNodes[position] = secondaryIndex == null ? -1 : indexOfNode(candidate.getCandidate(), secondaryIndex);
+
+			position++;
+		}
+
+		queryOffsets[size] = offset;
+
+		if(qp.getSequence().getId() == -1)
+			throw new IllegalStateException("Query plan of a sequence which is not compiled.");
+
+		return new CompactQueryPlan(qp.getSequence().getId(), candidateIds, candidateKeys, queryOffsets,
+				offset == queryIds.length ? queryIds : Arrays.copyOf(queryIds, offset), secondaryIndexNodes);
+	}
+
+	/**
+	 * Position of the node in the elements of the tree, by identity.
+	 */
+	private static int indexOfNode(EntityTree tree, EntityTree node) {
+		List<EntityTree> elements = tree.getElements();
+
+		for(int i=0; i < elements.size(); i++)
+			if(elements.get(i) == node)
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Restores the query plan.
+	 *
+	 * @param workload Workload the query plan was encoded in.
+	 * @param candidates Registered candidate per id.
+	 * @return
+	 */
+	public <T extends Candidate<T>> QueryPlan<T> expand(WorkloadCompiler workload, IntFunction<T> candidates) {
+		LinkedList<T> plan = new LinkedList<T>();
+		HashMap<Integer, LinkedList<Query>> mapping = new HashMap<Integer, LinkedList<Query>>();
+
+		for(int position=0; position < candidateIds.length; position++) {
+			T candidate = candidates.apply(candidateIds[position]);
+
+			if(candidate == null)
+				throw new IllegalArgumentException("Unknown candidate id " + candidateIds[position] + ".");
+
+			plan.add(candidate);
+
+			if(queryOffsets[position] == queryOffsets[position+1])
+				continue;
+
+			LinkedList<Query> queries = new LinkedList<Query>();
+
+			for(int i=queryOffsets[position]; i < queryOffsets[position+1]; i++)
+				queries.add(workload.getQuery(queryIds[i]));
+
+			mapping.put(Integer.valueOf(position), queries);
+		}
+
+		return new QueryPlan<T>(workload.getSequence(sequenceId), plan, mapping);
+	}
+
+	/**
+	 * Writes the plan in binary form.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(sequenceId);
+		writeArray(out, candidateIds);
+
+		for(long key: candidateKeys)
+			out.writeLong(key);
+
+		writeArray(out, queryOffsets);
+		writeArray(out, queryIds);
+		writeArray(out, secondaryIndexNodes);
+	}
+
+	/**
+	 * Reads a plan written by {@link #writeTo(DataOutput)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompactQueryPlan readFrom(DataInput in) throws IOException {
+		int sequenceId = in.readInt();
+		int[] candidateIds = readArray(in);
+		long[] candidateKeys = new long[candidateIds.length];
+
+		for(int i=0; i < candidateKeys.length; i++)
+			candidateKeys[i] = in.readLong();
+
+		int[] queryOffsets = readArray(in);
+		int[] queryIds = readArray(in);
+		int[] secondaryIndexNodes = readArray(in);
+
+		if(queryOffsets.length != candidateIds.length + 1 || secondaryIndexNodes.length != candidateIds.length)
+			throw new IOException("Invalid compact query plan.");
+
+		return new CompactQueryPlan(sequenceId, candidateIds, candidateKeys, queryOffsets, queryIds, secondaryIndexNodes);
+	}
+
+	private static void writeArray(DataOutput out, int[] array) throws IOException {
+		out.writeInt(array.length);
+
+		for(int value: array)
+			out.writeInt(value);
+	}
+
+	private static int[] readArray(DataInput in) throws IOException {
+		int length = in.readInt();
+
+		if(length < 0)
+			throw new IOException("Invalid array length " + length + ".");
+
+		int[] array = new int[length];
+
+		for(int i=0; i < length; i++)
+			array[i] = in.readInt();
+
+		return array;
+	}
+
+	public int size() {
+		return candidateIds.length;
+	}
+
+	public int getSequenceId() {
+		return sequenceId;
+	}
+
+	public int getCandidateId(int position) {
+		return candidateIds[position];
+	}
+
+	/**
+	 * @param position
+	 * @return Node index of the secondary index in the candidate tree at the position, or -1 if there is none.
+	 */
+	public int getSecondaryIndexNode(int position) {
+		return secondaryIndexNodes[position];
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Approximate number of bytes used by this plan, assuming compressed references.
+	 *
+	 * @return
+	 */
+	public long getMemorySize() {
+		// object header, 6 references and the fingerprint.
+		long size = 12 + 4 + 6 * 4 + 8;
+
+		size += arraySize(candidateIds) + ((16 + 8L * candidateKeys.length + 7) & ~7L);
+		size += arraySize(queryOffsets) + arraySize(queryIds) + arraySize(secondaryIndexNodes);
+
+		return size;
+	}
+
+	private static long arraySize(int[] array) {
+		return (16 + 4L * array.length + 7) & ~7L;
+	}
+
+	private static long fingerprint(int sequenceId, long[] candidateKeys, int[] queryOffsets, int[] queryIds, int[] secondaryIndexNodes) {
+		long hash = mix(0x9E3779B97F4A7C15L ^ sequenceId);
+
+		for(long key: candidateKeys)
+			hash = mix(hash ^ key);
+
+		for(int offset: queryOffsets)
+			hash = mix(hash + offset);
+
+		for(int id: queryIds)
+			hash = mix(hash ^ (id + 0x632BE59BD9B4E019L));
+
+		for(int node: secondaryIndexNodes)
+			hash = mix(hash + node);
+
+		return hash;
+	}
+
+	/**
+	 * Finalizer of SplitMix64.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		CompactQueryPlan other = (CompactQueryPlan) obj;
+		if (fingerprint != other.fingerprint)
+			return false;
+		if (sequenceId != other.sequenceId)
+			return false;
+		return Arrays.equals(candidateKeys, other.candidateKeys) && Arrays.equals(queryOffsets, other.queryOffsets)
+				&& Arrays.equals(queryIds, other.queryIds) && Arrays.equals(secondaryIndexNodes, other.secondaryIndexNodes);
+	}
+
+	@Override
+	public String toString() {
+		return "CompactQueryPlan [sequence=" + sequenceId + ", candidates=" + Arrays.toString(candidateIds) + ", queryOffsets="
+				+ Arrays.toString(queryOffsets) + ", queries=" + Arrays.toString(queryIds) + ", secondaryIndexes="
+				+ Arrays.toString(secondaryIndexNodes) + "]";
+	}
+}
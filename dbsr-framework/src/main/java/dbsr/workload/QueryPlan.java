@@ -10,9 +10,10 @@ import java.util.Set;
 import java.util.Stack;
 
 import dbsr.candidate.Candidate;
-import dbsr.config.Config;
+import dbsr.candidate.MergeCache;
 import dbsr.cost.Cost;
 import dbsr.cost.CostCalculatorPlan;
+import dbsr.cost.CostStepCache;
 import dbsr.cost.Rank;
 import dbsr.model.tree.EntityTree;
 import dbsr.workload.query.Query;
@@ -54,6 +55,16 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 	
 	private double fitness;
 	
+	/**
+	 * Cached cost, null if it has to be calculated.
+	 */
+	private Integer cost;
+	
+	/**
+	 * Cache of the step costs shared with the query plans of the same generator, null to calculate every step.
+	 */
+	private CostStepCache costStepCache;
+	
 	/**
 	 * Creates a query plan for a given sequence (query).
 	 * The plan is executed on certain candidate collections.
@@ -258,6 +269,11 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 	 * 		Only for query paths of SIZE 2. Size of data structure does not matter. 
 	 */
 	private void setSecondaryIndexes() {
+		this.invalidateCost();
+
+		// Shifts of the previous candidates and positions no longer apply.
+		this.previousQueriesPresent.clear();
+
 		// Secondary index:
 		// Mapping of candidates (index) -> selected data structure 
 		// Otherwise: defaults to the parent.
@@ -268,7 +284,7 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 			Candidate<T> candidate = candidates.get(candidateIndex.intValue());
 			
 			// FIND QUERY PATHS
-			LinkedList<EntityTree> nodes = candidate.getCandidate().getQueryPaths(queryPath, true);
+			List<EntityTree> nodes = candidate.getCandidate().getQueryPaths(queryPath, true);
 			
 			// IF NO QUERY PATH HOWEVER QUERYPATH IS SIZE 2: TRY REVERSE TOO.
 			if((nodes == null || nodes.isEmpty()) && queryPath.size() == 2) {
@@ -290,7 +306,7 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 				}
 			}
 			// Query path doesn't start at the top, select the best secondary index. (Min frequency, highest level).
-			else if(nodes != null && !nodes.isEmpty() && !nodes.getFirst().equals(candidate.getCandidate())) {
+			else if(nodes != null && !nodes.isEmpty() && !nodes.get(0).equals(candidate.getCandidate())) {
 				EntityTree secondaryIndex = getBestSecondaryIndex(nodes);
 				
 				// Check however if we haven't  queried any of the Nodes before the SecIndex. => Shifts up.
@@ -340,7 +356,7 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 	 * @param nodes	EntityTrees sorted by breadth-first appearance and which allow to answer a partial query.
 	 * @return
 	 */
-	private EntityTree getBestSecondaryIndex(LinkedList<EntityTree> nodes) {
+	private EntityTree getBestSecondaryIndex(List<EntityTree> nodes) {
 		int min = Integer.MAX_VALUE;
 		EntityTree bestNode = null;
 		
@@ -421,6 +437,7 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 			this.queryDataMapping.put(new Integer(index), new LinkedList<Query>());
 		
 		this.queryDataMapping.get(new Integer(index)).add(query);
+		this.invalidateCost();
 	}
 	
 	/**
@@ -500,6 +517,11 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 		return true;
 	}
 	
+	/**
+	 * Returns the query data mapping, call {@link #invalidateCost()} after modifying it.
+	 * 
+	 * @return
+	 */
 	public HashMap<Integer, LinkedList<Query>> getMapping() {
 		return this.queryDataMapping;
 	}
@@ -648,6 +670,18 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 	 * @param candidate
 	 */
 	public Set<QueryPlan<T>> notifyNewCandidate(T newCandidate) {
+		return notifyNewCandidate(newCandidate, null);
+	}
+	
+	/**
+	 * New candidate was created, the candidates which are a subset of it are known.
+	 * 
+	 * @param newCandidate
+	 * @param subsets
+	 * 		  Candidates which are a subset of the new candidate, by identity, or null to check each candidate of the plan.
+	 * @return
+	 */
+	public Set<QueryPlan<T>> notifyNewCandidate(T newCandidate, Set<T> subsets) {
 		Set<QueryPlan<T>> queryPlans = new HashSet<QueryPlan<T>>();
 		
 		ArrayList<T> traversedCandidates = new ArrayList<T>();
@@ -660,7 +694,7 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 				traversedCandidates.add(candidate);
 			
 			// 1) Candidate completely embedded in new candidate
-			if(candidate.isSubSetOf(newCandidate)) {
+			if(subsets != null ? subsets.contains(candidate) : candidate.isSubSetOf(newCandidate)) {
 				Set<QueryPlan<T>> qpReplacements = this.replaceCandidateAllOptions(candidate, newCandidate);			
 				
 //				System.out.println("Embedded multiple completely in:" +candidate + ", new qp:" + qp);
@@ -802,32 +836,24 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 	 * Create new candidate collections to optimize this query plan.
 	 */
 	public Set<T> optimize() {
+		return optimize(new MergeCache<T>());
+	}
+	
+	/**
+	 * Create new candidate collections to optimize this query plan, 
+	 * reusing the merges of adjacent candidates of other query plans.
+	 * 
+	 * @param merges
+	 * @return
+	 */
+	public Set<T> optimize(MergeCache<T> merges) {
 		HashSet<T> newCandidates = new HashSet<T>();
 		
 		for(int i=0; i < candidates.size()-1; i++) {
-//			System.out.println(candidates.get(i));
-//			System.out.println(candidates.get(i+1));
-//			System.out.println(candidates.get(i).canMerge(candidates.get(i+1)));
-//			
-			if(!candidates.get(i).isSubSetOf(candidates.get(i+1)) && candidates.get(i).canMerge(candidates.get(i+1))) {
-				T newCandidate = candidates.get(i).merge(candidates.get(i+1));
-//				System.out.println(newCandidate);
-//				System.out.println(newCandidate.getCandidate().isValidCyclic());
-				
-				// - Candidate must be within max depth, and max width configured
-				// - Candidate must not exceed maximum embedded documents.
-				// - Candidate's cyclic elements must be valid. (i.e. in demand by sequences)
-				// - And new candidate can actually replace the previous 2. (FCC).
-				if(newCandidate.getCandidate().getMaxDepth() <= Config.MAX_DOCUMENT_DEPTH && newCandidate.getCandidate().getMaxWidth() <= Config.MAX_DOCUMENT_WIDTH
-						&& newCandidate.getCandidate().getNodesTotalFrequency() <= Config.MAX_SINGLE_DOCUMENT_EMBEDDED_AMOUNT 
-						&& newCandidate.getCandidate().isValidCyclic()  
-						// && !newCandidate.getCandidate().hasReoccurringElements() 
-						&& candidates.get(i).isSubSetOf(newCandidate) && candidates.get(i+1).isSubSetOf(newCandidate)) {
-					
-	
-					newCandidates.add(newCandidate);
-				}
-			}
+			T newCandidate = merges.merge(candidates.get(i), candidates.get(i+1));
+			
+			if(newCandidate != null)
+				newCandidates.add(newCandidate);
 		}
 		
 		return newCandidates;
@@ -837,15 +863,41 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 		return this.candidates.size();
 	}
 	
+	/**
+	 * Shares the step costs with other query plans, query plans cloned from this one use the same cache.
+	 * 
+	 * @param costStepCache Null to calculate every step.
+	 */
+	public void setCostStepCache(CostStepCache costStepCache) {
+		this.costStepCache = costStepCache;
+	}
+	
+	public CostStepCache getCostStepCache() {
+		return this.costStepCache;
+	}
+	
 	/**
 	 * Calculates the cost of all queries executed in the plan.
 	 * 
 	 */
 	@Override
 	public int getCost() {
-		CostCalculatorPlan<T> calculator = new CostCalculatorPlan<T>(this);
+		if(cost == null) {
+			CostCalculatorPlan<T> calculator = new CostCalculatorPlan<T>(this);
+			cost = calculator.getCost();
+		}
 		
-		return calculator.getCost();
+		return cost.intValue();
+	}
+	
+	/**
+	 * Forces the cost to be calculated again.
+	 * 
+	 * Mutators of the query plan do this automatically, 
+	 * it is only required after modifying the candidates or the mapping directly.
+	 */
+	public void invalidateCost() {
+		this.cost = null;
 	}
 
 	@Override
@@ -939,6 +991,11 @@ public class QueryPlan<T extends Candidate<T>> implements Comparable<QueryPlan<T
 		}
 		
 		QueryPlan<T> newQP = new QueryPlan<>(sequence, newCandidates, newMapping);
+		newQP.costStepCache = this.costStepCache;
+		
+		// Identical plan, identical cost.
+		if(candidates == this.candidates)
+			newQP.cost = this.cost;
 		
 		return newQP;
 	}
@@ -80,6 +80,15 @@ public class Sequence {
 	 */
 	private final int frequency;
 	
+	/**
+	 * Dense id assigned by the workload compiler, only valid within the compilation it was assigned in.
+	 */
+	private int compilation = 0;
+	
+	private int id = -1;
+	
+	private int compiledHash;
+	
 	public Sequence(LinkedList<Query> sequence, SequenceType type) {
 		this(sequence, type, 1);
 	}
@@ -131,6 +140,8 @@ public class Sequence {
 	 * @param query
 	 */
 	public void addQuery(Query query) {
+		this.compilation = 0;
+		
 		if(this.sequence.contains(query)) {
 			this.cyclicElements.add(query);
 		}
@@ -337,8 +348,35 @@ public class Sequence {
 		return (sequence.contains(query));
 	}
 
+	/**
+	 * Assigns a dense id, equal sequences within a compilation have the same id.
+	 * 
+	 * @param compilation
+	 * @param id
+	 */
+	public void compile(int compilation, int id) {
+		this.compilation = 0;
+		this.compiledHash = hashCode();
+		this.id = id;
+		this.compilation = compilation;
+	}
+	
+	public int getCompilation() {
+		return this.compilation;
+	}
+	
+	/**
+	 * @return Dense id of the sequence, or -1 if not compiled.
+	 */
+	public int getId() {
+		return compilation != 0 ? this.id : -1;
+	}
+
 	@Override
 	public int hashCode() {
+		if(compilation != 0)
+			return compiledHash;
+		
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((sequence == null) ? 0 : sequence.hashCode());
@@ -355,6 +393,8 @@ public class Sequence {
 		if (getClass() != obj.getClass())
 			return false;
 		Sequence other = (Sequence) obj;
+		if (compilation != 0 && compilation == other.compilation)
+			return id == other.id;
 		if (sequence == null) {
 			if (other.sequence != null)
 				return false;
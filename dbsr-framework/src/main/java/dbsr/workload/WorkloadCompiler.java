@@ -0,0 +1,190 @@
+package dbsr.workload;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dbsr.model.Entity;
+import dbsr.model.Field;
+import dbsr.model.relationship.Relationship;
+import dbsr.workload.query.Query;
+
+/**
+ * Compiles a workload before generation:
+ * assigns dense integer ids to its entities, fields, queries and sequences,
+ * and represents the field sets of queries as bitsets.
+ *
+ * Equal objects receive the same id, so within a compilation
+ * equality is an id comparison and hashes are cached.
+ * Field sets are compared bitwise, e.g. when checking if a query is answerable by a data structure.
+ *
+ * Compiled entities, queries and sequences should not be modified afterwards.
+ * Adding a relationship or a query resets an entity or sequence to its uncompiled state.
+ *
+ * @author vincent
+ */
+public class WorkloadCompiler {
+
+	private static final AtomicInteger compilations = new AtomicInteger(0);
+
+	private final int compilation;
+
+	private final List<Entity> entities = new ArrayList<Entity>();
+
+	private final List<Field> fields = new ArrayList<Field>();
+
+	private final List<Query> queries = new ArrayList<Query>();
+
+	private final List<Sequence> sequences = new ArrayList<Sequence>();
+
+	private WorkloadCompiler() {
+		this.compilation = compilations.incrementAndGet();
+	}
+
+	/**
+	 * Compiles the sequences, their queries, and the entities and fields they use.
+	 *
+	 * @param sequences
+	 * @return
+	 */
+	public static WorkloadCompiler compile(Collection<Sequence> sequences) {
+		WorkloadCompiler compiler = new WorkloadCompiler();
+		compiler.compileSequences(sequences);
+
+		return compiler;
+	}
+
+	private void compileSequences(Collection<Sequence> workload) {
+		Set<Query> uniqueQueries = new LinkedHashSet<Query>();
+		Set<Entity> uniqueEntities = new LinkedHashSet<Entity>();
+
+		for(Sequence seq: workload) {
+			for(Query qry: seq.getQueryPath()) {
+				uniqueQueries.add(qry);
+				uniqueEntities.add(qry.getEntity());
+
+				for(Relationship relation: qry.getEntity().getRelationships()) {
+					uniqueEntities.add(relation.getSource());
+					uniqueEntities.add(relation.getTarget());
+				}
+			}
+		}
+
+		// Fields first, the field ids make up the bitsets of the queries.
+		HashMap<Field, Integer> fieldIds = new HashMap<Field, Integer>();
+
+		for(Entity entity: uniqueEntities)
+			for(Field field: entity.getFields())
+				assignFieldId(fieldIds, field);
+
+		for(Query qry: uniqueQueries)
+			for(Field field: qry.getAllFields())
+				assignFieldId(fieldIds, field);
+
+		HashMap<Entity, Integer> entityIds = new HashMap<Entity, Integer>();
+
+		for(Entity entity: uniqueEntities)
+			entity.compile(compilation, assignId(entityIds, entity, entities));
+
+		for(Entity entity: uniqueEntities) {
+			for(Field field: entity.getFields())
+				field.compile(compilation, fieldIds.get(field));
+
+			if(entity.getPrimary_key() != null && fieldIds.containsKey(entity.getPrimary_key()))
+				entity.getPrimary_key().compile(compilation, fieldIds.get(entity.getPrimary_key()));
+		}
+
+		HashMap<Query, Integer> queryIds = new HashMap<Query, Integer>();
+
+		for(Query qry: uniqueQueries) {
+			for(Field field: qry.getAllFields())
+				field.compile(compilation, fieldIds.get(field));
+		}
+
+		// Query ids are assigned on the uncompiled queries, the hash and equality of queries changes once compiled.
+		int[] ids = new int[uniqueQueries.size()];
+		int i = 0;
+
+		for(Query qry: uniqueQueries)
+			ids[i++] = assignId(queryIds, qry, queries);
+
+		i = 0;
+
+		for(Query qry: uniqueQueries)
+			qry.compile(compilation, ids[i++], toBitSet(fieldIds, qry.getAffectedFields()), toBitSet(fieldIds, qry.getReadFields()));
+
+		HashMap<Sequence, Integer> sequenceIds = new HashMap<Sequence, Integer>();
+
+		for(Sequence seq: workload)
+			seq.compile(compilation, assignId(sequenceIds, seq, sequences));
+	}
+
+	private void assignFieldId(HashMap<Field, Integer> fieldIds, Field field) {
+		if(!fieldIds.containsKey(field)) {
+			fieldIds.put(field, Integer.valueOf(fields.size()));
+			fields.add(field);
+		}
+	}
+
+	private static <K> int assignId(HashMap<K, Integer> ids, K object, List<K> objects) {
+		Integer id = ids.get(object);
+
+		if(id == null) {
+			id = Integer.valueOf(objects.size());
+			ids.put(object, id);
+			objects.add(object);
+		}
+
+		return id.intValue();
+	}
+
+	private static long[] toBitSet(HashMap<Field, Integer> fieldIds, Set<Field> fields) {
+		BitSet bits = new BitSet();
+
+		for(Field field: fields)
+			bits.set(fieldIds.get(field).intValue());
+
+		return bits.toLongArray();
+	}
+
+	public int getCompilation() {
+		return compilation;
+	}
+
+	public Entity getEntity(int id) {
+		return entities.get(id);
+	}
+
+	public Field getField(int id) {
+		return fields.get(id);
+	}
+
+	public Query getQuery(int id) {
+		return queries.get(id);
+	}
+
+	public Sequence getSequence(int id) {
+		return sequences.get(id);
+	}
+
+	public int getNumberOfEntities() {
+		return entities.size();
+	}
+
+	public int getNumberOfFields() {
+		return fields.size();
+	}
+
+	public int getNumberOfQueries() {
+		return queries.size();
+	}
+
+	public int getNumberOfSequences() {
+		return sequences.size();
+	}
+}
@@ -0,0 +1,130 @@
+package dbsr.workload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dbsr.model.Entity;
+import dbsr.workload.query.Query;
+
+/**
+ * Splits a workload into independent components:
+ * sequences are connected when their query paths share an entity,
+ * and a component holds the sequences connected directly or through other sequences.
+ *
+ * Sequences of different components never use the same entity, so their data structures never merge,
+ * and each component can be generated on its own.
+ *
+ * The components are found with a union-find over the entities of the query paths.
+ *
+ * @author vincent
+ */
+public class WorkloadComponents {
+
+	private final HashMap<Entity, Integer> entityIds = new HashMap<Entity, Integer>();
+
+	private int[] parents = new int[16];
+
+	private int[] sizes = new int[16];
+
+	private WorkloadComponents() {
+
+	}
+
+	/**
+	 * Splits the sequences into components, in the order of their first sequence.
+	 * The sequences of a component keep their order.
+	 *
+	 * @param sequences
+	 * @return
+	 */
+	public static List<Set<Sequence>> split(Collection<Sequence> sequences) {
+		WorkloadComponents components = new WorkloadComponents();
+
+		for(Sequence seq: sequences) {
+			int first = -1;
+
+			for(Query qry: seq.getQueryPath()) {
+				int entity = components.getId(qry.getEntity());
+
+				if(first == -1)
+					first = entity;
+				else
+					components.union(first, entity);
+			}
+		}
+
+		Map<Integer, Set<Sequence>> sequencesPerComponent = new LinkedHashMap<Integer, Set<Sequence>>();
+
+		for(Sequence seq: sequences) {
+			if(seq.getQueryPath().isEmpty())
+				throw new IllegalArgumentException("Sequence without queries: " + seq);
+
+			Integer root = Integer.valueOf(components.find(components.getId(seq.getQueryPath().getFirst().getEntity())));
+			Set<Sequence> component = sequencesPerComponent.get(root);
+
+			if(component == null) {
+				component = new LinkedHashSet<Sequence>();
+				sequencesPerComponent.put(root, component);
+			}
+
+			component.add(seq);
+		}
+
+		return new ArrayList<Set<Sequence>>(sequencesPerComponent.values());
+	}
+
+	private int getId(Entity entity) {
+		Integer id = entityIds.get(entity);
+
+		if(id != null)
+			return id.intValue();
+
+		int newId = entityIds.size();
+
+		if(newId == parents.length) {
+			parents = Arrays.copyOf(parents, newId * 2);
+			sizes = Arrays.copyOf(sizes, newId * 2);
+		}
+
+		parents[newId] = newId;
+		sizes[newId] = 1;
+		entityIds.put(entity, Integer.valueOf(newId));
+
+		return newId;
+	}
+
+	private int find(int entity) {
+		while(parents[entity] != entity) {
+			// Path halving.
+			parents[entity] = parents[parents[entity]];
+			entity = parents[entity];
+		}
+
+		return entity;
+	}
+
+	private void union(int first, int second) {
+		int firstRoot = find(first);
+		int secondRoot = find(second);
+
+		if(firstRoot == secondRoot)
+			return;
+
+		// The smaller tree is attached to the larger.
+		if(sizes[firstRoot] < sizes[secondRoot]) {
+			int root = firstRoot;
+			firstRoot = secondRoot;
+			secondRoot = root;
+		}
+
+		parents[secondRoot] = firstRoot;
+		sizes[firstRoot] += sizes[secondRoot];
+	}
+}
@@ -1,6 +1,8 @@
 package dbsr.workload.query;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -53,6 +55,21 @@ public abstract class Query implements Cost {
 	private final Integer frequency;
 	
 	protected Set<Field> selectFields, conditionalFields, insertFields, updateFields;
+	
+	/**
+	 * Dense id assigned by the workload compiler, only valid within the compilation it was assigned in.
+	 * Compiled queries can no longer be modified.
+	 */
+	private int compilation = 0;
+	
+	private int id = -1;
+	
+	private int compiledHash;
+	
+	/**
+	 * Field ids of the affected and read fields, as bitsets.
+	 */
+	private long[] affectedFieldIds, readFieldIds;
 
 	public Query(Entity table, Integer frequency, QueryType queryType) {
 		this.table = table;
@@ -172,6 +189,54 @@ public abstract class Query implements Cost {
 		return fields;
 	}
 	
+	/**
+	 * Assigns a dense id, equal queries within a compilation have the same id.
+	 * The field sets become unmodifiable.
+	 * 
+	 * @param compilation
+	 * @param id
+	 * @param affectedFieldIds Bitset of the ids of the affected fields.
+	 * @param readFieldIds Bitset of the ids of the read fields.
+	 */
+	public void compile(int compilation, int id, long[] affectedFieldIds, long[] readFieldIds) {
+		this.compilation = 0;
+		
+		this.selectFields = Collections.unmodifiableSet(selectFields);
+		this.conditionalFields = Collections.unmodifiableSet(conditionalFields);
+		this.insertFields = Collections.unmodifiableSet(insertFields);
+		this.updateFields = Collections.unmodifiableSet(updateFields);
+		
+		this.compiledHash = hashCode();
+		this.id = id;
+		this.affectedFieldIds = affectedFieldIds;
+		this.readFieldIds = readFieldIds;
+		this.compilation = compilation;
+	}
+	
+	public int getCompilation() {
+		return this.compilation;
+	}
+	
+	/**
+	 * @return Dense id of the query, or -1 if not compiled.
+	 */
+	public int getId() {
+		return compilation != 0 ? this.id : -1;
+	}
+	
+	/**
+	 * Returns the ids of the affected fields.
+	 * 
+	 * @return
+	 * @exception IllegalStateException If the query is not compiled.
+	 */
+	public BitSet getAffectedFieldIds() {
+		if(compilation == 0)
+			throw new IllegalStateException("Query is not compiled.");
+		
+		return BitSet.valueOf(affectedFieldIds);
+	}
+	
 	/**
 	 * Can this query be answered by an EntityTree defined by otherQuery?
 	 * 
@@ -182,6 +247,9 @@ public abstract class Query implements Cost {
 	 * @return
 	 */
 	public boolean isAnswerableBy(Query otherQuery) {
+		if(compilation != 0 && compilation == otherQuery.compilation)
+			return getEntity().equals(otherQuery.getEntity()) && containsAll(otherQuery.affectedFieldIds, affectedFieldIds);
+		
 		if(otherQuery.getEntity().equals(this.getEntity()))
 			return otherQuery.getAffectedFields().containsAll(this.getAffectedFields());
 		else
@@ -197,6 +265,9 @@ public abstract class Query implements Cost {
 	 * @return
 	 */
 	public boolean isAnswerableBy(List<Query> queries) {
+		if(isCompiledWith(queries))
+			return isAnswerableByCompiled(queries);
+		
 		Set<Field> fields = new HashSet<Field>();
 		
 		for(Query qry: queries) {
@@ -207,6 +278,53 @@ public abstract class Query implements Cost {
 		return fields.containsAll(this.getReadFields());
 	}
 
+	private boolean isCompiledWith(List<Query> queries) {
+		if(compilation == 0)
+			return false;
+		
+		for(Query qry: queries)
+			if(qry.compilation != compilation)
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Every read field of this query has to be read by a query on the same entity.
+	 */
+	private boolean isAnswerableByCompiled(List<Query> queries) {
+		for(int word=0; word < readFieldIds.length; word++) {
+			long remaining = readFieldIds[word];
+			
+			for(Query qry: queries) {
+				if(remaining == 0)
+					break;
+				
+				if(word < qry.readFieldIds.length && qry.getEntity().equals(getEntity()))
+					remaining &= ~qry.readFieldIds[word];
+			}
+			
+			if(remaining != 0)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Checks whether the bitset contains all bits of the given subset.
+	 */
+	private static boolean containsAll(long[] set, long[] subset) {
+		for(int word=0; word < subset.length; word++) {
+			long present = word < set.length ? set[word] : 0;
+			
+			if((subset[word] & ~present) != 0)
+				return false;
+		}
+		
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return "Query [" + table.getName() + "]";
@@ -214,6 +332,9 @@ public abstract class Query implements Cost {
 
 	@Override
 	public int hashCode() {
+		if(compilation != 0)
+			return compiledHash;
+		
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((conditionalFields == null) ? 0 : conditionalFields.hashCode());
@@ -240,6 +361,8 @@ public abstract class Query implements Cost {
 			return false;
 		
 		Query other = (Query) obj;
+		if (compilation != 0 && compilation == other.compilation)
+			return id == other.id;
 		if (conditionalFields == null) {
 			if (other.conditionalFields != null)
 				return false;
@@ -0,0 +1,154 @@
+package dbsr.candidates;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.MergeCache;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+public class MergeCacheTest {
+
+	private MultiSequenceCandidateGenerator generator;
+
+	@Before
+	public void setUp() throws Exception {
+		generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+	}
+
+	@Test
+	public void testSameCandidatesAsUncached() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>();
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				assertEquals(qp.optimize(), qp.optimize(cache));
+				assertEquals(qp.optimize(), qp.optimize(cache));
+			}
+		}
+
+		assertTrue(cache.size() > 0);
+		assertTrue(cache.getHits() > 0);
+		assertEquals(cache.size(), cache.getMisses());
+	}
+
+	@Test
+	public void testCachedMergeIsReused() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>();
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				Set<CandidateSequences> merges = qp.optimize(cache);
+
+				if(merges.isEmpty())
+					continue;
+
+				CandidateSequences merge = merges.iterator().next();
+				CandidateSequences left = (CandidateSequences) merge.getLeftMerge();
+				CandidateSequences right = (CandidateSequences) merge.getRightMerge();
+
+				assertSame(merge, cache.merge(left, right));
+				assertNull(cache.getRejection(left, right));
+
+				// A registered merge which is pruned is merged again into a new candidate.
+				merge.setId(100000);
+				cache.setCanonical(merge, merge);
+				cache.remove(merge);
+				CandidateSequences again = cache.merge(left, right);
+
+				assertNotSame(merge, again);
+				assertEquals(merge, again);
+				return;
+			}
+		}
+
+		fail("No query plan can be optimized.");
+	}
+
+	@Test
+	public void testRejectionIsCached() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>();
+		Sequence seq = generator.getSequences().iterator().next();
+		CandidateSequences candidate = generator.getExistingQueryPlan(seq).iterator().next().getCandidatesPlan().getFirst();
+
+		assertNull(cache.merge(candidate, candidate));
+		assertEquals(MergeCache.Rejection.SUBSET, cache.getRejection(candidate, candidate));
+
+		assertNull(cache.merge(candidate, candidate));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testRemoveEvictsPairsOfPruned() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>();
+		Sequence seq = generator.getSequences().iterator().next();
+		CandidateSequences candidate = generator.getExistingQueryPlan(seq).iterator().next().getCandidatesPlan().getFirst();
+
+		cache.merge(candidate, candidate);
+		cache.remove(candidate);
+
+		assertNull(cache.getRejection(candidate, candidate));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testCanonicalIsReturned() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>();
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				Set<CandidateSequences> merges = qp.optimize(cache);
+
+				if(merges.isEmpty())
+					continue;
+
+				CandidateSequences merge = merges.iterator().next();
+				CandidateSequences left = (CandidateSequences) merge.getLeftMerge();
+				CandidateSequences right = (CandidateSequences) merge.getRightMerge();
+
+				// An equal candidate registered before.
+				CandidateSequences canonical = new CandidateSequences(merge.getCandidate());
+				canonical.setId(100000);
+
+				cache.setCanonical(merge, canonical);
+				assertSame(canonical, cache.merge(left, right));
+
+				// Pruning the canonical candidate removes the pair.
+				cache.remove(canonical);
+				assertNotSame(canonical, cache.merge(left, right));
+				return;
+			}
+		}
+
+		fail("No query plan can be optimized.");
+	}
+
+	@Test
+	public void testMaximumSize() {
+		MergeCache<CandidateSequences> cache = new MergeCache<CandidateSequences>(1);
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				assertEquals(qp.optimize(), qp.optimize(cache));
+				assertTrue(cache.size() <= 1);
+			}
+		}
+	}
+
+	@Test
+	public void testGenerationReusesMerges() {
+		generator.startGeneration(20);
+		MergeCache<CandidateSequences> cache = generator.getMergeCache();
+
+		assertTrue(cache.getHits() > 0);
+		assertTrue(cache.size() <= cache.getMisses());
+	}
+}
@@ -0,0 +1,77 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.Candidate;
+import dbsr.candidate.CandidateSequences;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+
+public class CandidateAncestorsTest {
+
+	private CandidateSequences first;
+
+	private CandidateSequences second;
+
+	private CandidateSequences third;
+
+	private CandidateSequences left;
+
+	private CandidateSequences right;
+
+	private CandidateSequences merged;
+
+	@Before
+	public void setUp() throws Exception {
+		List<Sequence> sequences = new ArrayList<Sequence>(new RUBiS().getSequences());
+		first = new CandidateSequences(sequences.get(0).getEntityTree());
+		second = new CandidateSequences(sequences.get(1).getEntityTree());
+		third = new CandidateSequences(sequences.get(2).getEntityTree());
+
+		// Diamond: the second candidate is merged into both sides.
+		left = new CandidateSequences(sequences.get(0).getEntityTree(), first, second);
+		right = new CandidateSequences(sequences.get(1).getEntityTree(), second, third);
+		merged = new CandidateSequences(sequences.get(2).getEntityTree(), left, right);
+	}
+
+	@Test
+	public void testRegisteredAncestors() {
+		int id = 0;
+
+		for(CandidateSequences candidate: Arrays.asList(first, second, third, left, right, merged))
+			candidate.setId(id++);
+
+		List<Candidate<CandidateSequences>> ancestors = merged.getAncestors();
+
+		assertEquals(5, ancestors.size());
+		assertTrue(ancestors.containsAll(Arrays.asList(first, second, third, left, right)));
+		assertTrue(first.getAncestors().isEmpty());
+
+		assertTrue(merged.hasAncestor(second));
+		assertTrue(right.hasAncestor(third));
+		assertFalse(left.hasAncestor(third));
+		assertFalse(merged.hasAncestor(merged));
+	}
+
+	@Test
+	public void testUnregisteredAncestors() {
+		List<Candidate<CandidateSequences>> ancestors = merged.getAncestors();
+
+		assertEquals(5, ancestors.size());
+		assertTrue(merged.hasAncestor(second));
+		assertFalse(left.hasAncestor(third));
+	}
+
+	@Test
+	public void testCandidateTree() {
+		assertTrue(merged.getCandidateTree().containsAll(merged.getAncestors()));
+		assertTrue(merged.getCandidateTree().contains(merged));
+	}
+}
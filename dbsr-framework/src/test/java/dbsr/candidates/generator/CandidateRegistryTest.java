@@ -0,0 +1,123 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.optimizations.CandidateRegistry;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+
+public class CandidateRegistryTest {
+
+	private Sequence first;
+
+	private Sequence second;
+
+	@Before
+	public void setUp() throws Exception {
+		List<Sequence> sequences = new ArrayList<Sequence>(new RUBiS().getSequences());
+		first = sequences.get(0);
+		second = sequences.get(1);
+	}
+
+	@Test
+	public void testCanonicalInstance() {
+		CandidateRegistry<CandidateSequences> registry = new CandidateRegistry<CandidateSequences>();
+		CandidateSequences candidate = new CandidateSequences(first.getEntityTree());
+		CandidateSequences equal = new CandidateSequences(first.getEntityTree());
+		CandidateSequences other = new CandidateSequences(second.getEntityTree());
+
+		assertSame(candidate, registry.getOrCreate(candidate));
+		assertSame(candidate, registry.getOrCreate(equal));
+		assertFalse(registry.add(equal));
+		assertTrue(registry.add(other));
+		assertSame(candidate, registry.get(equal));
+
+		assertEquals(0, candidate.getId());
+		assertEquals(1, other.getId());
+		assertFalse(equal.isRegistered());
+		assertEquals(2, registry.size());
+	}
+
+	@Test
+	public void testRemovedCandidateKeepsId() {
+		CandidateRegistry<CandidateSequences> registry = new CandidateRegistry<CandidateSequences>();
+		CandidateSequences candidate = new CandidateSequences(first.getEntityTree());
+		registry.add(candidate);
+
+		assertTrue(registry.remove(new CandidateSequences(first.getEntityTree())));
+		assertFalse(registry.contains(candidate));
+		assertEquals(0, candidate.getId());
+		assertNull(registry.getCandidate(0));
+
+		CandidateSequences again = new CandidateSequences(first.getEntityTree());
+		assertSame(again, registry.getOrCreate(again));
+		assertEquals(1, again.getId());
+		assertEquals(1, registry.getRegisteredCandidates().size());
+		assertSame(again, registry.getCandidate(1));
+	}
+
+	@Test
+	public void testRestore() {
+		CandidateRegistry<CandidateSequences> registry = new CandidateRegistry<CandidateSequences>();
+		CandidateSequences removed = new CandidateSequences(first.getEntityTree());
+		CandidateSequences alive = new CandidateSequences(second.getEntityTree());
+
+		registry.restore(removed, 1, false);
+		registry.restore(alive, 3, true);
+		registry.restoreNextId(5);
+
+		assertNull(registry.getCandidate(1));
+		assertSame(alive, registry.getCandidate(3));
+		assertTrue(registry.contains(alive));
+		assertEquals(1, registry.size());
+
+		CandidateSequences next = new CandidateSequences(first.getEntityTree());
+		assertTrue(registry.add(next));
+		assertEquals(5, next.getId());
+	}
+
+	@Test
+	public void testConcurrentGetOrCreate() throws Exception {
+		final CandidateRegistry<CandidateSequences> registry = new CandidateRegistry<CandidateSequences>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Callable<CandidateSequences>> tasks = new ArrayList<Callable<CandidateSequences>>();
+
+		for(int i=0; i < 16; i++) {
+			tasks.add(new Callable<CandidateSequences>() {
+				@Override
+				public CandidateSequences call() {
+					CandidateSequences candidate = registry.getOrCreate(new CandidateSequences(first.getEntityTree()));
+
+					// Visible only once registered.
+					assertTrue(candidate.isRegistered());
+
+					return candidate;
+				}
+			});
+		}
+
+		CandidateSequences canonical = null;
+
+		for(Future<CandidateSequences> result: executor.invokeAll(tasks)) {
+			if(canonical == null)
+				canonical = result.get();
+
+			assertSame(canonical, result.get());
+		}
+
+		executor.shutdown();
+
+		assertEquals(1, registry.getRegisteredCandidates().size());
+	}
+}
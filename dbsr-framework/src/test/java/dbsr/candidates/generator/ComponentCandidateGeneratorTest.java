@@ -0,0 +1,90 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.generator.ComponentCandidateGenerator;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.candidate.generator.Recommendation;
+import dbsr.model.Entity;
+import dbsr.model.factory.Ebay;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+import dbsr.workload.WorkloadComponents;
+import dbsr.workload.query.Query;
+
+public class ComponentCandidateGeneratorTest {
+
+	private Set<Sequence> rubis;
+
+	private Set<Sequence> ebay;
+
+	private Set<Sequence> sequences;
+
+	@Before
+	public void setUp() throws Exception {
+		rubis = new RUBiS().getSequences();
+		ebay = new Ebay().getSequences();
+
+		sequences = new LinkedHashSet<Sequence>(rubis);
+		sequences.addAll(ebay);
+	}
+
+	@Test
+	public void testSplit() {
+		assertEquals(1, WorkloadComponents.split(rubis).size());
+
+		List<Set<Sequence>> components = WorkloadComponents.split(sequences);
+
+		assertEquals(2, components.size());
+		assertEquals(rubis, components.get(0));
+		assertEquals(ebay, components.get(1));
+
+		Set<Entity> entities = getEntities(components.get(0));
+		entities.retainAll(getEntities(components.get(1)));
+
+		assertTrue(entities.isEmpty());
+	}
+
+	@Test
+	public void testGeneration() {
+		ComponentCandidateGenerator generator = new ComponentCandidateGenerator(sequences);
+		Recommendation recommendation = generator.startGeneration(10);
+
+		assertEquals(2, generator.getGenerators().size());
+
+		double weightedCost = 0;
+		int iterations = 0;
+
+		for(MultiSequenceCandidateGenerator component: generator.getGenerators()) {
+			Recommendation componentRecommendation = component.getRecommendation();
+			weightedCost += componentRecommendation.getWeightedCost();
+			iterations += componentRecommendation.getIterations();
+
+			for(Sequence seq: component.getSequences())
+				assertSame(componentRecommendation.getQueryPlan(seq), recommendation.getQueryPlan(seq));
+		}
+
+		assertEquals(20, iterations);
+		assertEquals(iterations, recommendation.getIterations());
+		assertEquals(weightedCost, recommendation.getWeightedCost(), 1e-6);
+		assertSame(recommendation, generator.getRecommendation());
+	}
+
+	private Set<Entity> getEntities(Set<Sequence> sequences) {
+		Set<Entity> entities = new HashSet<Entity>();
+
+		for(Sequence seq: sequences)
+			for(Query qry: seq.getQueryPath())
+				entities.add(qry.getEntity());
+
+		return entities;
+	}
+}
@@ -0,0 +1,75 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import dbsr.candidate.generator.optimizations.FieldSetLattice;
+
+public class FieldSetLatticeTest {
+
+	private static BitSet fields(int... ids) {
+		BitSet fields = new BitSet();
+
+		for(int id: ids)
+			fields.set(id);
+
+		return fields;
+	}
+
+	@Test
+	public void testClosure() {
+		FieldSetLattice<String> lattice = new FieldSetLattice<String>();
+		lattice.add("a", fields(0, 1));
+		lattice.add("b", fields(2));
+		lattice.add("c", fields(1, 3));
+
+		// {0,1}, {2}, {0,1,2}, {1,3}, {0,1,3}, {1,2,3}, {0,1,2,3}
+		assertEquals(7, lattice.size());
+		assertEquals(Arrays.asList("a", "b"), lattice.getFieldSets().get(fields(0, 1, 2)));
+		assertEquals(Arrays.asList("a", "b", "c"), lattice.getFieldSets().get(fields(0, 1, 2, 3)));
+		assertEquals(Arrays.asList("b", "c"), lattice.getFieldSets().get(fields(1, 2, 3)));
+	}
+
+	@Test
+	public void testDuplicateFieldSets() {
+		FieldSetLattice<String> lattice = new FieldSetLattice<String>();
+		lattice.add("a", fields(0, 1));
+		lattice.add("b", fields(0));
+		lattice.add("c", fields(0, 1));
+
+		assertEquals(2, lattice.size());
+		assertEquals(Arrays.asList("a"), lattice.getFieldSets().get(fields(0, 1)));
+		assertEquals(Arrays.asList("b"), lattice.getFieldSets().get(fields(0)));
+	}
+
+	@Test
+	public void testClustering() {
+		FieldSetLattice<String> lattice = new FieldSetLattice<String>(2);
+		lattice.add("a", fields(0, 1, 2));
+		lattice.add("b", fields(0, 1, 2, 3));
+		lattice.add("c", fields(10));
+
+		assertTrue(lattice.size() <= 2);
+		assertTrue(lattice.getClustered() > 0);
+
+		// Every element is still answered by a field set containing its fields.
+		for(String element: Arrays.asList("a", "b", "c")) {
+			boolean found = false;
+
+			for(List<String> elements: lattice.getFieldSets().values())
+				found |= elements.contains(element);
+
+			assertTrue(found);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaximum() {
+		new FieldSetLattice<String>(0);
+	}
+}
@@ -0,0 +1,88 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.generator.GenerationBudget;
+import dbsr.candidate.generator.GenerationBudget.StopReason;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.candidate.generator.Recommendation;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+
+public class GenerationBudgetTest {
+
+	private MultiSequenceCandidateGenerator generator;
+
+	@Before
+	public void setUp() throws Exception {
+		generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+	}
+
+	@Test
+	public void testIterations() {
+		Recommendation recommendation = generator.startGeneration(new GenerationBudget(3));
+
+		assertEquals(StopReason.ITERATIONS, recommendation.getStopReason());
+		assertEquals(3, recommendation.getIterations());
+		assertSame(recommendation, generator.getRecommendation());
+	}
+
+	@Test
+	public void testCancelled() {
+		Recommendation initial = generator.getRecommendation();
+		GenerationBudget budget = new GenerationBudget(100);
+		budget.cancel();
+
+		Recommendation recommendation = generator.startGeneration(budget);
+
+		assertEquals(StopReason.CANCELLED, recommendation.getStopReason());
+		assertEquals(0, recommendation.getIterations());
+		assertEquals(initial.getWeightedCost(), recommendation.getWeightedCost(), 0);
+	}
+
+	@Test
+	public void testDeadline() {
+		GenerationBudget budget = new GenerationBudget(100);
+		budget.setTimeLimit(0, TimeUnit.MILLISECONDS);
+
+		assertEquals(StopReason.DEADLINE, generator.startGeneration(budget).getStopReason());
+	}
+
+	@Test
+	public void testConvergence() {
+		GenerationBudget budget = new GenerationBudget(100);
+		budget.setConvergenceIterations(1);
+
+		Recommendation recommendation = generator.startGeneration(budget);
+
+		assertTrue(recommendation.getStopReason() == StopReason.CONVERGED || recommendation.getStopReason() == StopReason.EXHAUSTED);
+		assertTrue(recommendation.getIterations() < 100);
+
+		for(Sequence seq: recommendation.getQueryPlans().keySet())
+			assertTrue(generator.getExistingQueryPlan(seq).contains(recommendation.getQueryPlan(seq)));
+
+		assertTrue(generator.getCandidates().containsAll(recommendation.getDataStructures()));
+	}
+
+	@Test
+	public void testLiveHeapAfterCollection() {
+		System.gc();
+
+		assertTrue(GenerationBudget.getLiveHeapBytes() > 0);
+
+		GenerationBudget budget = new GenerationBudget(10);
+		budget.setHeapLimit(1);
+
+		assertEquals(StopReason.MEMORY, generator.startGeneration(budget).getStopReason());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidHeapLimit() {
+		new GenerationBudget().setHeapLimit(0);
+	}
+}
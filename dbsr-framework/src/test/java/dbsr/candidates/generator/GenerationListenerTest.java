@@ -0,0 +1,138 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.GenerationEvents;
+import dbsr.candidate.generator.GenerationListener;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+public class GenerationListenerTest {
+
+	private static class RecordingListener implements GenerationListener<CandidateSequences> {
+
+		private final List<Integer> iterations = new ArrayList<Integer>();
+
+		private final List<Double> improvements = new ArrayList<Double>();
+
+		private int candidates = 0;
+
+		private int queryPlans = 0;
+
+		@Override
+		public void onIteration(int iteration, double weightedCost, int frontierSize) {
+			iterations.add(iteration);
+		}
+
+		@Override
+		public void onCandidateRegistered(CandidateSequences candidate) {
+			candidates++;
+		}
+
+		@Override
+		public void onQueryPlansAdded(List<QueryPlan<CandidateSequences>> qps) {
+			queryPlans += qps.size();
+		}
+
+		@Override
+		public void onBestPlanImproved(Map<Sequence, QueryPlan<CandidateSequences>> bestQueryPlans, double weightedCost) {
+			improvements.add(weightedCost);
+		}
+	}
+
+	@Test
+	public void testGenerationEvents() throws Exception {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		RecordingListener listener = new RecordingListener();
+		generator.addGenerationListener(listener);
+		generator.startGeneration(10);
+
+		GenerationEvents<CandidateSequences> events = generator.getGenerationEvents();
+		assertTrue(events.awaitDelivery(10, TimeUnit.SECONDS));
+		events.close();
+
+		assertEquals(0, events.getDroppedEvents());
+		assertEquals(10, listener.iterations.size());
+
+		for(int i=0; i < listener.iterations.size(); i++)
+			assertEquals(i + 1, (int) listener.iterations.get(i));
+
+		assertTrue(listener.candidates > 0);
+		assertTrue(listener.queryPlans > 0);
+		assertFalse(listener.improvements.isEmpty());
+
+		for(int i=1; i < listener.improvements.size(); i++)
+			assertTrue(listener.improvements.get(i) < listener.improvements.get(i - 1));
+	}
+
+	@Test
+	public void testSlowListenerDropsEvents() throws Exception {
+		GenerationEvents<CandidateSequences> events = new GenerationEvents<CandidateSequences>(2);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		events.addListener(new GenerationListener<CandidateSequences>() {
+			@Override
+			public void onIteration(int iteration, double weightedCost, int frontierSize) {
+				blocked.countDown();
+
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		events.iteration(1, 0, 0);
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+		// The listener is blocked, the queue holds two events.
+		for(int i=2; i <= 5; i++)
+			events.iteration(i, 0, 0);
+
+		assertEquals(2, events.getDroppedEvents());
+
+		release.countDown();
+		assertTrue(events.awaitDelivery(10, TimeUnit.SECONDS));
+		assertEquals(3, events.getDeliveredEvents());
+		events.close();
+	}
+
+	@Test
+	public void testFailingListener() throws Exception {
+		GenerationEvents<CandidateSequences> events = new GenerationEvents<CandidateSequences>();
+		final List<Integer> received = new ArrayList<Integer>();
+
+		events.addListener(new GenerationListener<CandidateSequences>() {
+			@Override
+			public void onIteration(int iteration, double weightedCost, int frontierSize) {
+				throw new IllegalStateException();
+			}
+		});
+		events.addListener(new GenerationListener<CandidateSequences>() {
+			@Override
+			public void onIteration(int iteration, double weightedCost, int frontierSize) {
+				received.add(iteration);
+			}
+		});
+
+		events.iteration(1, 0, 0);
+		events.iteration(2, 0, 0);
+
+		assertTrue(events.awaitDelivery(10, TimeUnit.SECONDS));
+		assertEquals(2, received.size());
+		events.close();
+	}
+}
@@ -0,0 +1,100 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.metrics.GenerationMetrics;
+import dbsr.metrics.LatencyHistogram;
+import dbsr.metrics.MetricsReporter;
+import dbsr.model.factory.RUBiS;
+
+public class GenerationMetricsTest {
+
+	@Test
+	public void testGenerationCounters() {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.startGeneration(10);
+
+		GenerationMetrics metrics = generator.getMetrics();
+
+		assertEquals(10, metrics.getIterations());
+		assertTrue(metrics.getCandidatesCreated() > 0);
+		assertEquals(metrics.getCandidatesCreated(), metrics.getNotifications());
+		assertTrue(metrics.getQueryPlansGenerated() > 0);
+		assertTrue(metrics.getCostEvaluations() > 0);
+
+		String snapshot = metrics.getSnapshot();
+		assertTrue(snapshot.startsWith("{") && snapshot.endsWith("}"));
+		assertTrue(snapshot.contains("\"iterations\": 10"));
+
+		metrics.reset();
+		assertEquals(0, metrics.getIterations());
+		assertEquals(0, metrics.getIterationsPerSecond(), 0);
+		assertEquals(0, metrics.getCostEvaluations());
+		assertEquals(0, metrics.getCostStepCacheHitRate(), 0);
+	}
+
+	@Test
+	public void testCostEvaluationsPerGenerator() {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		MultiSequenceCandidateGenerator other = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		long evaluations = other.getMetrics().getCostEvaluations();
+
+		generator.startGeneration(10);
+
+		assertTrue(generator.getMetrics().getCostEvaluations() > 0);
+		assertEquals(evaluations, other.getMetrics().getCostEvaluations());
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for(int i=1; i <= 100; i++)
+			histogram.record(i * 1000);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50500, histogram.getMeanNanos(), 0.001);
+		assertEquals(100000, histogram.getMaxNanos());
+
+		long p50 = histogram.getPercentileNanos(0.5);
+		assertTrue(p50 >= 50000 && p50 < 100000);
+		assertEquals(100000, histogram.getPercentileNanos(1));
+
+		histogram.reset();
+		assertEquals(0, histogram.getPercentileNanos(0.99));
+	}
+
+	@Test
+	public void testReporter() throws Exception {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		MetricsReporter reporter = new MetricsReporter(generator.getMetrics());
+		Path file = Files.createTempFile("metrics", ".json");
+
+		try {
+			ObjectName name = reporter.registerMBean("test");
+			reporter.startSnapshots(file, 1, TimeUnit.HOURS);
+			generator.startGeneration(3);
+
+			assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Iterations"));
+
+			reporter.close();
+
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+			assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("\"iterations\": 3"));
+		} finally {
+			reporter.close();
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.Ebay;
+import dbsr.model.factory.RUBiS;
+
+public class GeneratorCheckpointTest {
+
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("generator", ".checkpoint");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.setCheckpoint(file, 2);
+		generator.startGeneration(5);
+		generator.setCheckpoint(null);
+
+		MultiSequenceCandidateGenerator resumed = MultiSequenceCandidateGenerator.resume(new RUBiS().getSequences(), file);
+
+		assertEquals(5, resumed.getCompletedIterations());
+		assertEquals(generator.getCandidates().size(), resumed.getCandidates().size());
+		assertEquals(generator.getGeneratedQueryPlans().size(), resumed.getGeneratedQueryPlans().size());
+		assertEquals(generator.getRecommendation().getWeightedCost(), resumed.getRecommendation().getWeightedCost(), 0);
+
+		// Both continue the same way.
+		generator.startGeneration(5);
+		resumed.startGeneration(5);
+
+		assertEquals(generator.getCandidates().size(), resumed.getCandidates().size());
+		assertEquals(generator.getRecommendation().getWeightedCost(), resumed.getRecommendation().getWeightedCost(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentWorkload() throws IOException {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.setCheckpoint(file);
+		generator.startGeneration(1);
+		generator.setCheckpoint(null);
+
+		MultiSequenceCandidateGenerator.resume(new Ebay().getSequences(), file);
+	}
+}
@@ -0,0 +1,81 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dbsr.candidate.generator.optimizations.IndexedPriorityQueue;
+
+public class IndexedPriorityQueueTest {
+
+	@Test
+	public void testPollOrder() {
+		IndexedPriorityQueue<String> queue = new IndexedPriorityQueue<String>();
+
+		assertTrue(queue.set("c", 3));
+		assertTrue(queue.set("a", 1));
+		assertTrue(queue.set("nan", Double.NaN));
+		assertTrue(queue.set("b", 1));
+		assertFalse(queue.set("c", 0));
+
+		assertEquals(Arrays.asList("c", "a", "b", "nan"), queue.toSortedList());
+		assertEquals(4, queue.size());
+		assertEquals("c", queue.peek());
+		assertEquals(0, queue.getKey("c"), 0);
+
+		assertEquals("c", queue.poll());
+		assertEquals("a", queue.poll());
+		assertEquals("b", queue.poll());
+		assertEquals("nan", queue.poll());
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testUpdateAndRemove() {
+		IndexedPriorityQueue<Integer> queue = new IndexedPriorityQueue<Integer>();
+		Random random = new Random(7);
+		double[] keys = new double[200];
+
+		for(int i=0; i < keys.length; i++) {
+			keys[i] = random.nextDouble();
+			queue.set(i, keys[i]);
+		}
+
+		for(int i=0; i < keys.length; i += 3) {
+			keys[i] = random.nextDouble();
+			queue.set(i, keys[i]);
+		}
+
+		for(int i=1; i < keys.length; i += 5) {
+			assertTrue(queue.remove(i));
+			assertFalse(queue.contains(i));
+			assertNull(queue.getKey(i));
+		}
+
+		assertFalse(queue.remove(1));
+
+		List<Integer> polled = new ArrayList<Integer>();
+		double previous = Double.NEGATIVE_INFINITY;
+
+		while(!queue.isEmpty()) {
+			int element = queue.poll();
+
+			assertTrue(keys[element] >= previous);
+			previous = keys[element];
+			polled.add(element);
+		}
+
+		assertEquals(keys.length - keys.length / 5, polled.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullElement() {
+		new IndexedPriorityQueue<String>().set(null, 1);
+	}
+}
@@ -0,0 +1,91 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.RecursiveTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.generator.optimizations.NotifierPool;
+
+public class NotifierPoolTest {
+
+	private NotifierPool pool;
+
+	/**
+	 * Sums a range of numbers by splitting it in halves.
+	 */
+	private static class SumTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long from, to;
+
+		public SumTask(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Long compute() {
+			if(to - from <= 1000) {
+				long sum = 0;
+
+				for(long i=from; i < to; i++)
+					sum += i;
+
+				return sum;
+			}
+
+			long middle = (from + to) / 2;
+			SumTask left = new SumTask(from, middle);
+			left.fork();
+
+			return new SumTask(middle, to).compute() + left.join();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		pool = new NotifierPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testInvoke() {
+		assertEquals(Long.valueOf(499999500000L), pool.invoke(new SumTask(0, 1000000)));
+		assertEquals(1, pool.getInvocations());
+	}
+
+	@Test
+	public void testResize() {
+		assertEquals(2, pool.getParallelism());
+
+		pool.setParallelism(4);
+		assertEquals(4, pool.getParallelism());
+		assertEquals(Long.valueOf(45), pool.invoke(new SumTask(0, 10)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		pool.setParallelism(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInvokeAfterShutdown() {
+		pool.shutdown();
+		pool.invoke(new SumTask(0, 10));
+	}
+
+	@Test
+	public void testUtilizationWithoutWork() {
+		assertEquals(0, pool.getUtilization(), 0);
+		assertEquals(0, pool.getTasksExecuted());
+	}
+}
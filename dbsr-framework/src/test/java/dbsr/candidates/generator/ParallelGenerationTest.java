@@ -0,0 +1,46 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.Ebay;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+
+/**
+ * Optimizing batches of query plans concurrently generates the same as the sequential generation loop.
+ */
+public class ParallelGenerationTest {
+
+	@Test
+	public void testSameAsSequentialRUBiS() {
+		assertSameAsSequential(new RUBiS().getSequences(), new RUBiS().getSequences(), 20);
+	}
+
+	@Test
+	public void testSameAsSequentialEbay() {
+		assertSameAsSequential(new Ebay().getSequences(), new Ebay().getSequences(), 20);
+	}
+
+	/**
+	 * Each generator compiles its own workload, so both are given their own equal sequences.
+	 */
+	private static void assertSameAsSequential(Set<Sequence> sequences, Set<Sequence> sameSequences, int iterations) {
+		MultiSequenceCandidateGenerator sequential = new MultiSequenceCandidateGenerator(sequences);
+		sequential.startGeneration(iterations);
+
+		MultiSequenceCandidateGenerator parallel = new MultiSequenceCandidateGenerator(sameSequences);
+		parallel.setParallelism(4);
+		parallel.startGeneration(iterations);
+
+		assertEquals(sequential.getCompletedIterations(), parallel.getCompletedIterations());
+		assertEquals(new HashSet<CandidateSequences>(sequential.getCandidates()), new HashSet<CandidateSequences>(parallel.getCandidates()));
+		assertEquals(sequential.getRecommendation().getWeightedCost(), parallel.getRecommendation().getWeightedCost(), 0);
+	}
+}
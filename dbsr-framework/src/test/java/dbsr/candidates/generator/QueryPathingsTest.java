@@ -0,0 +1,108 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dbsr.candidate.generator.optimizations.QueryPathings;
+
+public class QueryPathingsTest {
+
+	@Test
+	public void testEnumeratesProduct() {
+		List<List<String>> choices = new ArrayList<List<String>>();
+		choices.add(Arrays.asList("a", "b"));
+		choices.add(Arrays.asList("x", "y", "x"));
+		choices.add(Arrays.asList("1"));
+
+		QueryPathings<String> pathings = new QueryPathings<String>(choices);
+		assertEquals(4, pathings.getNumberOfPathings());
+
+		List<List<String>> expected = Arrays.asList(Arrays.asList("a", "x", "1"), Arrays.asList("a", "y", "1"),
+				Arrays.asList("b", "x", "1"), Arrays.asList("b", "y", "1"));
+		List<List<String>> enumerated = new ArrayList<List<String>>();
+
+		while(pathings.hasNext())
+			enumerated.add(pathings.next());
+
+		assertEquals(expected, enumerated);
+	}
+
+	@Test
+	public void testQueryWithoutChoices() {
+		List<List<String>> choices = new ArrayList<List<String>>();
+		choices.add(Arrays.asList("a", "b"));
+		choices.add(Collections.<String>emptyList());
+
+		QueryPathings<String> pathings = new QueryPathings<String>(choices);
+
+		assertEquals(0, pathings.getNumberOfPathings());
+		assertFalse(pathings.hasNext());
+		assertFalse(new QueryPathings<String>(new ArrayList<List<String>>()).hasNext());
+	}
+
+	@Test
+	public void testNumberOfPathingsSaturates() {
+		List<List<Integer>> choices = new ArrayList<List<Integer>>();
+		List<Integer> queryChoices = new ArrayList<Integer>();
+
+		for(int i=0; i < 1000; i++)
+			queryChoices.add(i);
+
+		for(int i=0; i < 10; i++)
+			choices.add(queryChoices);
+
+		QueryPathings<Integer> pathings = new QueryPathings<Integer>(choices);
+
+		assertEquals(Long.MAX_VALUE, pathings.getNumberOfPathings());
+		assertEquals(Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 0), pathings.next());
+		assertEquals(Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 1), pathings.next());
+	}
+
+	@Test
+	public void testSample() {
+		List<List<Integer>> choices = new ArrayList<List<Integer>>();
+		choices.add(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+		choices.add(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+
+		List<List<Integer>> sample = new QueryPathings<Integer>(choices).sample(10, new Random(1));
+		Set<List<Integer>> unique = new HashSet<List<Integer>>(sample);
+
+		assertEquals(10, sample.size());
+		assertEquals(10, unique.size());
+		assertEquals(sample, new QueryPathings<Integer>(choices).sample(10, new Random(1)));
+
+		// All pathings when the sample is larger.
+		assertEquals(100, new QueryPathings<Integer>(choices).sample(200, new Random(1)).size());
+		assertEquals(100, new HashSet<List<Integer>>(new QueryPathings<Integer>(choices).sample(100, new Random(1))).size());
+	}
+
+	@Test
+	public void testSampleLargeProduct() {
+		List<List<Integer>> choices = new ArrayList<List<Integer>>();
+		List<Integer> queryChoices = new ArrayList<Integer>();
+
+		for(int i=0; i < 1000; i++)
+			queryChoices.add(i);
+
+		for(int i=0; i < 10; i++)
+			choices.add(queryChoices);
+
+		// Drawn without enumerating the product.
+		List<List<Integer>> sample = new QueryPathings<Integer>(choices).sample(50, new Random(1));
+
+		assertEquals(50, sample.size());
+		assertEquals(50, new HashSet<List<Integer>>(sample).size());
+
+		for(List<Integer> pathing: sample)
+			assertEquals(10, pathing.size());
+	}
+}
@@ -0,0 +1,65 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dbsr.candidate.generator.optimizations.QueryPlanFingerprints;
+
+public class QueryPlanFingerprintsTest {
+
+	@Test
+	public void testExactSet() {
+		QueryPlanFingerprints fingerprints = new QueryPlanFingerprints(1 << 20, 0.01);
+
+		for(long i=0; i < 10000; i++)
+			assertTrue(fingerprints.add(i * 0x9E3779B97F4A7C15L));
+
+		assertFalse(fingerprints.add(0));
+		assertTrue(fingerprints.isExact());
+		assertEquals(10000, fingerprints.size());
+
+		for(long i=0; i < 10000; i++) {
+			assertTrue(fingerprints.contains(i * 0x9E3779B97F4A7C15L));
+			assertFalse(fingerprints.contains(i * 0x9E3779B97F4A7C15L + 1));
+		}
+
+		assertEquals(10000, fingerprints.getHits());
+	}
+
+	@Test
+	public void testBloomFilterWithinBudget() {
+		long budget = 1 << 16;
+		QueryPlanFingerprints fingerprints = new QueryPlanFingerprints(budget, 0.01);
+		Random random = new Random(42);
+		long[] added = new long[40000];
+
+		for(int i=0; i < added.length; i++) {
+			added[i] = random.nextLong();
+			fingerprints.add(added[i]);
+		}
+
+		assertFalse(fingerprints.isExact());
+		assertTrue(fingerprints.getMemorySize() <= budget);
+
+		// no false negatives
+		for(long fingerprint: added)
+			assertTrue(fingerprints.contains(fingerprint));
+
+		int falsePositives = 0;
+
+		for(int i=0; i < 10000; i++)
+			if(fingerprints.contains(random.nextLong()))
+				falsePositives++;
+
+		assertTrue(fingerprints.getFalsePositiveProbability() > 0);
+		assertEquals(fingerprints.getFalsePositiveProbability(), falsePositives / 10000.0, 0.05);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidProbability() {
+		new QueryPlanFingerprints(1 << 20, 1);
+	}
+}
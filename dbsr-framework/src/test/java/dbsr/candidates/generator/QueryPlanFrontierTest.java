@@ -0,0 +1,156 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequence;
+import dbsr.candidate.generator.optimizations.QueryPlanFrontier;
+import dbsr.candidate.generator.optimizations.QueryPlanPriority;
+import dbsr.model.Entity;
+import dbsr.model.ModelFactory;
+import dbsr.model.relationship.Cardinality;
+import dbsr.model.relationship.Relationship;
+import dbsr.model.relationship.Relationship.RelationshipType;
+import dbsr.model.tree.EntityTree;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+import dbsr.workload.query.Query;
+
+public class QueryPlanFrontierTest {
+
+	private Sequence usersBidsItems;
+
+	private CandidateSequence users, bids, items;
+
+	private QueryPlan<CandidateSequence> longPlan, mediumPlan, shortPlan;
+
+	/**
+	 * Explores the shortest query plans first.
+	 */
+	private static class SizePriority implements QueryPlanPriority<CandidateSequence> {
+
+		@Override
+		public double getPriority(QueryPlan<CandidateSequence> qp) {
+			return qp.size();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		Entity usersEntity = ModelFactory.createEntity("users");
+		Entity bidsEntity = ModelFactory.createEntity("bids");
+		Entity itemsEntity = ModelFactory.createEntity("items");
+
+		Relationship usersPlaceBids = new Relationship("usersPlaceBids", usersEntity, bidsEntity, RelationshipType.OneToMany);
+		Relationship bidsAreOnItems = new Relationship("bidsAreOnItems", bidsEntity, itemsEntity, RelationshipType.ManyToOne);
+		usersPlaceBids.setCardinality(new Cardinality(1,3));
+		bidsAreOnItems.setCardinality(new Cardinality(10,1));
+
+		usersBidsItems = new Sequence();
+		usersBidsItems.addQuery(ModelFactory.createQuery(usersEntity));
+		usersBidsItems.addQuery(ModelFactory.createQuery(bidsEntity));
+		usersBidsItems.addQuery(ModelFactory.createQuery(itemsEntity));
+
+		users = createCandidate(usersBidsItems.getQueryPath().get(0));
+		bids = createCandidate(usersBidsItems.getQueryPath().get(1));
+		items = createCandidate(usersBidsItems.getQueryPath().get(2));
+
+		longPlan = createPlan(users, bids, items);
+		mediumPlan = createPlan(users, bids);
+		shortPlan = createPlan(users);
+	}
+
+	private CandidateSequence createCandidate(Query query) {
+		ArrayList<Query> queries = new ArrayList<Query>();
+		queries.add(query);
+
+		return new CandidateSequence(new EntityTree(query.getEntity(), queries), usersBidsItems);
+	}
+
+	private QueryPlan<CandidateSequence> createPlan(CandidateSequence... candidates) {
+		LinkedList<CandidateSequence> plan = new LinkedList<CandidateSequence>();
+
+		for(CandidateSequence candidate: candidates)
+			plan.add(candidate);
+
+		return new QueryPlan<CandidateSequence>(usersBidsItems, plan);
+	}
+
+	@Test
+	public void testFifoOrder() {
+		QueryPlanFrontier<CandidateSequence> frontier = new QueryPlanFrontier<CandidateSequence>();
+
+		frontier.add(longPlan);
+		frontier.add(shortPlan);
+		frontier.add(mediumPlan);
+
+		assertFalse(frontier.isBestFirst());
+		assertEquals(3, frontier.size());
+		assertEquals(longPlan, frontier.poll());
+		assertEquals(shortPlan, frontier.poll());
+		assertEquals(mediumPlan, frontier.poll());
+		assertNull(frontier.poll());
+	}
+
+	@Test
+	public void testBestFirstOrder() {
+		QueryPlanFrontier<CandidateSequence> frontier = new QueryPlanFrontier<CandidateSequence>(new SizePriority());
+
+		frontier.add(longPlan);
+		frontier.add(shortPlan);
+		frontier.add(mediumPlan);
+
+		assertTrue(frontier.isBestFirst());
+		assertEquals(shortPlan, frontier.peek());
+		assertEquals(shortPlan, frontier.poll());
+		assertEquals(mediumPlan, frontier.poll());
+		assertEquals(longPlan, frontier.poll());
+		assertTrue(frontier.isEmpty());
+	}
+
+	@Test
+	public void testBestFirstEqualPrioritiesKeepInsertionOrder() {
+		QueryPlanFrontier<CandidateSequence> frontier = new QueryPlanFrontier<CandidateSequence>(new SizePriority());
+		QueryPlan<CandidateSequence> otherMediumPlan = createPlan(bids, items);
+
+		frontier.add(otherMediumPlan);
+		frontier.add(mediumPlan);
+
+		assertEquals(otherMediumPlan, frontier.poll());
+		assertEquals(mediumPlan, frontier.poll());
+	}
+
+	@Test
+	public void testNoDuplicates() {
+		QueryPlanFrontier<CandidateSequence> frontier = new QueryPlanFrontier<CandidateSequence>(new SizePriority());
+
+		assertTrue(frontier.add(longPlan));
+		assertFalse(frontier.add(longPlan));
+		assertFalse(frontier.add(createPlan(users, bids, items)));
+		assertEquals(1, frontier.size());
+	}
+
+	@Test
+	public void testRemove() {
+		QueryPlanFrontier<CandidateSequence> frontier = new QueryPlanFrontier<CandidateSequence>(new SizePriority());
+
+		frontier.add(longPlan);
+		frontier.add(shortPlan);
+		frontier.add(mediumPlan);
+
+		assertTrue(frontier.remove(shortPlan));
+		assertFalse(frontier.remove(shortPlan));
+		assertFalse(frontier.contains(shortPlan));
+		assertTrue(frontier.contains(mediumPlan));
+		assertEquals(2, frontier.size());
+
+		assertEquals(mediumPlan, frontier.poll());
+		assertEquals(longPlan, frontier.poll());
+		assertNull(frontier.poll());
+	}
+}
@@ -0,0 +1,124 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.Candidate;
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.candidate.generator.optimizations.NotifierPool;
+import dbsr.candidate.generator.optimizations.QueryPlanFingerprints;
+import dbsr.candidate.generator.optimizations.QueryPlanNotifier;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+public class QueryPlanNotifierTest {
+
+	private NotifierPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new NotifierPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Notifying only the rewritable query plans produces the same query plans as notifying all subscribed ones.
+	 */
+	@Test
+	public void testSameQueryPlansAsAllSubscribers() {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+
+		int merges = 0;
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				for(CandidateSequences merge: qp.optimize()) {
+					if(generator.getCandidates().contains(merge))
+						continue;
+
+					// Fingerprints of the new query plans require registered candidates, with frozen trees.
+					merge.getCandidate().freeze();
+					merge.setId(100000 + merges);
+
+					QueryPlanNotifier<CandidateSequences> notifier = new QueryPlanNotifier<CandidateSequences>(merge, new QueryPlanFingerprints(), pool);
+					Set<QueryPlan<CandidateSequences>> expected = new HashSet<QueryPlan<CandidateSequences>>();
+
+					for(Candidate<CandidateSequences> cand: merge.getCandidateTree())
+						for(QueryPlan<CandidateSequences> subscribed: cand.getSubscribedQueryPlans())
+							expected.addAll(subscribed.notifyNewCandidate(merge));
+
+					assertEquals(expected, notifier.getNewQueryPlans());
+					assertTrue(notifier.getNotifiedQueryPlans() <= notifier.getSubscribedQueryPlans());
+					merges++;
+				}
+			}
+		}
+
+		assertTrue(merges > 0);
+	}
+
+	/**
+	 * Notifying new candidates together produces the query plans of notifying each of them.
+	 */
+	@Test
+	public void testBatchSameQueryPlansAsSingleCandidates() {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		List<CandidateSequences> merges = new ArrayList<CandidateSequences>();
+
+		for(Sequence seq: generator.getSequences()) {
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq)) {
+				for(CandidateSequences merge: qp.optimize()) {
+					if(generator.getCandidates().contains(merge) || merges.contains(merge))
+						continue;
+
+					merge.getCandidate().freeze();
+					merge.setId(100000 + merges.size());
+					merges.add(merge);
+				}
+			}
+		}
+
+		assertTrue(merges.size() > 1);
+
+		Set<QueryPlan<CandidateSequences>> expected = new HashSet<QueryPlan<CandidateSequences>>();
+		int subscribed = 0;
+
+		for(CandidateSequences merge: merges) {
+			QueryPlanNotifier<CandidateSequences> notifier = new QueryPlanNotifier<CandidateSequences>(merge, new QueryPlanFingerprints(), pool);
+			expected.addAll(notifier.getNewQueryPlans());
+			subscribed = Math.max(subscribed, notifier.getSubscribedQueryPlans());
+		}
+
+		QueryPlanNotifier<CandidateSequences> batch = new QueryPlanNotifier<CandidateSequences>(merges, new QueryPlanFingerprints(), pool);
+
+		assertEquals(expected, batch.getNewQueryPlans());
+		assertTrue(batch.getSubscribedQueryPlans() >= subscribed);
+	}
+
+	@Test
+	public void testGenerationWithNotificationWindow() {
+		MultiSequenceCandidateGenerator single = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		single.startGeneration(10);
+
+		MultiSequenceCandidateGenerator batched = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		batched.setNotificationWindow(1);
+		batched.startGeneration(10);
+
+		assertEquals(single.getCandidates(), batched.getCandidates());
+		assertEquals(single.getCompletedIterations(), batched.getCompletedIterations());
+	}
+}
@@ -0,0 +1,96 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.candidate.generator.optimizations.QueryPlanPruner;
+import dbsr.candidate.generator.optimizations.QueryPlanStore;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+public class QueryPlanPrunerTest {
+
+	private Map<Sequence, QueryPlanStore<CandidateSequences>> stores;
+
+	@Before
+	public void setUp() throws Exception {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.startGeneration(10);
+
+		stores = new LinkedHashMap<Sequence, QueryPlanStore<CandidateSequences>>();
+
+		for(Sequence seq: generator.getSequences()) {
+			QueryPlanStore<CandidateSequences> store = new QueryPlanStore<CandidateSequences>();
+
+			for(QueryPlan<CandidateSequences> qp: generator.getExistingQueryPlan(seq))
+				store.add(qp);
+
+			stores.put(seq, store);
+		}
+	}
+
+	@Test
+	public void testSelectKeepsCheapestOfEachLength() {
+		Map<Sequence, List<QueryPlan<CandidateSequences>>> selected = new QueryPlanPruner<Sequence, CandidateSequences>(1, false).select(stores);
+
+		assertEquals(stores.keySet(), selected.keySet());
+
+		for(Sequence seq: stores.keySet()) {
+			QueryPlanStore<CandidateSequences> store = stores.get(seq);
+			List<QueryPlan<CandidateSequences>> expected = new ArrayList<QueryPlan<CandidateSequences>>();
+
+			for(int length: store.getLengths()) {
+				List<QueryPlan<CandidateSequences>> ofLength = new ArrayList<QueryPlan<CandidateSequences>>(store.getQueryPlansOfLength(length));
+				expected.addAll(ofLength.subList(1, ofLength.size()));
+			}
+
+			assertEquals(expected.size(), selected.get(seq).size());
+			assertTrue(selected.get(seq).containsAll(expected));
+		}
+	}
+
+	@Test
+	public void testParallelSelection() {
+		Map<Sequence, List<QueryPlan<CandidateSequences>>> sequential = new QueryPlanPruner<Sequence, CandidateSequences>(1, false).select(stores);
+		Map<Sequence, List<QueryPlan<CandidateSequences>>> parallel = new QueryPlanPruner<Sequence, CandidateSequences>(1, true).select(stores);
+
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void testPrune() {
+		QueryPlanPruner<Sequence, CandidateSequences> pruner = new QueryPlanPruner<Sequence, CandidateSequences>(1, true);
+
+		int removed = pruner.prune(stores, new QueryPlanPruner.Removal<Sequence, CandidateSequences>() {
+
+			@Override
+			public void remove(Sequence sequence, List<QueryPlan<CandidateSequences>> qps) {
+				for(QueryPlan<CandidateSequences> qp: qps)
+					assertTrue(stores.get(sequence).remove(qp));
+			}
+		});
+
+		for(QueryPlanStore<CandidateSequences> store: stores.values()) {
+			assertEquals(store.getLengths().size(), store.size());
+		}
+
+		assertEquals(1, pruner.getPasses());
+		assertEquals(removed, pruner.getPlansRemoved());
+		assertEquals(0, pruner.prune(stores, null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePlansPerLength() {
+		new QueryPlanPruner<Sequence, CandidateSequences>(-1, false);
+	}
+}
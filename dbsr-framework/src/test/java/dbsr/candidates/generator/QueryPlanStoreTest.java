@@ -0,0 +1,119 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.candidate.generator.optimizations.QueryPlanStore;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.QueryPlan;
+import dbsr.workload.Sequence;
+
+public class QueryPlanStoreTest {
+
+	private List<QueryPlan<CandidateSequences>> queryPlans;
+
+	@Before
+	public void setUp() throws Exception {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.startGeneration(10);
+
+		queryPlans = new ArrayList<QueryPlan<CandidateSequences>>();
+
+		for(Sequence seq: generator.getSequences())
+			queryPlans.addAll(generator.getExistingQueryPlan(seq));
+	}
+
+	@Test
+	public void testOrderedByCost() {
+		QueryPlanStore<CandidateSequences> store = new QueryPlanStore<CandidateSequences>();
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans)
+			assertTrue(store.add(qp));
+
+		assertFalse(store.add(queryPlans.get(0)));
+		assertEquals(queryPlans.size(), store.size());
+
+		int previousCost = Integer.MIN_VALUE;
+		int index = 0;
+
+		for(QueryPlan<CandidateSequences> qp: store.getQueryPlans()) {
+			assertTrue(qp.getCost() >= previousCost);
+			assertEquals(index, store.indexOf(qp));
+			assertSame(qp, store.get(index));
+
+			previousCost = qp.getCost();
+			index++;
+		}
+
+		assertSame(store.get(0), store.getBest());
+		assertEquals(store.getCheapest(3), new ArrayList<QueryPlan<CandidateSequences>>(store.getQueryPlans()).subList(0, 3));
+	}
+
+	@Test
+	public void testRemove() {
+		QueryPlanStore<CandidateSequences> store = new QueryPlanStore<CandidateSequences>();
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans)
+			store.add(qp);
+
+		QueryPlan<CandidateSequences> best = store.getBest();
+		int lengths = store.getLengths().size();
+
+		assertTrue(store.remove(best));
+		assertFalse(store.remove(best));
+		assertFalse(store.contains(best));
+		assertEquals(-1, store.indexOf(best));
+		assertEquals(queryPlans.size() - 1, store.size());
+		assertFalse(store.getQueryPlansOfLength(best.size()).contains(best));
+		assertTrue(store.getLengths().size() <= lengths);
+	}
+
+	@Test
+	public void testLengths() {
+		QueryPlanStore<CandidateSequences> store = new QueryPlanStore<CandidateSequences>();
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans)
+			store.add(qp);
+
+		int total = 0;
+
+		for(int length: store.getLengths()) {
+			for(QueryPlan<CandidateSequences> qp: store.getQueryPlansOfLength(length))
+				assertEquals(length, qp.size());
+
+			total += store.getQueryPlansOfLength(length).size();
+		}
+
+		assertEquals(store.size(), total);
+		assertTrue(store.getQueryPlansOfLength(100).isEmpty());
+		assertEquals(store.size() - store.getLengths().size(), store.getAllButCheapestOfEachLength(1).size());
+	}
+
+	@Test
+	public void testRanks() {
+		QueryPlanStore<CandidateSequences> store = new QueryPlanStore<CandidateSequences>();
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans)
+			store.add(qp);
+
+		double fitness = 0;
+		store.rankQueryPlans();
+
+		for(QueryPlan<CandidateSequences> qp: store.getQueryPlans()) {
+			assertEquals(store.size() - store.indexOf(qp), qp.getRank().intValue());
+			fitness += qp.getFitness();
+		}
+
+		assertEquals(fitness, store.getTotalFitness(), 1e-9);
+
+		store.remove(store.getBest());
+		assertEquals(store.size(), store.getBest().getRank().intValue());
+	}
+}
@@ -0,0 +1,87 @@
+package dbsr.candidates.generator;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.metrics.TraceReader;
+import dbsr.metrics.TraceRecorder;
+import dbsr.metrics.TraceRecorder.EventType;
+import dbsr.model.factory.RUBiS;
+
+public class TraceRecorderTest {
+
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = Files.createTempFile("trace", ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testRingKeepsLatestEvents() throws Exception {
+		TraceRecorder recorder = new TraceRecorder(file, 4);
+
+		for(int i=0; i < 6; i++) {
+			recorder.setIteration(i);
+			recorder.merged(i, i - 2, -1);
+		}
+
+		recorder.close();
+
+		TraceReader reader = new TraceReader(file);
+		List<TraceReader.Event> events = reader.getEvents();
+
+		assertEquals(4, events.size());
+		assertEquals(2, reader.getEventsLost());
+
+		for(int i=0; i < events.size(); i++) {
+			TraceReader.Event event = events.get(i);
+
+			assertEquals(EventType.MERGED, event.getType());
+			assertEquals(i + 2, event.getIteration());
+			assertEquals(i + 2, event.getFirst());
+			assertEquals(i, (int) (event.getSecond() >> 32));
+			assertEquals(-1, (int) event.getSecond());
+		}
+	}
+
+	@Test
+	public void testGenerationTrace() throws Exception {
+		MultiSequenceCandidateGenerator generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.setTrace(file);
+		generator.startGeneration(10);
+		generator.setTrace(null);
+
+		TraceReader reader = new TraceReader(file);
+		List<TraceReader.Point> points = reader.getConvergence();
+
+		assertEquals(10, points.size());
+
+		for(int i=0; i < points.size(); i++) {
+			assertEquals(i + 1, points.get(i).getIteration());
+			assertTrue(points.get(i).getPoppedCost() >= 0);
+		}
+
+		StringWriter csv = new StringWriter();
+		reader.writeCsv(csv);
+		assertEquals(11, csv.toString().split("\n").length);
+
+		StringWriter json = new StringWriter();
+		reader.writeJson(json);
+		assertTrue(json.toString().trim().startsWith("[") && json.toString().trim().endsWith("]"));
+	}
+}
@@ -364,6 +364,39 @@ public class CostCalculatorPlanTest {
 		assertTrue((cost+1) == costThree);
 	}
 	
+	/**
+	 * Cached step costs and plan costs equal the calculated costs.
+	 */
+	@Test
+	public void testGetCostCached() {
+		int cost = qpUsersBidsJoin.getCost();
+		int costIndex = qpItemsBidsIndex.getCost();
+		
+		CostStepCache cache = new CostStepCache();
+		qpUsersBidsJoin.setCostStepCache(cache);
+		qpItemsBidsIndex.setCostStepCache(cache);
+		qpUsersBidsJoin.invalidateCost();
+		qpItemsBidsIndex.invalidateCost();
+		
+		// Steps on trees which are not frozen are not cached.
+		assertEquals(cost, qpUsersBidsJoin.getCost());
+		assertEquals(0, cache.size());
+		
+		for(CandidateSequences candidate: qpUsersBidsJoin.getCandidatesPlan())
+			candidate.getCandidate().freeze();
+		
+		for(CandidateSequences candidate: qpItemsBidsIndex.getCandidatesPlan())
+			candidate.getCandidate().freeze();
+		
+		qpUsersBidsJoin.invalidateCost();
+		
+		assertEquals(cost, new CostCalculatorPlan<CandidateSequences>(qpUsersBidsJoin).getCost());
+		assertEquals(cost, qpUsersBidsJoin.getCost());
+		assertEquals(costIndex, qpItemsBidsIndex.getCost());
+		assertEquals(costIndex, qpItemsBidsIndex.getCost());
+		assertTrue(cache.size() > 0);
+	}
+	
 	/**
 	 * Query: Users -> Bids on [Users|Bids|Items|User],[Users|Bids|Items|User[
 	 * 
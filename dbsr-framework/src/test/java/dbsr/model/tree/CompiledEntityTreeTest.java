@@ -0,0 +1,159 @@
+package dbsr.model.tree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.RUBiS;
+import dbsr.workload.Sequence;
+import dbsr.workload.query.Query;
+
+/**
+ * Frozen trees answer the same as unfrozen clones.
+ */
+public class CompiledEntityTreeTest {
+
+	private MultiSequenceCandidateGenerator generator;
+
+	private List<LinkedList<Query>> paths;
+
+	@Before
+	public void setUp() throws Exception {
+		generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		generator.startGeneration(10);
+
+		paths = new ArrayList<LinkedList<Query>>();
+
+		for(Sequence seq: generator.getSequences()) {
+			LinkedList<Query> queryPath = seq.getQueryPath();
+
+			for(int from=0; from < queryPath.size(); from++) {
+				for(int to=from + 1; to <= queryPath.size(); to++)
+					paths.add(new LinkedList<Query>(queryPath.subList(from, to)));
+			}
+		}
+	}
+
+	@Test
+	public void testSameMetricsAsUnfrozen() {
+		for(CandidateSequences candidate: generator.getCandidates()) {
+			EntityTree frozen = candidate.getCandidate();
+			EntityTree clone = frozen.clone();
+
+			assertTrue(frozen.isFrozen());
+
+			List<EntityTree> frozenNodes = getBreadthFirst(frozen);
+			List<EntityTree> cloneNodes = getBreadthFirst(clone);
+
+			for(int i=0; i < frozenNodes.size(); i++) {
+				EntityTree node = frozenNodes.get(i);
+				EntityTree cloneNode = cloneNodes.get(i);
+
+				assertEquals(cloneNode.getMaxDepth(), node.getMaxDepth());
+				assertEquals(cloneNode.getMaxWidth(), node.getMaxWidth());
+				assertEquals(cloneNode.getNodeFrequency(), node.getNodeFrequency());
+				assertEquals(cloneNode.getNodesTotalFrequency(), node.getNodesTotalFrequency());
+			}
+		}
+	}
+
+	@Test
+	public void testSameQueryPathsAsUnfrozen() {
+		for(CandidateSequences candidate: generator.getCandidates()) {
+			EntityTree frozen = candidate.getCandidate();
+			EntityTree clone = frozen.clone();
+
+			List<EntityTree> frozenNodes = getBreadthFirst(frozen);
+			List<EntityTree> cloneNodes = getBreadthFirst(clone);
+
+			for(int i=0; i < frozenNodes.size(); i++) {
+				EntityTree node = frozenNodes.get(i);
+				EntityTree cloneNode = cloneNodes.get(i);
+
+				for(LinkedList<Query> path: paths) {
+					assertEquals(cloneNode.canQuery(path.getFirst()), node.canQuery(path.getFirst()));
+					assertEquals(indexesOf(cloneNodes, cloneNode.getFirstQueryOccurrence(path.getFirst())), indexesOf(frozenNodes, node.getFirstQueryOccurrence(path.getFirst())));
+
+					for(boolean connected: new boolean[] { true, false }) {
+						assertEquals(indexesOf(cloneNodes, cloneNode.getQueryPaths(path, connected)), indexesOf(frozenNodes, node.getQueryPaths(path, connected)));
+						assertEquals(indexesOf(cloneNodes, cloneNode.getEndNodesOfQueryPath(path, 0, connected)), indexesOf(frozenNodes, node.getEndNodesOfQueryPath(path, 0, connected)));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testQueryPathsAreMemoized() {
+		for(CandidateSequences candidate: generator.getCandidates()) {
+			EntityTree frozen = candidate.getCandidate();
+
+			for(LinkedList<Query> path: paths) {
+				// An equal path of the same compiled queries finds the memoized nodes.
+				assertSame(frozen.getQueryPaths(path, true), frozen.getQueryPaths(new LinkedList<Query>(path), true));
+
+				List<EntityTree> endNodes = frozen.getEndNodesOfQueryPath(path, 0, false);
+
+				if(endNodes != null)
+					assertSame(endNodes, frozen.getEndNodesOfQueryPath(new LinkedList<Query>(path), 0, false));
+			}
+		}
+	}
+
+	@Test
+	public void testQueryPathToParent() {
+		for(CandidateSequences candidate: generator.getCandidates()) {
+			for(EntityTree node: getBreadthFirst(candidate.getCandidate())) {
+				EntityTree pathTree = node.getTreePathToThisNode().getTopParent();
+
+				for(LinkedList<Query> path: paths) {
+					List<EntityTree> endNodes = pathTree.getEndNodesOfQueryPath(path, 0, false);
+
+					assertEquals(endNodes != null && !endNodes.isEmpty(), node.hasQueryPathToParent(path));
+				}
+			}
+		}
+	}
+
+	private static List<EntityTree> getBreadthFirst(EntityTree tree) {
+		List<EntityTree> nodes = new ArrayList<EntityTree>();
+		nodes.add(tree);
+
+		for(int i=0; i < nodes.size(); i++)
+			nodes.addAll(nodes.get(i).getChildren());
+
+		return nodes;
+	}
+
+	private static List<Integer> indexesOf(List<EntityTree> nodes, EntityTree node) {
+		List<EntityTree> single = new ArrayList<EntityTree>();
+
+		if(node != null)
+			single.add(node);
+
+		return indexesOf(nodes, single);
+	}
+
+	private static List<Integer> indexesOf(List<EntityTree> nodes, List<EntityTree> found) {
+		if(found == null)
+			return null;
+
+		List<Integer> indexes = new ArrayList<Integer>();
+
+		for(EntityTree node: found) {
+			for(int i=0; i < nodes.size(); i++) {
+				if(nodes.get(i) == node)
+					indexes.add(i);
+			}
+		}
+
+		return indexes;
+	}
+}
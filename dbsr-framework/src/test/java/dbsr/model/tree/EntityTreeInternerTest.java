@@ -0,0 +1,105 @@
+package dbsr.model.tree;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.model.Entity;
+import dbsr.model.ModelFactory;
+import dbsr.model.relationship.Cardinality;
+import dbsr.model.relationship.Relationship;
+import dbsr.model.relationship.Relationship.RelationshipType;
+import dbsr.workload.query.Query;
+
+public class EntityTreeInternerTest {
+
+	private Entity users, bids;
+
+	private LinkedList<Query> usersBids;
+
+	private EntityTreeInterner interner;
+
+	@Before
+	public void setUp() throws Exception {
+		users = ModelFactory.createEntity("users");
+		bids = ModelFactory.createEntity("bids");
+
+		Relationship usersPlaceBids = new Relationship("usersPlaceBids", users, bids, RelationshipType.OneToMany);
+		usersPlaceBids.setCardinality(new Cardinality(1,3));
+
+		usersBids = new LinkedList<Query>();
+		usersBids.add(ModelFactory.createQuery(users));
+		usersBids.add(ModelFactory.createQuery(bids));
+
+		interner = new EntityTreeInterner();
+	}
+
+	@Test
+	public void testInternEqualTrees() {
+		EntityTree tree = EntityTree.createEntityTree(usersBids);
+		EntityTree otherTree = EntityTree.createEntityTree(usersBids);
+
+		assertNotSame(tree, otherTree);
+		assertSame(tree, interner.intern(tree));
+		assertSame(tree, interner.intern(otherTree));
+		assertEquals(1, interner.size());
+	}
+
+	@Test
+	public void testRemove() {
+		EntityTree tree = interner.intern(EntityTree.createEntityTree(usersBids));
+		EntityTree otherTree = EntityTree.createEntityTree(usersBids);
+
+		// Only the canonical instance is removed.
+		assertFalse(interner.remove(otherTree));
+		assertTrue(interner.remove(tree));
+		assertEquals(0, interner.size());
+
+		assertSame(otherTree, interner.intern(otherTree));
+		assertFalse(interner.remove(tree));
+		assertEquals(1, interner.size());
+	}
+
+	@Test
+	public void testFrozenHashEqualsStructuralHash() {
+		EntityTree tree = EntityTree.createEntityTree(usersBids);
+		int hash = tree.hashCode();
+
+		interner.intern(tree);
+
+		assertTrue(tree.isFrozen());
+		assertTrue(tree.getChildren().get(0).isFrozen());
+		assertEquals(hash, tree.hashCode());
+		assertTrue(tree.equalsEntireTree(EntityTree.createEntityTree(usersBids)));
+	}
+
+	@Test
+	public void testCloneOfFrozenTree() {
+		EntityTree tree = interner.intern(EntityTree.createEntityTree(usersBids));
+		EntityTree clone = tree.clone();
+
+		assertFalse(clone.isFrozen());
+		assertTrue(clone.equalsEntireTree(tree));
+		assertEquals(tree.hashCode(), clone.hashCode());
+	}
+
+	@Test
+	public void testSubTreeIsFrozenNotShared() {
+		EntityTree tree = EntityTree.createEntityTree(usersBids);
+		EntityTree child = tree.getChildren().get(0);
+
+		assertSame(child, interner.intern(child));
+		assertTrue(tree.isFrozen());
+		assertEquals(0, interner.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFrozenTreeCanNotBeModified() {
+		EntityTree tree = interner.intern(EntityTree.createEntityTree(usersBids));
+
+		tree.addChild(new EntityTree(bids));
+	}
+}
@@ -0,0 +1,122 @@
+package dbsr.workload;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.candidate.CandidateSequences;
+import dbsr.candidate.generator.MultiSequenceCandidateGenerator;
+import dbsr.model.factory.RUBiS;
+
+public class CompactQueryPlanTest {
+
+	private MultiSequenceCandidateGenerator generator;
+
+	private List<QueryPlan<CandidateSequences>> queryPlans;
+
+	private WorkloadCompiler workload;
+
+	@Before
+	public void setUp() throws Exception {
+		generator = new MultiSequenceCandidateGenerator(new RUBiS().getSequences());
+		queryPlans = new ArrayList<QueryPlan<CandidateSequences>>();
+
+		for(Sequence seq: generator.getSequences())
+			queryPlans.addAll(generator.getExistingQueryPlan(seq));
+
+		workload = generator.getWorkload();
+	}
+
+	@Test
+	public void testEqualPlansEncodeEqual() {
+		for(QueryPlan<CandidateSequences> qp: queryPlans) {
+			QueryPlan<CandidateSequences> copy = new QueryPlan<CandidateSequences>(qp.getSequence(),
+					new LinkedList<CandidateSequences>(qp.getCandidatesPlan()), qp.getMapping());
+
+			assertEquals(CompactQueryPlan.of(qp), CompactQueryPlan.of(copy));
+			assertEquals(CompactQueryPlan.of(qp).getFingerprint(), CompactQueryPlan.of(copy).getFingerprint());
+		}
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans)
+			for(QueryPlan<CandidateSequences> other: queryPlans)
+				assertEquals(qp.equals(other), CompactQueryPlan.of(qp).equals(CompactQueryPlan.of(other)));
+	}
+
+	@Test
+	public void testFingerprintIgnoresCandidateIds() {
+		for(QueryPlan<CandidateSequences> qp: queryPlans) {
+			LinkedList<CandidateSequences> candidates = new LinkedList<CandidateSequences>();
+
+			// Equal candidates registered again, as after pruning.
+			for(CandidateSequences candidate: qp.getCandidatesPlan()) {
+				CandidateSequences again = new CandidateSequences(candidate.getCandidate());
+				again.setId(candidate.getId() + 1000);
+				candidates.add(again);
+			}
+
+			CompactQueryPlan compact = CompactQueryPlan.of(qp);
+			CompactQueryPlan regenerated = CompactQueryPlan.of(new QueryPlan<CandidateSequences>(qp.getSequence(), candidates, qp.getMapping()));
+
+			assertNotEquals(compact.getCandidateId(0), regenerated.getCandidateId(0));
+			assertEquals(compact, regenerated);
+			assertEquals(compact.getFingerprint(), regenerated.getFingerprint());
+		}
+	}
+
+	@Test
+	public void testFingerprintIncludesSecondaryIndexes() throws IOException {
+		CompactQueryPlan compact = CompactQueryPlan.of(queryPlans.get(0));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		compact.writeTo(new DataOutputStream(bytes));
+
+		// The secondary index of the last position is written last.
+		byte[] data = bytes.toByteArray();
+		ByteBuffer.wrap(data).putInt(data.length - 4, compact.getSecondaryIndexNode(compact.size() - 1) + 1);
+
+		CompactQueryPlan other = CompactQueryPlan.readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+
+		assertNotEquals(compact, other);
+		assertNotEquals(compact.getFingerprint(), other.getFingerprint());
+	}
+
+	@Test
+	public void testExpand() {
+		IntFunction<CandidateSequences> candidates = new IntFunction<CandidateSequences>() {
+			@Override
+			public CandidateSequences apply(int id) {
+				return generator.getCandidate(id);
+			}
+		};
+
+		for(QueryPlan<CandidateSequences> qp: queryPlans) {
+			QueryPlan<CandidateSequences> expanded = CompactQueryPlan.of(qp).expand(workload, candidates);
+
+			assertEquals(qp, expanded);
+			assertEquals(qp.getSecondaryIndexes(), expanded.getSecondaryIndexes());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnregisteredCandidate() {
+		QueryPlan<CandidateSequences> qp = queryPlans.get(0);
+		LinkedList<CandidateSequences> candidates = new LinkedList<CandidateSequences>();
+
+		for(CandidateSequences candidate: qp.getCandidatesPlan())
+			candidates.add(new CandidateSequences(candidate.getCandidate()));
+
+		CompactQueryPlan.of(new QueryPlan<CandidateSequences>(qp.getSequence(), candidates, qp.getMapping()));
+	}
+}
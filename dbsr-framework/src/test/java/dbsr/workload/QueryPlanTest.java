@@ -6,6 +6,7 @@ import static org.junit.Assert.*;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
@@ -370,6 +371,37 @@ public class QueryPlanTest {
 		System.out.println(qp);
 	}
 	
+	/**
+	 * Users -> Bids -> Items -> Users
+	 * 
+	 * [Users|Bids] -> [Bids|Items] -> Users: the query on Items shifts up to Bids, which were selected before.
+	 * Replacing [Bids|Items] by Items no longer shifts, the cost is that of the same query plan created anew.
+	 */
+	@Test
+	public void testReplaceCandidateResetsShift() {
+		CandidateSequence usersBids = candidates.get(0).merge(candidates.get(1));
+		CandidateSequence bidsItems = candidates.get(1).merge(candidates.get(2));
+		
+		LinkedList<CandidateSequence> plan = new LinkedList<CandidateSequence>();
+		plan.add(usersBids);
+		plan.add(bidsItems);
+		plan.add(candidates.get(3));
+		
+		HashMap<Integer, LinkedList<Query>> mapping = new HashMap<Integer, LinkedList<Query>>();
+		mapping.put(0, new LinkedList<Query>(usersBidsItemsSeller.getQueryPath().subList(0, 2)));
+		mapping.put(1, new LinkedList<Query>(usersBidsItemsSeller.getQueryPath().subList(2, 3)));
+		mapping.put(2, new LinkedList<Query>(usersBidsItemsSeller.getQueryPath().subList(3, 4)));
+		
+		QueryPlan<CandidateSequence> qp = new QueryPlan<CandidateSequence>(usersBidsItemsSeller, plan, mapping);
+		qp.replaceCandidate(bidsItems, candidates.get(2));
+		
+		QueryPlan<CandidateSequence> created = new QueryPlan<CandidateSequence>(usersBidsItemsSeller, 
+				new LinkedList<CandidateSequence>(qp.getCandidatesPlan()), new HashMap<Integer, LinkedList<Query>>(qp.getMapping()));
+		
+		assertEquals(created.getSelectFrequencies(), qp.getSelectFrequencies());
+		assertEquals(created.getCost(), qp.getCost());
+	}
+	
 	/**
 	 * Attributes have to be connected which are selected.
 	 * E.g. Users and Bids are selected at Candidate 2.
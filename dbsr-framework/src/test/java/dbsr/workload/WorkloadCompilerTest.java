@@ -0,0 +1,109 @@
+package dbsr.workload;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dbsr.model.Entity;
+import dbsr.model.ModelFactory;
+import dbsr.model.factory.RUBiS;
+import dbsr.model.relationship.Cardinality;
+import dbsr.model.relationship.Relationship;
+import dbsr.model.relationship.Relationship.RelationshipType;
+import dbsr.workload.query.Query;
+
+public class WorkloadCompilerTest {
+
+	private Set<Sequence> sequences;
+
+	private List<Query> queries;
+
+	@Before
+	public void setUp() throws Exception {
+		sequences = new RUBiS().getSequences();
+		queries = new ArrayList<Query>();
+
+		for(Sequence seq: sequences)
+			queries.addAll(seq.getQueryPath());
+	}
+
+	@Test
+	public void testDenseIds() {
+		WorkloadCompiler workload = WorkloadCompiler.compile(sequences);
+
+		assertEquals(sequences.size(), workload.getNumberOfSequences());
+
+		for(int i=0; i < workload.getNumberOfQueries(); i++)
+			assertEquals(i, workload.getQuery(i).getId());
+
+		for(int i=0; i < workload.getNumberOfEntities(); i++)
+			assertEquals(i, workload.getEntity(i).getId());
+
+		for(Query qry: queries)
+			assertSame(workload.getQuery(qry.getId()), workload.getQuery(qry.getId()));
+	}
+
+	@Test
+	public void testCompiledAnswerabilityMatchesFields() {
+		boolean[][] expected = new boolean[queries.size()][queries.size()];
+
+		for(int i=0; i < queries.size(); i++)
+			for(int j=0; j < queries.size(); j++)
+				expected[i][j] = queries.get(i).isAnswerableBy(queries.get(j));
+
+		WorkloadCompiler.compile(sequences);
+
+		for(int i=0; i < queries.size(); i++) {
+			for(int j=0; j < queries.size(); j++) {
+				assertEquals(expected[i][j], queries.get(i).isAnswerableBy(queries.get(j)));
+				assertEquals(queries.get(i).equals(queries.get(j)), queries.get(i).getId() == queries.get(j).getId());
+			}
+		}
+	}
+
+	@Test
+	public void testHashUnchanged() {
+		Set<Integer> hashes = new HashSet<Integer>();
+
+		for(Query qry: queries)
+			hashes.add(qry.hashCode());
+
+		WorkloadCompiler.compile(sequences);
+
+		for(Query qry: queries)
+			assertTrue(hashes.contains(qry.hashCode()));
+	}
+
+	@Test
+	public void testAffectedFieldIds() {
+		WorkloadCompiler workload = WorkloadCompiler.compile(sequences);
+		Query qry = queries.get(0);
+		BitSet fieldIds = qry.getAffectedFieldIds();
+
+		assertEquals(qry.getAffectedFields().size(), fieldIds.cardinality());
+
+		for(int id = fieldIds.nextSetBit(0); id >= 0; id = fieldIds.nextSetBit(id+1))
+			assertTrue(qry.getAffectedFields().contains(workload.getField(id)));
+	}
+
+	@Test
+	public void testNewRelationshipResetsEntity() {
+		Query qry = queries.get(0);
+		WorkloadCompiler.compile(sequences);
+
+		Entity entity = qry.getEntity();
+		assertTrue(entity.isCompiled());
+
+		Relationship relation = new Relationship("test", entity, ModelFactory.createEntity("test"), RelationshipType.OneToMany);
+		relation.setCardinality(new Cardinality(1,1));
+
+		assertFalse(entity.isCompiled());
+	}
+}